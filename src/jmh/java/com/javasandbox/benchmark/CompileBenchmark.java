@@ -0,0 +1,83 @@
+package com.javasandbox.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.compile.CompiledClassCache;
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.utils.CmdOutResult;
+import com.javasandbox.utils.ProcessUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译：单独启动javac进程、进程内编译、命中编译缓存
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+
+    @Param({"Main", "TimeError"})
+    public String sample;
+
+    private String code;
+
+    private File dir;
+
+    private InMemoryJavaCompiler javaCompiler;
+
+    private CompiledClassCache compiledClassCache;
+
+    @Setup
+    public void setup() throws IOException {
+        code = Samples.read(sample);
+        dir = Files.createTempDirectory("bench-compile").toFile();
+        javaCompiler = new InMemoryJavaCompiler();
+        compiledClassCache = new CompiledClassCache(new SandboxProperties());
+        compiledClassCache.compile(code);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public CmdOutResult javacProcess() throws IOException {
+        File source = FileUtil.writeString(code, new File(dir, "Main.java"), StandardCharsets.UTF_8);
+        Process process = new ProcessBuilder("javac", "-encoding", "utf-8", "-d", dir.getAbsolutePath(),
+                source.getAbsolutePath()).start();
+        return ProcessUtil.getCmdOutput(process);
+    }
+
+    @Benchmark
+    public CompileResult inProcess() {
+        return javaCompiler.compile(code);
+    }
+
+    @Benchmark
+    public CompileResult cacheHit() {
+        return compiledClassCache.compile(code);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.javasandbox.benchmark;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.javasandbox.JavaSandboxApplication;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.InputModeEnum;
+import com.javasandbox.sandbox.JavaDockerCodeSandBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Docker沙箱端到端，DockerClient替换为桩：测量容器池、请求文件与结果解析等沙箱自身开销，不含容器内执行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DockerSandboxBenchmark {
+
+    private static final List<String> INPUT = Arrays.asList("1 2", "2 3");
+
+    // 关闭时每个用例单独exec
+    @Param({"true", "false"})
+    public boolean batchExec;
+
+    private ConfigurableApplicationContext context;
+
+    private JavaDockerCodeSandBox sandBox;
+
+    private CodeSandBoxDTO codeSandBoxDTO;
+
+    @Setup
+    public void setup() {
+        DockerClient dockerClient = DockerClientImpl.getInstance(
+                DefaultDockerClientConfig.createDefaultConfigBuilder().build(),
+                new StubDockerHttpClient(INPUT.size(), "3\n"));
+        context = new SpringApplicationBuilder(JavaSandboxApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("sandbox.docker.batch-exec=" + batchExec, "logging.level.root=WARN")
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("dockerClient", dockerClient))
+                .run();
+        sandBox = context.getBean(JavaDockerCodeSandBox.class);
+        codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setCode(Samples.read("Main"));
+        codeSandBoxDTO.setInput(INPUT);
+        codeSandBoxDTO.setInputMode(InputModeEnum.ARGS.getValue());
+        codeSandBoxDTO.setLanguage(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CodeSandBoxResult runCode() {
+        return sandBox.runCode(codeSandBoxDTO);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.javasandbox.benchmark;
+
+import com.javasandbox.JavaSandboxApplication;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.InputModeEnum;
+import com.javasandbox.sandbox.JavaNativeCodeSandBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原生沙箱端到端：扫描、编译、运行示例代码并汇总结果
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NativeSandboxBenchmark {
+
+    // 正常、运行错误、命中禁用代码
+    @Param({"Main", "RunCodeError", "FileReadError"})
+    public String sample;
+
+    // 关闭时每个用例单独启动JVM
+    @Param({"true", "false"})
+    public boolean runnerPool;
+
+    private ConfigurableApplicationContext context;
+
+    private JavaNativeCodeSandBox sandBox;
+
+    private CodeSandBoxDTO codeSandBoxDTO;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(JavaSandboxApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("sandbox.runner-pool.enabled=" + runnerPool, "logging.level.root=WARN")
+                .run();
+        sandBox = context.getBean(JavaNativeCodeSandBox.class);
+        codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setCode(Samples.read(sample));
+        codeSandBoxDTO.setInput(Arrays.asList("1 2", "2 3"));
+        codeSandBoxDTO.setInputMode(InputModeEnum.ARGS.getValue());
+        codeSandBoxDTO.setLanguage(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CodeSandBoxResult runCode() {
+        return sandBox.runCode(codeSandBoxDTO);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.javasandbox.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.utils.CmdOutResult;
+import com.javasandbox.utils.ProcessUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程启动与输出读取（Linux）：空进程、单独启动JVM执行示例代码、ProcessUtil读取大量输出
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessBenchmark {
+
+    // 输出字节数
+    @Param({"65536", "4194304"})
+    public int outputSize;
+
+    private File classDir;
+
+    @Setup
+    public void setup() throws IOException {
+        classDir = Files.createTempDirectory("bench-process").toFile();
+        new InMemoryJavaCompiler().compile(Samples.read("Main")).writeClassFiles(classDir.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(classDir);
+    }
+
+    @Benchmark
+    public int launchProcess() throws IOException, InterruptedException {
+        return new ProcessBuilder("true").start().waitFor();
+    }
+
+    @Benchmark
+    public CmdOutResult launchJvm() throws IOException {
+        Process process = new ProcessBuilder("java", "-Dfile.encoding=utf-8", "-Xmx56m",
+                "-cp", classDir.getAbsolutePath(), "Main", "1", "2").start();
+        return ProcessUtil.getCmdOutput(process);
+    }
+
+    @Benchmark
+    public CmdOutResult drainOutput() throws IOException {
+        Process process = new ProcessBuilder("head", "-c", String.valueOf(outputSize), "/dev/zero").start();
+        return ProcessUtil.getCmdOutput(process, ProcessUtil.DEFAULT_OUTPUT_LIMIT, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.javasandbox.benchmark;
+
+import cn.hutool.core.io.resource.ResourceUtil;
+
+/**
+ * 读取src/main/resources/code下的示例代码
+ */
+final class Samples {
+
+    private Samples() {
+    }
+
+    static String read(String name) {
+        return ResourceUtil.readUtf8Str("code/" + name + ".java");
+    }
+
+}
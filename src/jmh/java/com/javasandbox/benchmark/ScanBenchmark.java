@@ -0,0 +1,77 @@
+package com.javasandbox.benchmark;
+
+import cn.hutool.dfa.WordTree;
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.security.ForbiddenPatternScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 禁用代码扫描：每次请求新建WordTree（原实现）、共享自动机扫描源码、扫描字节码常量池
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+
+    private static final List<String> BLACK_LIST = Arrays.asList("File", "Write", "Read");
+
+    @Param({"Main", "TimeError"})
+    public String sample;
+
+    private String code;
+
+    private Map<String, byte[]> classBytes;
+
+    private ForbiddenPatternScanner scanner;
+
+    @Setup
+    public void setup() {
+        code = Samples.read(sample);
+        classBytes = new InMemoryJavaCompiler().compile(code).getClassBytes();
+        scanner = new ForbiddenPatternScanner(new SandboxProperties());
+        scanner.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scanner.close();
+    }
+
+    @Benchmark
+    public String wordTreePerRequest() {
+        WordTree wordTree = new WordTree();
+        wordTree.addWords(BLACK_LIST);
+        return wordTree.match(code);
+    }
+
+    @Benchmark
+    public String sharedSourceScan() {
+        return scanner.scanSource(code);
+    }
+
+    @Benchmark
+    public String bytecodeScan() {
+        return scanner.scanBytecode(classBytes);
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.javasandbox.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 源码落盘：javac编译前需要先把提交写成Main.java
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceWriteBenchmark {
+
+    @Param({"Main", "TimeError"})
+    public String sample;
+
+    private String code;
+
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException {
+        code = Samples.read(sample);
+        dir = Files.createTempDirectory("bench-source").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public File writeSource() {
+        return FileUtil.writeString(code, new File(dir, "Main.java"), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.javasandbox.benchmark;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+import com.javasandbox.runner.RunnerMain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Docker Engine API的桩实现，用于在没有Docker守护进程的环境下测量Docker沙箱自身的开销
+ * 容器与exec只记录ID，exec返回固定的用例结果：批量执行返回RunnerMain协议的结果，逐个执行返回一帧标准输出
+ * 不真正执行用户代码（请求文件中是容器内路径），测到的是客户端序列化、请求文件读写与结果解析的耗时
+ */
+public class StubDockerHttpClient implements DockerHttpClient {
+
+    private static final Pattern VERSION_PREFIX = Pattern.compile("^/v[0-9.]+");
+
+    private static final String RAW_STREAM = "application/vnd.docker.raw-stream";
+
+    private static final int STDOUT = 1;
+
+    // 批量执行每次返回的用例数，与基准测试的用例数一致
+    private final int caseCount;
+
+    // 每个用例的标准输出
+    private final byte[] stdout;
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    // exec ID -> 是否为批量执行
+    private final Map<String, Boolean> execs = new ConcurrentHashMap<>();
+
+    public StubDockerHttpClient(int caseCount, String stdout) {
+        this.caseCount = caseCount;
+        this.stdout = stdout.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String path = VERSION_PREFIX.matcher(request.path()).replaceFirst("");
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String[] parts = path.split("/");
+        String method = request.method();
+        if ("/containers/json".equals(path)) {
+            return json("[]");
+        }
+        if (path.startsWith("/images/")) {
+            return json("{\"Id\":\"sha256:stub\"}");
+        }
+        if ("/containers/create".equals(path)) {
+            return json("{\"Id\":\"" + nextId("container") + "\",\"Warnings\":[]}");
+        }
+        if (path.startsWith("/containers/") && parts.length == 3 && "DELETE".equals(method)) {
+            return new StubResponse(204, null, new byte[0]);
+        }
+        if (path.startsWith("/containers/") && parts.length == 4) {
+            switch (parts[3]) {
+                case "start":
+                    return new StubResponse(204, null, new byte[0]);
+                case "update":
+                    return json("{\"Warnings\":[]}");
+                case "json":
+                    return json("{\"Id\":\"" + parts[2] + "\",\"State\":{\"Running\":true}}");
+                case "stats":
+                    return json("{\"memory_stats\":{\"usage\":8388608},"
+                            + "\"cpu_stats\":{\"cpu_usage\":{\"total_usage\":1000000}}}");
+                case "exec":
+                    String execId = nextId("exec");
+                    byte[] body = request.bodyBytes();
+                    execs.put(execId, body != null && new String(body, StandardCharsets.UTF_8)
+                            .contains(RunnerMain.class.getName()));
+                    return json("{\"Id\":\"" + execId + "\"}");
+                default:
+                    break;
+            }
+        }
+        if (path.startsWith("/exec/") && parts.length == 4) {
+            if ("json".equals(parts[3])) {
+                return json("{\"ID\":\"" + parts[2] + "\",\"Running\":false,\"ExitCode\":0}");
+            }
+            if ("start".equals(parts[3])) {
+                return startExec(request, Boolean.TRUE.equals(execs.remove(parts[2])));
+            }
+        }
+        return new StubResponse(404, "application/json",
+                ("{\"message\":\"stub: " + method + " " + path + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response startExec(Request request, boolean batch) {
+        try {
+            InputStream stdin = request.hijackedInput();
+            if (stdin != null) {
+                // 读完标准输入，与真实exec一样走一遍输入流
+                byte[] buffer = new byte[8192];
+                while (stdin.read(buffer) >= 0) {
+                    // 丢弃
+                }
+            }
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            if (batch) {
+                DataOutputStream out = new DataOutputStream(payload);
+                out.writeInt(RunnerMain.READY);
+                for (int i = 0; i < caseCount; i++) {
+                    out.writeInt(RunnerMain.STATUS_OK);
+                    out.writeInt(0);
+                    out.writeLong(TimeUnit.MILLISECONDS.toNanos(1));
+                    out.writeLong(TimeUnit.MILLISECONDS.toNanos(1));
+                    out.writeLong(8 * 1024 * 1024);
+                    out.writeBoolean(false);
+                    out.writeInt(stdout.length);
+                    out.write(stdout);
+                    out.writeInt(0);
+                }
+                out.flush();
+            } else {
+                payload.write(stdout);
+            }
+            return new StubResponse(200, RAW_STREAM, frame(STDOUT, payload.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 多路复用流的一帧：类型(1字节) + 3字节填充 + 长度(4字节大端) + 内容
+     */
+    private static byte[] frame(int streamType, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 8);
+        out.write(streamType);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(payload.length >>> 24);
+        out.write(payload.length >>> 16);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+        out.write(payload, 0, payload.length);
+        return out.toByteArray();
+    }
+
+    private String nextId(String prefix) {
+        return prefix + ids.incrementAndGet();
+    }
+
+    private static Response json(String body) {
+        return new StubResponse(200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static class StubResponse implements Response {
+
+        private final int statusCode;
+
+        private final Map<String, List<String>> headers;
+
+        private final InputStream body;
+
+        StubResponse(int statusCode, String contentType, byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = contentType == null ? Collections.emptyMap()
+                    : Collections.singletonMap("Content-Type", Collections.singletonList(contentType));
+            this.body = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
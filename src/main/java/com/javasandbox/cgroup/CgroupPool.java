@@ -0,0 +1,229 @@
+package com.javasandbox.cgroup;
+
+import com.javasandbox.config.SandboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原生运行的cgroup v2子组池
+ * 每次运行独占一个新建的子组，按配置写入memory.max/pids.max/cpu.max，资源统计从同一个子组读取；
+ * 子组只用一次：归还后由后台线程杀死残留进程并删除，再补充新的空闲子组，建删都不在判题路径上
+ */
+@Slf4j
+@Component
+public class CgroupPool {
+
+    private static final String NAME_PREFIX = "run-";
+
+    // 需要的控制器
+    private static final String CONTROLLERS = "+memory +pids +cpu";
+
+    // cpu.max的周期（微秒）
+    private static final long CPU_PERIOD = 100000L;
+
+    // 删除子组时等待进程退出的重试次数
+    private static final int REMOVE_RETRIES = 20;
+
+    private final SandboxProperties.Cgroup config;
+
+    // 子组内存上限（字节）
+    private final long memoryLimit;
+
+    private final File root;
+
+    private final ConcurrentLinkedQueue<File> idleGroups = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 删除用过的子组、补充空闲子组
+    private final ExecutorService cleaner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cgroup-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean available = false;
+
+    public CgroupPool(SandboxProperties sandboxProperties) {
+        this.config = sandboxProperties.getCgroup();
+        this.memoryLimit = sandboxProperties.getMemory().getLimit();
+        this.root = new File(config.getRoot());
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            // 先确认是cgroup v2，避免在cgroup v1的tmpfs上建出普通目录
+            File controllers = new File(root.isDirectory() ? root : root.getParentFile(), "cgroup.controllers");
+            if (!controllers.isFile()) {
+                throw new IOException("不是cgroup v2目录：" + controllers.getParent());
+            }
+            if (!root.isDirectory() && !root.mkdir()) {
+                throw new IOException("无法创建父cgroup：" + root);
+            }
+            write(new File(root, "cgroup.subtree_control"), CONTROLLERS);
+            // 清理上次运行遗留的子组
+            File[] leftovers = root.listFiles(file -> file.isDirectory() && file.getName().startsWith(NAME_PREFIX));
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    remove(leftover);
+                }
+            }
+            for (int i = 0; i < config.getPoolSize(); i++) {
+                idleGroups.offer(create());
+            }
+            available = true;
+            log.info("原生运行使用cgroup v2子组：{}", root);
+        } catch (IOException e) {
+            log.warn("cgroup v2不可用，原生运行不限制内存/进程数/CPU：{}", e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 取一个未使用过的子组，空闲子组用完时当场创建
+     * @return 不可用或创建失败时返回null
+     */
+    public RunGroup acquire() {
+        if (!available) {
+            return null;
+        }
+        File dir = idleGroups.poll();
+        try {
+            if (dir == null) {
+                dir = create();
+            }
+            return new RunGroup(this, dir);
+        } catch (IOException e) {
+            log.warn("创建cgroup子组失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 归还子组，由后台线程删除并补充新的空闲子组
+     */
+    void release(File dir) {
+        try {
+            cleaner.execute(() -> {
+                remove(dir);
+                if (available && idleGroups.size() < config.getPoolSize()) {
+                    try {
+                        idleGroups.offer(create());
+                    } catch (IOException e) {
+                        log.warn("补充cgroup子组失败：{}", e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 关闭期间归还的子组直接删除
+            remove(dir);
+        }
+    }
+
+    /**
+     * 创建子组并写入资源限制
+     */
+    private File create() throws IOException {
+        File dir = new File(root, NAME_PREFIX + sequence.incrementAndGet());
+        if (!dir.mkdir()) {
+            throw new IOException("无法创建cgroup子组：" + dir);
+        }
+        write(new File(dir, "memory.max"), String.valueOf(memoryLimit));
+        // 不允许使用swap绕过内存上限
+        File swapMax = new File(dir, "memory.swap.max");
+        if (swapMax.isFile()) {
+            write(swapMax, "0");
+        }
+        write(new File(dir, "pids.max"), String.valueOf(config.getPidsLimit()));
+        if (config.getCpuQuota() > 0) {
+            write(new File(dir, "cpu.max"), (long) (config.getCpuQuota() * CPU_PERIOD) + " " + CPU_PERIOD);
+        }
+        return dir;
+    }
+
+    /**
+     * 杀死子组内残留的进程后删除子组
+     */
+    private void remove(File dir) {
+        File kill = new File(dir, "cgroup.kill");
+        for (int i = 0; i < REMOVE_RETRIES; i++) {
+            try {
+                if (kill.isFile()) {
+                    write(kill, "1");
+                } else {
+                    // Linux 5.14以前没有cgroup.kill，逐个结束
+                    for (String pid : readLines(new File(dir, "cgroup.procs"))) {
+                        ProcessHandle.of(Long.parseLong(pid.trim())).ifPresent(ProcessHandle::destroyForcibly);
+                    }
+                }
+                Files.deleteIfExists(dir.toPath());
+                return;
+            } catch (DirectoryNotEmptyException e) {
+                // 不是cgroup文件系统，无法删除
+                log.warn("删除cgroup子组失败，目录非空：{}", dir);
+                return;
+            } catch (IOException | NumberFormatException e) {
+                // 进程尚未完全退出，稍后重试
+                try {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        log.warn("删除cgroup子组失败：{}", dir);
+    }
+
+    int getIdleCount() {
+        return idleGroups.size();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+    }
+
+    private static void write(File file, String value) throws IOException {
+        Files.write(file.toPath(), value.getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @PreDestroy
+    public void close() {
+        available = false;
+        cleaner.shutdown();
+        try {
+            cleaner.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        File dir;
+        while ((dir = idleGroups.poll()) != null) {
+            remove(dir);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.javasandbox.cgroup;
+
+import com.javasandbox.docker.CgroupStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次运行独占的cgroup v2子组，用完后close交给后台删除
+ */
+public class RunGroup implements AutoCloseable {
+
+    private final CgroupPool pool;
+
+    private final File dir;
+
+    private boolean closed = false;
+
+    RunGroup(CgroupPool pool, File dir) {
+        this.pool = pool;
+        this.dir = dir;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * 包装启动命令：先由shell把自身加入子组再exec原命令，进程从第一条指令起就受限制并计入统计
+     */
+    public List<String> wrap(List<String> command) {
+        String procs = new File(dir, "cgroup.procs").getAbsolutePath().replace("'", "'\\''");
+        List<String> wrapped = new ArrayList<>();
+        wrapped.add("/bin/sh");
+        wrapped.add("-c");
+        wrapped.add("echo $$ > '" + procs + "' && exec \"$0\" \"$@\"");
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * 子组创建以来的资源使用，子组只用于本次运行，即本次运行的CPU时间、峰值内存与是否被OOM Killer杀死
+     */
+    public CgroupStats.Usage usage() throws IOException {
+        return CgroupStats.of(dir).total();
+    }
+
+    /**
+     * 开始统计一个用例：常驻运行器在同一子组中执行多个用例，累计值会跨用例叠加，需按用例前后的差值统计
+     */
+    public CgroupStats.Sample sample() throws IOException {
+        return CgroupStats.of(dir).start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(dir);
+        }
+    }
+
+}
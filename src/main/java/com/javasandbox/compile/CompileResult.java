@@ -0,0 +1,34 @@
+package com.javasandbox.compile;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.Data;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 内存编译结果
+ */
+@Data
+public class CompileResult {
+
+    // 是否编译成功
+    private boolean success;
+    // 编译诊断信息（格式同javac输出）
+    private String message;
+    // 类全限定名 -> 字节码
+    private Map<String, byte[]> classBytes = Collections.emptyMap();
+
+    /**
+     * 将字节码写入目录，仅在运行阶段需要class文件时调用
+     * @param dir 输出目录（即classpath根目录）
+     */
+    public void writeClassFiles(String dir) {
+        classBytes.forEach((className, bytes) -> {
+            String classPath = dir + File.separator + className.replace('.', File.separatorChar) + ".class";
+            FileUtil.writeBytes(bytes, classPath);
+        });
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.javasandbox.compile;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.javasandbox.config.SandboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编译结果缓存，按 源码+编译参数 的哈希寻址
+ * 内存层LRU（条目数+字节数双上限），可选磁盘层，相同源码并发提交时只编译一次
+ */
+@Slf4j
+@Component
+public class CompiledClassCache {
+
+    private final InMemoryJavaCompiler javaCompiler;
+
+    private final SandboxProperties.CompileCache config;
+
+    // 按访问顺序排列的LRU表，读写都在this上同步
+    private final LinkedHashMap<String, CompileResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 正在编译中的请求，相同key的并发请求共享同一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<CompileResult>> inFlight = new ConcurrentHashMap<>();
+
+    private long cacheBytes = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong diskHitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    @Autowired
+    public CompiledClassCache(SandboxProperties sandboxProperties) {
+        this(new InMemoryJavaCompiler(), sandboxProperties.getCompileCache());
+    }
+
+    public CompiledClassCache(InMemoryJavaCompiler javaCompiler, SandboxProperties.CompileCache config) {
+        this.javaCompiler = javaCompiler;
+        this.config = config;
+    }
+
+    /**
+     * 编译用户代码，优先命中缓存
+     * @param code 用户提交的Main.java源码
+     */
+    public CompileResult compile(String code) {
+        if (!config.isEnabled()) {
+            return javaCompiler.compile(code);
+        }
+        String key = cacheKey(code, javaCompiler.getOptions());
+        // 1.内存缓存
+        CompileResult compileResult = getFromMemory(key);
+        if (compileResult != null) {
+            hitCount.incrementAndGet();
+            return compileResult;
+        }
+        // 2.相同key只允许一个线程编译，其余线程等待其结果
+        CompletableFuture<CompileResult> future = new CompletableFuture<>();
+        CompletableFuture<CompileResult> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            hitCount.incrementAndGet();
+            return running.join();
+        }
+        try {
+            // 抢到编译权前可能已有线程完成编译，再查一次内存
+            compileResult = getFromMemory(key);
+            if (compileResult != null) {
+                hitCount.incrementAndGet();
+                future.complete(compileResult);
+                return compileResult;
+            }
+            compileResult = getFromDisk(key);
+            if (compileResult != null) {
+                diskHitCount.incrementAndGet();
+            } else {
+                missCount.incrementAndGet();
+                compileResult = javaCompiler.compile(code);
+                compileResult.setClassBytes(Collections.unmodifiableMap(compileResult.getClassBytes()));
+                putToDisk(key, compileResult);
+            }
+            putToMemory(key, compileResult);
+            future.complete(compileResult);
+            return compileResult;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * 缓存key：sha256(编译参数 + 源码)
+     */
+    static String cacheKey(String code, List<String> options) {
+        return DigestUtil.sha256Hex(String.join(" ", options) + "\n" + code);
+    }
+
+    private synchronized CompileResult getFromMemory(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void putToMemory(String key, CompileResult compileResult) {
+        CompileResult previous = cache.put(key, compileResult);
+        if (previous != null) {
+            cacheBytes -= sizeOf(previous);
+        }
+        cacheBytes += sizeOf(compileResult);
+        // 淘汰最久未访问的条目，直到满足条目数与字节数上限
+        Iterator<Map.Entry<String, CompileResult>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext() && (cache.size() > config.getMaxEntries() || cacheBytes > config.getMaxBytes())) {
+            Map.Entry<String, CompileResult> eldest = iterator.next();
+            cacheBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(CompileResult compileResult) {
+        long size = compileResult.getMessage() == null ? 0 : compileResult.getMessage().length() * 2L;
+        for (byte[] bytes : compileResult.getClassBytes().values()) {
+            size += bytes.length;
+        }
+        return size;
+    }
+
+    /**
+     * 磁盘层只保存编译成功的字节码：diskDir/key/*.class
+     */
+    private CompileResult getFromDisk(String key) {
+        if (StrUtil.isBlank(config.getDiskDir())) {
+            return null;
+        }
+        File dir = new File(config.getDiskDir(), key);
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        Map<String, byte[]> classBytes = new LinkedHashMap<>();
+        String root = dir.getAbsolutePath() + File.separator;
+        for (File classFile : FileUtil.loopFiles(dir, file -> file.getName().endsWith(".class"))) {
+            String relative = StrUtil.removePrefix(classFile.getAbsolutePath(), root);
+            String className = StrUtil.removeSuffix(relative, ".class").replace(File.separatorChar, '.');
+            classBytes.put(className, FileUtil.readBytes(classFile));
+        }
+        if (classBytes.isEmpty()) {
+            return null;
+        }
+        CompileResult compileResult = new CompileResult();
+        compileResult.setSuccess(true);
+        compileResult.setMessage("");
+        compileResult.setClassBytes(Collections.unmodifiableMap(classBytes));
+        return compileResult;
+    }
+
+    private void putToDisk(String key, CompileResult compileResult) {
+        if (StrUtil.isBlank(config.getDiskDir()) || !compileResult.isSuccess()) {
+            return;
+        }
+        // 先写临时目录再重命名，避免其他实例读到写了一半的缓存
+        File dir = new File(config.getDiskDir(), key);
+        File tmpDir = new File(config.getDiskDir(), key + ".tmp" + Thread.currentThread().getId());
+        try {
+            compileResult.writeClassFiles(tmpDir.getAbsolutePath());
+            if (!tmpDir.renameTo(dir)) {
+                FileUtil.del(tmpDir);
+            }
+        } catch (RuntimeException e) {
+            log.warn("写入编译磁盘缓存失败：{}", dir, e);
+            FileUtil.del(tmpDir);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getCacheBytes() {
+        return cacheBytes;
+    }
+
+}
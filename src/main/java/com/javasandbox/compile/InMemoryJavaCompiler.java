@@ -0,0 +1,88 @@
+package com.javasandbox.compile;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 进程内编译器，基于javax.tools在内存中完成编译，不再为每次提交启动javac进程
+ */
+public class InMemoryJavaCompiler {
+
+    // 用户代码固定的主类名
+    public static final String MAIN_CLASS = "Main";
+
+    // 默认编译参数，关闭注解处理器扫描以减少编译耗时
+    public static final List<String> DEFAULT_OPTIONS = Collections.unmodifiableList(
+            Arrays.asList("-encoding", "utf-8", "-proc:none"));
+
+    private final JavaCompiler compiler;
+
+    private final List<String> options;
+
+    public InMemoryJavaCompiler() {
+        this(DEFAULT_OPTIONS);
+    }
+
+    public InMemoryJavaCompiler(List<String> options) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("当前运行环境不是JDK，无法获取Java编译器");
+        }
+        this.options = options;
+    }
+
+    public List<String> getOptions() {
+        return options;
+    }
+
+    /**
+     * 编译用户代码
+     * @param code 用户提交的Main.java源码
+     */
+    public CompileResult compile(String code) {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        CompileResult compileResult = new CompileResult();
+        StandardJavaFileManager standardFileManager =
+                compiler.getStandardFileManager(diagnostics, Locale.getDefault(), StandardCharsets.UTF_8);
+        try (MemoryJavaFileManager fileManager = new MemoryJavaFileManager(standardFileManager)) {
+            JavaFileObject source = MemoryJavaFileManager.sourceOf(MAIN_CLASS, code);
+            Boolean success = compiler.getTask(null, fileManager, diagnostics, options,
+                    null, Collections.singletonList(source)).call();
+            compileResult.setSuccess(Boolean.TRUE.equals(success));
+            compileResult.setMessage(formatDiagnostics(diagnostics.getDiagnostics()));
+            if (compileResult.isSuccess()) {
+                compileResult.setClassBytes(fileManager.getClassBytes());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return compileResult;
+    }
+
+    /**
+     * 按javac命令行的格式拼接诊断信息：Main.java:行号: error: 信息
+     */
+    private static String formatDiagnostics(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            if (diagnostic.getSource() != null) {
+                stringBuilder.append(MAIN_CLASS).append(".java:")
+                        .append(diagnostic.getLineNumber()).append(": ");
+            }
+            stringBuilder.append(diagnostic.getKind().name().toLowerCase(Locale.ROOT)).append(": ")
+                    .append(diagnostic.getMessage(Locale.getDefault())).append("\n");
+        }
+        return stringBuilder.toString();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.javasandbox.compile;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存文件管理器，源码与编译出的字节码都只保存在内存中
+ */
+public class MemoryJavaFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    // 类全限定名 -> 字节码输出流
+    private final Map<String, ByteArrayOutputStream> classBytes = new LinkedHashMap<>();
+
+    public MemoryJavaFileManager(JavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                               JavaFileObject.Kind kind, FileObject sibling) {
+        return new ClassFileObject(className, kind);
+    }
+
+    /**
+     * 获取编译产出的全部字节码
+     */
+    public Map<String, byte[]> getClassBytes() {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        classBytes.forEach((name, out) -> result.put(name, out.toByteArray()));
+        return result;
+    }
+
+    /**
+     * 构造内存源码文件
+     * @param className 类名
+     * @param code 源码
+     */
+    public static JavaFileObject sourceOf(String className, String code) {
+        return new SourceFileObject(className, code);
+    }
+
+    private static URI fileUri(String className, JavaFileObject.Kind kind) {
+        return URI.create("string:///" + className.replace('.', '/') + kind.extension);
+    }
+
+    /**
+     * 内存源码文件
+     */
+    private static class SourceFileObject extends SimpleJavaFileObject {
+
+        private final String code;
+
+        SourceFileObject(String className, String code) {
+            super(fileUri(className, Kind.SOURCE), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * 内存字节码文件，javac写出时直接落到classBytes中
+     */
+    private class ClassFileObject extends SimpleJavaFileObject {
+
+        private final String className;
+
+        ClassFileObject(String className, Kind kind) {
+            super(fileUri(className, kind), kind);
+            this.className = className;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            classBytes.put(className, out);
+            return out;
+        }
+    }
+
+}
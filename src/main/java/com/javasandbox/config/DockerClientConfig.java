@@ -0,0 +1,41 @@
+package com.javasandbox.config;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 全局共享一个DockerClient，基于httpclient5连接池复用与守护进程的连接
+ */
+@Configuration
+public class DockerClientConfig {
+
+    /**
+     * 已注册DockerClient时（如基准测试中的桩）不再创建
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public DockerClient dockerClient(SandboxProperties sandboxProperties) {
+        SandboxProperties.Docker config = sandboxProperties.getDocker();
+        DefaultDockerClientConfig.Builder configBuilder = DefaultDockerClientConfig.createDefaultConfigBuilder();
+        if (config.getHost() != null && !config.getHost().isEmpty()) {
+            configBuilder.withDockerHost(config.getHost());
+        }
+        DefaultDockerClientConfig clientConfig = configBuilder.build();
+        ApacheDockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
+                .dockerHost(clientConfig.getDockerHost())
+                .sslConfig(clientConfig.getSSLConfig())
+                .maxConnections(config.getMaxConnections())
+                .connectionTimeout(Duration.ofMillis(config.getConnectionTimeout()))
+                .responseTimeout(Duration.ofMillis(config.getResponseTimeout()))
+                .build();
+        return DockerClientImpl.getInstance(clientConfig, httpClient);
+    }
+
+}
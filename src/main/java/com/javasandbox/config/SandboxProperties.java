@@ -0,0 +1,388 @@
+package com.javasandbox.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 沙箱配置，对应application.yml中的sandbox前缀
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sandbox")
+public class SandboxProperties {
+
+    // 编译缓存配置
+    private CompileCache compileCache = new CompileCache();
+
+    // 原生沙箱常驻运行器池配置
+    private RunnerPool runnerPool = new RunnerPool();
+
+    // Docker沙箱容器池配置
+    private Docker docker = new Docker();
+
+    // 异步判题任务配置
+    private Job job = new Job();
+
+    // 用例并行执行配置
+    private Parallel parallel = new Parallel();
+
+    // 用户程序输出配置
+    private Output output = new Output();
+
+    // 原生沙箱内存限制配置
+    private Memory memory = new Memory();
+
+    // 用例时间限制配置
+    private Time time = new Time();
+
+    // 用例输入配置
+    private Input input = new Input();
+
+    // 输出比对配置
+    private Judge judge = new Judge();
+
+    // 禁用代码扫描配置
+    private Scan scan = new Scan();
+
+    // 判题分阶段耗时指标
+    private Metrics metrics = new Metrics();
+
+    // 判题工作目录
+    private Workspace workspace = new Workspace();
+
+    // 判题结果缓存
+    private ResultCache resultCache = new ResultCache();
+
+    // 命名空间沙箱配置
+    private Namespace namespace = new Namespace();
+
+    // 原生运行的cgroup v2资源限制
+    private Cgroup cgroup = new Cgroup();
+
+    // 冷启动JVM的启动优化
+    private Startup startup = new Startup();
+
+    // 判题流水线配置
+    private Pipeline pipeline = new Pipeline();
+
+    // 批量判题配置
+    private Batch batch = new Batch();
+
+    @Data
+    public static class CompileCache {
+        // 是否开启编译缓存
+        private boolean enabled = true;
+        // 内存中最多缓存的编译结果数
+        private int maxEntries = 1024;
+        // 内存中缓存字节码的总大小上限（字节）
+        private long maxBytes = 64L * 1024 * 1024;
+        // 磁盘缓存目录，为空则不启用磁盘缓存
+        private String diskDir;
+    }
+
+    @Data
+    public static class RunnerPool {
+        // 是否启用常驻运行器，关闭后每个用例单独启动JVM
+        private boolean enabled = true;
+        // 运行器数量
+        private int size = 2;
+        // 单个运行器最多执行的用例数，达到后回收重建
+        private int maxRuns = 200;
+        // 运行器JVM参数
+        private List<String> jvmOptions = new ArrayList<>(Arrays.asList("-Xmx56m", "-XX:+UseSerialGC"));
+        // 借用运行器的最长等待时间（毫秒），超时后退化为单独启动JVM
+        private long borrowTimeout = 5000L;
+    }
+
+    @Data
+    public static class Docker {
+        // 运行用户代码的JDK镜像
+        private String image = "openjdk:11";
+        // 单个容器的内存上限（字节），同时禁用swap
+        private long memoryLimit = 100L * 1024 * 1024;
+        // 单个容器可用的CPU核数，按CFS配额限制（NanoCPUs）
+        private long cpuCount = 1L;
+        // 单个容器内允许的最大进程/线程数
+        private long pidsLimit = 128L;
+        // 容器池大小
+        private int poolSize = 2;
+        // 单个容器最多服务的提交数，达到后销毁重建
+        private int maxUses = 100;
+        // 借出容器的最长等待时间（毫秒）
+        private long checkoutTimeout = 10000L;
+        // 泄漏容器清理间隔（毫秒）
+        private long reapInterval = 60000L;
+        // 归还前清空容器/tmp的最长等待时间（毫秒），超时的容器销毁重建
+        private long resetTimeout = 5000L;
+        // 单次exec在同一个JVM中跑完全部用例，关闭后每个用例单独exec
+        private boolean batchExec = true;
+        // 守护进程地址，为空则按DOCKER_HOST环境变量或默认的unix socket
+        private String host;
+        // 与守护进程的最大连接数，需覆盖同时进行的exec与统计流
+        private int maxConnections = 64;
+        // 建立连接超时（毫秒）
+        private long connectionTimeout = 5000L;
+        // 等待响应数据超时（毫秒），需大于exec中最长的无输出时间
+        private long responseTimeout = 120000L;
+        // 提交等待镜像就绪（检查或拉取）的最长时间（毫秒）
+        private long imageTimeout = 600000L;
+        // 宿主机cgroup v2挂载点，在此查找容器的cgroup目录直接统计CPU与内存
+        private String cgroupRoot = "/sys/fs/cgroup";
+    }
+
+    @Data
+    public static class Job {
+        // 判题工作线程数
+        private int workers = Runtime.getRuntime().availableProcessors();
+        // 排队任务上限，超出后返回429
+        private int queueCapacity = 1000;
+        // 任务结束后结果保留时长（毫秒）
+        private long resultTtl = 10 * 60 * 1000L;
+        // 长轮询最长等待时间（毫秒）
+        private long maxWait = 30000L;
+    }
+
+    @Data
+    public static class Parallel {
+        // 是否并行执行同一提交的用例，关闭时逐个执行
+        private boolean enabled = false;
+        // 单次提交最多同时执行的用例数
+        private int maxPerSubmission = 4;
+        // 全局执行槽位数，默认为CPU核数
+        private int slots = Runtime.getRuntime().availableProcessors();
+        // 槽位绑定的CPU核心编号，为空则使用0到slots-1
+        private List<Integer> cpus = new ArrayList<>();
+        // 是否把用例绑定到槽位对应的CPU核心（Linux taskset / 容器cpuset）
+        private boolean pinCpu = true;
+    }
+
+    @Data
+    public static class Output {
+        // 单个用例标准输出/错误输出的上限（字节），超出后结束程序并返回输出超限
+        private int limit = 8 * 1024 * 1024;
+        // 用户程序输出的编码，与启动参数-Dfile.encoding保持一致
+        private String charset = "UTF-8";
+    }
+
+    @Data
+    public static class Memory {
+        // 单独启动JVM执行用例时的峰值常驻内存上限（字节），超出后结束程序并返回内存超限，小于等于0不限制
+        private long limit = 256L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Time {
+        // 单个用例默认的CPU时间上限（毫秒），按user+sys统计，超出判为时间超限
+        private long cpuLimit = 3000L;
+        // 单个用例默认的墙钟时间上限（毫秒），比CPU时间宽松，只兜底阻塞等待的程序
+        private long wallLimit = 6000L;
+
+        /**
+         * 本次提交的CPU时间限制：请求指定了则以请求为准
+         */
+        public long resolveCpuLimit(Long timeLimit) {
+            return timeLimit != null && timeLimit > 0 ? timeLimit : cpuLimit;
+        }
+
+        /**
+         * 本次提交的墙钟时间限制：请求指定了CPU时间限制时放宽为其两倍
+         */
+        public long resolveWallLimit(Long timeLimit) {
+            return timeLimit != null && timeLimit > 0 ? timeLimit * 2 : wallLimit;
+        }
+    }
+
+    @Data
+    public static class Input {
+        // 标准输入随请求内联传递的上限（字符数），超过后写入文件并重定向为标准输入
+        private int inlineLimit = 64 * 1024;
+    }
+
+    @Data
+    public static class Judge {
+        // 期望输出文件的根目录，请求中的期望输出文件只能位于该目录下，为空则不允许引用文件
+        private String dataDir;
+        // 浮点误差比较默认允许的绝对/相对误差
+        private double epsilon = 1e-6;
+    }
+
+    @Data
+    public static class Scan {
+        // 是否扫描源码中的敏感词
+        private boolean sourceEnabled = true;
+        // 源码敏感词
+        private List<String> words = new ArrayList<>(Arrays.asList("File", "Write", "Read"));
+        // 是否扫描编译后字节码的常量池
+        private boolean bytecodeEnabled = true;
+        // 禁止引用的类，以*结尾表示前缀匹配（java.io.File*同时覆盖FileDescriptor）
+        private List<String> classes = new ArrayList<>(Arrays.asList("java.io.File*", "java.io.RandomAccessFile",
+                "java.nio.file.*", "java.nio.channels.*", "java.lang.ProcessBuilder*", "java.lang.ProcessHandle*",
+                "java.net.*", "java.lang.reflect.*", "sun.*", "jdk.internal.*", "java.lang.ClassLoader",
+                "java.lang.invoke.MethodHandle", "java.lang.invoke.MethodHandleProxies"));
+        // 禁止调用的方法，格式为 类全限定名.方法名，<init>表示构造方法
+        // lambda与字符串拼接编译后引用MethodHandles$Lookup，因此只禁止取得Lookup与按名查找方法，不禁止整个类
+        private List<String> methods = new ArrayList<>(Arrays.asList("java.lang.Runtime.exec",
+                "java.lang.Runtime.load", "java.lang.Runtime.loadLibrary", "java.lang.System.load",
+                "java.lang.System.loadLibrary", "java.lang.System.setSecurityManager", "java.lang.Class.forName",
+                "java.lang.Class.getClassLoader", "java.lang.Thread.getContextClassLoader",
+                "java.lang.invoke.MethodHandles.lookup", "java.lang.invoke.MethodHandles.publicLookup",
+                "java.lang.invoke.MethodHandles.privateLookupIn", "java.lang.invoke.MethodHandles$Lookup.findVirtual",
+                "java.lang.invoke.MethodHandles$Lookup.findStatic", "java.lang.invoke.MethodHandles$Lookup.findSpecial",
+                "java.lang.invoke.MethodHandles$Lookup.findConstructor", "java.lang.invoke.MethodHandles$Lookup.findClass",
+                "java.lang.Thread.<init>", "java.lang.ThreadGroup.<init>"));
+        // 规则文件，每行一条 word:/class:/method: 规则，存在时替代以上三项配置并在修改后自动重新加载
+        private String rulesFile;
+        // 检查规则文件是否修改的间隔（毫秒）
+        private long reloadInterval = 10000L;
+    }
+
+    @Data
+    public static class Metrics {
+        // 是否记录各阶段耗时指标，关闭后只有请求带debug时才计时
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class Workspace {
+        // 工作目录根目录，为空时优先使用内存文件系统/dev/shm，不可用时使用user.dir/temCode；各实例使用其下以进程号命名的子目录
+        private String root;
+        // 清空后保留复用的目录数
+        private int poolSize = 16;
+        // 工作目录总占用空间上限（字节），超出后拒绝新的判题；按定期统计的占用判断，两次统计之间的突发可能短暂超出
+        private long maxBytes = 512L * 1024 * 1024;
+        // 统计占用空间、清理遗留目录的间隔（毫秒）
+        private long reapInterval = 10000L;
+
+        /**
+         * 本实例实际使用的根目录：共用根目录下以进程号命名的子目录，同一台机器上的多个实例互不干扰
+         */
+        public String resolveRoot() {
+            return resolveSharedRoot() + File.separator + ProcessHandle.current().pid();
+        }
+
+        /**
+         * 同一台机器上各实例共用的根目录
+         */
+        public String resolveSharedRoot() {
+            if (root != null && !root.isEmpty()) {
+                return root;
+            }
+            File shm = new File("/dev/shm");
+            if (shm.isDirectory() && shm.canWrite()) {
+                return shm.getAbsolutePath() + File.separator + "java-sandbox";
+            }
+            return System.getProperty("user.dir") + File.separator + "temCode";
+        }
+    }
+
+    @Data
+    public static class ResultCache {
+        // 是否缓存判题结果，相同提交直接返回
+        private boolean enabled = false;
+        // 缓存版本，沙箱判题行为变化（升级JDK、修改比对逻辑等）后修改，使旧结果失效
+        private String version = "1";
+        // 最多缓存的结果数
+        private int maxEntries = 10000;
+        // 缓存结果占用内存上限（字节，估算）
+        private long maxBytes = 64L * 1024 * 1024;
+        // 结果过期时间（毫秒）
+        private long ttl = 10 * 60 * 1000L;
+        // 耗时达到限制的这一比例时结果可能随负载变化，不缓存
+        private double nearLimitRatio = 0.8;
+    }
+
+    @Data
+    public static class Namespace {
+        // 是否启用命名空间沙箱，启用后启动时检测当前系统能否创建非特权用户命名空间
+        private boolean enabled = true;
+        // unshare命令
+        private String unshare = "unshare";
+        // 只读绑定到沙箱根目录的宿主机目录（JDK目录总是只读绑定到/jdk），符号链接按原样创建
+        private List<String> readOnlyPaths = new ArrayList<>(Arrays.asList("/usr", "/lib", "/lib64", "/bin"));
+        // 沙箱根目录tmpfs大小（字节）
+        private long tmpfsSize = 64L * 1024 * 1024;
+        // 运行器JVM参数
+        private List<String> jvmOptions = new ArrayList<>(Arrays.asList("-Xmx56m", "-XX:+UseSerialGC"));
+        // 单个文件大小上限（字节，RLIMIT_FSIZE）
+        private long fileSizeLimit = 16L * 1024 * 1024;
+        // 打开文件数上限（RLIMIT_NOFILE）
+        private int openFilesLimit = 256;
+    }
+
+    @Data
+    public static class Cgroup {
+        // 是否把原生运行放进独立的cgroup v2子组，启用后启动时检测，不可用（cgroup v1、无写权限）时不限制
+        private boolean enabled = true;
+        // 各次运行子组的父cgroup，需要可写且开启了memory/pids/cpu控制器
+        private String root = "/sys/fs/cgroup/java-sandbox";
+        // 预先创建的空闲子组数
+        private int poolSize = 8;
+        // 子组内最多进程/线程数（pids.max）
+        private int pidsLimit = 64;
+        // 子组可使用的CPU核数（cpu.max），小于等于0不限制
+        private double cpuQuota = 1.0;
+    }
+
+    @Data
+    public static class Startup {
+        // 是否为宿主机JDK与Docker镜像生成运行器的AppCDS归档
+        private boolean cdsEnabled = true;
+        // 冷启动运行用户代码的JVM参数（单独启动的JVM、命名空间与Docker中的运行器），堆大小固定
+        private List<String> jvmOptions = new ArrayList<>(Arrays.asList("-XX:TieredStopAtLevel=1",
+                "-XX:+UseSerialGC", "-Xms56m", "-Xmx56m", "-XX:-UsePerfData", "-Xshare:auto"));
+        // 启动后测量默认参数与优化参数启动耗时的次数，0不测量
+        private int measureRuns = 5;
+        // 生成归档的超时时间（毫秒）
+        private long dumpTimeout = 60000L;
+    }
+
+    @Data
+    public static class Pipeline {
+        // 是否按阶段分给独立的线程池执行，关闭时全部阶段在请求线程中依次执行
+        private boolean enabled = true;
+        // 源码扫描
+        private Stage scan = new Stage(2);
+        // 编译与字节码扫描
+        private Stage compile = new Stage(Runtime.getRuntime().availableProcessors());
+        // 工作目录准备（Docker沙箱在此借出容器）
+        private Stage workspace = new Stage(Runtime.getRuntime().availableProcessors());
+        // 用例执行，线程大多在等待用户进程
+        private Stage execute = new Stage(2 * Runtime.getRuntime().availableProcessors());
+        // 汇总判题结果
+        private Stage judge = new Stage(2);
+        // 归还工作目录与容器
+        private Stage cleanup = new Stage(2);
+    }
+
+    @Data
+    public static class Stage {
+        // 线程数
+        private int threads;
+        // 排队上限，排满后上一阶段阻塞等待
+        private int queueCapacity = 256;
+
+        public Stage() {
+        }
+
+        public Stage(int threads) {
+            this.threads = threads;
+        }
+    }
+
+    @Data
+    public static class Batch {
+        // 全部批量请求共享的判题线程数
+        private int concurrency = Runtime.getRuntime().availableProcessors();
+        // 单次批量请求最多的提交数
+        private int maxSize = 10000;
+        // 单次批量请求的响应超时时间（毫秒）
+        private long timeout = 60 * 60 * 1000L;
+    }
+
+}
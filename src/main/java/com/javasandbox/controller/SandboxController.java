@@ -1,26 +1,176 @@
 package com.javasandbox.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javasandbox.job.BatchJudgeService;
+import com.javasandbox.job.JudgeJob;
+import com.javasandbox.job.JudgeJobService;
 import com.javasandbox.sandbox.JavaDockerCodeSandBox;
 import com.javasandbox.model.CodeSandBoxDTO;
 import com.javasandbox.model.CodeSandBoxResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/sandbox")
 public class SandboxController {
 
+    private static final MediaType NDJSON = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+
     @Resource
     JavaDockerCodeSandBox codeSandBox;
 
+    @Resource
+    JudgeJobService judgeJobService;
+
+    @Resource
+    BatchJudgeService batchJudgeService;
+
+    @Resource
+    ObjectMapper objectMapper;
+
     @PostMapping("/run")
     public CodeSandBoxResult runCode(@RequestBody CodeSandBoxDTO codeSandBoxDTO){
         CodeSandBoxResult codeSandBoxResult = codeSandBox.runCode(codeSandBoxDTO);
         return codeSandBoxResult;
     }
 
+    /**
+     * 异步提交判题任务，立即返回任务id；队列已满时返回429并通过Retry-After提示重试间隔
+     * @param priority 优先级，越大越先执行
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<JudgeJob> submitJob(@RequestBody CodeSandBoxDTO codeSandBoxDTO,
+                                              @RequestParam(defaultValue = "0") int priority) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(judgeJobService.submit(codeSandBoxDTO, priority));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(judgeJobService.retryAfterSeconds()))
+                    .build();
+        }
+    }
+
+    /**
+     * 查询判题任务，wait大于0时长轮询：任务结束或等待超时后返回，等待期间不占用请求线程
+     * @param wait 最长等待时间（毫秒）
+     */
+    @GetMapping("/jobs/{id}")
+    public DeferredResult<ResponseEntity<JudgeJob>> getJob(@PathVariable String id,
+                                                           @RequestParam(defaultValue = "0") long wait) {
+        JudgeJob judgeJob = judgeJobService.getJob(id);
+        if (judgeJob == null || judgeJob.isDone() || wait <= 0) {
+            DeferredResult<ResponseEntity<JudgeJob>> deferredResult = new DeferredResult<>();
+            deferredResult.setResult(judgeJob == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(judgeJob));
+            return deferredResult;
+        }
+        long timeout = Math.min(wait, judgeJobService.getMaxWait());
+        DeferredResult<ResponseEntity<JudgeJob>> deferredResult =
+                new DeferredResult<>(timeout, ResponseEntity.ok(judgeJob));
+        judgeJob.getDone().thenAccept(job -> deferredResult.setResult(ResponseEntity.ok(job)));
+        return deferredResult;
+    }
+
+    /**
+     * 批量判题：相同源码只编译一次，结果按完成顺序逐行返回（NDJSON），每行的index对应提交在数组中的下标
+     */
+    @PostMapping(value = "/run/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> runBatch(@RequestBody List<CodeSandBoxDTO> codeSandBoxDTOList) {
+        if (codeSandBoxDTOList.size() > batchJudgeService.getMaxSize()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchJudgeService.getTimeout());
+        BatchJudgeService.Batch batch = openBatch(emitter);
+        codeSandBoxDTOList.forEach(batch::add);
+        batch.close();
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    /**
+     * 批量判题，请求体为NDJSON：每读到一行提交即开始调度，无需等待请求体读完
+     */
+    @PostMapping(value = "/run/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> runBatchStream(HttpServletRequest request) throws IOException {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchJudgeService.getTimeout());
+        BatchJudgeService.Batch batch = openBatch(emitter);
+        InputStream inputStream = request.getInputStream();
+        // 先返回响应，请求体在独立线程上读取，结果不必等请求体读完
+        try {
+            batchJudgeService.readAsync(() -> readSubmissions(inputStream, batch));
+        } catch (RejectedExecutionException e) {
+            batch.cancel();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    /**
+     * 逐行读取NDJSON提交加入批量请求，超出批量上限时丢弃剩余提交，全部结果之后返回一行index为空的错误
+     */
+    private void readSubmissions(InputStream inputStream, BatchJudgeService.Batch batch) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                boolean accepted;
+                try {
+                    accepted = batch.add(objectMapper.readValue(line, CodeSandBoxDTO.class));
+                } catch (JsonProcessingException e) {
+                    accepted = batch.fail("无法解析的提交：" + e.getOriginalMessage());
+                }
+                if (!accepted) {
+                    batch.close("超出批量提交上限");
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // 客户端中途断开
+            batch.cancel();
+            return;
+        }
+        batch.close();
+    }
+
+    /**
+     * 每个结果写成一行JSON，客户端断开或超时时取消尚未开始的提交
+     */
+    private BatchJudgeService.Batch openBatch(ResponseBodyEmitter emitter) {
+        BatchJudgeService.Batch batch = batchJudgeService.open(batchResult -> {
+            try {
+                emitter.send(objectMapper.writeValueAsString(batchResult) + "\n", NDJSON);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, emitter::complete);
+        emitter.onTimeout(batch::cancel);
+        emitter.onError(throwable -> batch.cancel());
+        return batch;
+    }
+
 }
@@ -0,0 +1,206 @@
+package com.javasandbox.docker;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直接读取容器cgroup v2文件统计资源：cpu.stat的usage_usec、memory.peak峰值内存、memory.events的oom_kill
+ * 在用例开始与结束时各读一次，不依赖守护进程约每秒一次的stats推送，短用例也能得到准确的值
+ * 内核不支持按文件描述符重置memory.peak（Linux 6.12以前）时，用例期间定时采样memory.current取最大值
+ */
+public class CgroupStats {
+
+    // 无法重置峰值时memory.current的采样间隔（毫秒）
+    private static final long SAMPLE_INTERVAL = 10L;
+
+    // 所有统计区间共用一个采样线程
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cgroup-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final String CPU_STAT = "cpu.stat";
+
+    private static final String MEMORY_PEAK = "memory.peak";
+
+    private static final String MEMORY_CURRENT = "memory.current";
+
+    private static final String MEMORY_EVENTS = "memory.events";
+
+    private final File dir;
+
+    private CgroupStats(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 查找容器的cgroup v2目录，兼容systemd与cgroupfs两种cgroup驱动
+     * @return 找不到（cgroup v1或未挂载宿主机cgroup）时返回null
+     */
+    public static CgroupStats locate(String cgroupRoot, String containerId) {
+        String[] candidates = {
+                "system.slice/docker-" + containerId + ".scope",
+                "docker/" + containerId,
+                "docker.slice/docker-" + containerId + ".scope",
+        };
+        for (String candidate : candidates) {
+            File dir = new File(cgroupRoot, candidate);
+            if (new File(dir, CPU_STAT).isFile() && new File(dir, MEMORY_EVENTS).isFile()) {
+                return new CgroupStats(dir);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 已知目录的cgroup，如原生沙箱为每次运行创建的子cgroup
+     */
+    public static CgroupStats of(File dir) {
+        return new CgroupStats(dir);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * 用例开始前记录基准值
+     */
+    public Sample start() throws IOException {
+        return new Sample();
+    }
+
+    /**
+     * cgroup创建以来的累计资源使用，用于只运行一次就销毁的cgroup
+     */
+    public Usage total() throws IOException {
+        Usage usage = new Usage();
+        usage.cpuTime = TimeUnit.MICROSECONDS.toMillis(readKey(CPU_STAT, "usage_usec"));
+        usage.oomKilled = readKey(MEMORY_EVENTS, "oom_kill") > 0;
+        File peak = new File(dir, MEMORY_PEAK);
+        usage.memory = readLong(peak.isFile() ? peak : new File(dir, MEMORY_CURRENT));
+        return usage;
+    }
+
+    private long readKey(String file, String key) throws IOException {
+        for (String line : Files.readAllLines(new File(dir, file).toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith(key + " ")) {
+                return Long.parseLong(line.substring(key.length() + 1).trim());
+            }
+        }
+        return 0L;
+    }
+
+    private long readLong(File file) throws IOException {
+        return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * 一个用例的统计区间
+     */
+    public class Sample implements AutoCloseable {
+
+        private final long startUsage;
+
+        private final long startOomKills;
+
+        // 支持按文件描述符重置峰值时（Linux 6.12+），峰值只统计本用例
+        private RandomAccessFile peakFile;
+
+        // 无法重置峰值时采样到的memory.current最大值；容器会被多次提交复用，创建以来的峰值不能作为本用例的值
+        private final AtomicLong currentPeak = new AtomicLong();
+
+        private ScheduledFuture<?> sampling;
+
+        private Sample() throws IOException {
+            startUsage = readKey(CPU_STAT, "usage_usec");
+            startOomKills = readKey(MEMORY_EVENTS, "oom_kill");
+            File peak = new File(dir, MEMORY_PEAK);
+            if (peak.isFile()) {
+                try {
+                    peakFile = new RandomAccessFile(peak, "rw");
+                    peakFile.write("reset\n".getBytes(StandardCharsets.US_ASCII));
+                    return;
+                } catch (IOException e) {
+                    closePeakFile();
+                }
+            }
+            sampleCurrent();
+            sampling = SAMPLER.scheduleWithFixedDelay(this::sampleCurrent, SAMPLE_INTERVAL, SAMPLE_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        private void sampleCurrent() {
+            try {
+                currentPeak.accumulateAndGet(readLong(new File(dir, MEMORY_CURRENT)), Math::max);
+            } catch (IOException | RuntimeException e) {
+                // cgroup已删除或读取失败，保留已采样的值
+            }
+        }
+
+        /**
+         * 用例结束后计算区间内的资源使用
+         */
+        public Usage finish() throws IOException {
+            Usage usage = new Usage();
+            usage.cpuTime = TimeUnit.MICROSECONDS.toMillis(readKey(CPU_STAT, "usage_usec") - startUsage);
+            usage.oomKilled = readKey(MEMORY_EVENTS, "oom_kill") > startOomKills;
+            if (peakFile != null) {
+                peakFile.seek(0);
+                usage.memory = Long.parseLong(peakFile.readLine().trim());
+            } else {
+                sampleCurrent();
+                usage.memory = currentPeak.get();
+            }
+            return usage;
+        }
+
+        @Override
+        public void close() {
+            if (sampling != null) {
+                sampling.cancel(false);
+                sampling = null;
+            }
+            closePeakFile();
+        }
+
+        private void closePeakFile() {
+            if (peakFile != null) {
+                try {
+                    peakFile.close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+                peakFile = null;
+            }
+        }
+    }
+
+    /**
+     * 区间内的资源使用
+     */
+    @Getter
+    public static class Usage {
+
+        // CPU时间（毫秒），包含容器内全部进程
+        private long cpuTime;
+
+        // 峰值内存（字节）
+        private long memory;
+
+        // 区间内是否有进程被OOM Killer杀死
+        private boolean oomKilled;
+    }
+
+}
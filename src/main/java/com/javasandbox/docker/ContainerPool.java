@@ -0,0 +1,581 @@
+package com.javasandbox.docker;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.net.NetUtil;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Capability;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Volume;
+import com.github.dockerjava.core.command.ExecStartResultCallback;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.metrics.SandboxPhaseEnum;
+import com.javasandbox.runner.RunnerCds;
+import com.javasandbox.runner.RunnerPool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Docker沙箱的容器池
+ * 预先创建并启动带资源限制的JDK容器，提交时借出、运行后清空/app与/tmp再归还；被污染、使用次数达到上限
+ * 或清理失败的容器会被销毁重建，后台定时清理不在池中的泄漏容器
+ */
+@Slf4j
+@Component
+public class ContainerPool {
+
+    // 标记沙箱创建的容器
+    private static final String LABEL_POOL = "java-sandbox.pool";
+
+    // 创建容器的主机，重启后据此清理上一次遗留的容器
+    private static final String LABEL_HOST = "java-sandbox.host";
+
+    // 创建容器的实例
+    private static final String LABEL_INSTANCE = "java-sandbox.instance";
+
+    // 容器名前缀，名字在创建前登记，清理任务据此跳过正在创建的容器
+    private static final String NAME_PREFIX = "java-sandbox-";
+
+    // 清空容器的/tmp，仍有残留文件时以非0退出
+    private static final String RESET_SCRIPT = "rm -rf /tmp/* /tmp/.[!.]* /tmp/..?* 2>/dev/null; [ -z \"$(ls -A /tmp)\" ]";
+
+    private final SandboxProperties.Docker config;
+
+    private final SandboxProperties.Startup startup;
+
+    // 容器挂载目录的父目录，位于工作目录根目录下
+    private final String workRoot;
+
+    // 镜像JDK的AppCDS归档目录，所有容器只读挂载
+    private final String cdsDir;
+
+    private final String instanceId = UUID.fastUUID().toString(true);
+
+    private final String hostName = NetUtil.getLocalHostName();
+
+    private final LinkedBlockingQueue<PooledContainer> idleContainers = new LinkedBlockingQueue<>();
+
+    // 本实例创建（含正在创建）且尚未销毁的容器名
+    private final Set<String> ownedContainers = ConcurrentHashMap.newKeySet();
+
+    // 已创建（含借出）的容器数
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "container-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 镜像检查与拉取，拉取可能耗时很久，不占用容器池的调度线程
+    private final ExecutorService imagePuller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "container-image");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DockerClient dockerClient;
+
+    // 镜像就绪：启动时在后台检查，不存在时拉取，成功后不再访问守护进程；失败或镜像被删除后由下一次借出重新发起
+    private volatile CompletableFuture<Void> imageReady;
+
+    private volatile boolean closed = false;
+
+    private volatile boolean cgroupMissingLogged = false;
+
+    // 镜像JDK的归档已生成
+    private volatile boolean archiveReady = false;
+
+    public ContainerPool(SandboxProperties sandboxProperties, DockerClient dockerClient) {
+        this.config = sandboxProperties.getDocker();
+        this.startup = sandboxProperties.getStartup();
+        this.workRoot = sandboxProperties.getWorkspace().resolveRoot() + File.separator + "containers";
+        this.cdsDir = sandboxProperties.getWorkspace().resolveRoot() + File.separator + "container-cds";
+        this.dockerClient = dockerClient;
+    }
+
+    @PostConstruct
+    public void init() {
+        FileUtil.mkdir(cdsDir);
+        prepareImage();
+        // 在后台预热，Docker不可用时不影响应用启动
+        scheduler.execute(() -> {
+            try {
+                reapLeaked(true);
+                awaitImage(PhaseRecorder.DISABLED);
+                generateArchive();
+                while (!closed && reserveSlot()) {
+                    idleContainers.offer(createContainer(PhaseRecorder.DISABLED));
+                }
+            } catch (RuntimeException e) {
+                log.error("预热容器池失败", e);
+            }
+        });
+        scheduler.scheduleWithFixedDelay(() -> reapLeaked(false),
+                config.getReapInterval(), config.getReapInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    public DockerClient getDockerClient() {
+        return dockerClient;
+    }
+
+    /**
+     * 容器内冷启动JVM的参数：启动参数组合，镜像的归档生成后加上归档
+     */
+    public List<String> getJvmOptions() {
+        List<String> options = new ArrayList<>(startup.getJvmOptions());
+        if (archiveReady) {
+            options.addAll(RunnerCds.archiveOptions(PooledContainer.CDS_DIR + "/" + RunnerCds.ARCHIVE));
+        }
+        return options;
+    }
+
+    /**
+     * 借出一个容器：优先取空闲容器，池未满时直接创建，否则等待归还
+     * @param recorder 记录镜像检查、容器创建与等待空闲容器的耗时
+     */
+    public PooledContainer checkout(PhaseRecorder recorder) {
+        PooledContainer container = idleContainers.poll();
+        if (container != null) {
+            return container;
+        }
+        if (reserveSlot()) {
+            try {
+                awaitImage(recorder);
+            } catch (RuntimeException e) {
+                createdCount.decrementAndGet();
+                throw e;
+            }
+            return createContainer(recorder);
+        }
+        long start = recorder.start();
+        try {
+            container = idleContainers.poll(config.getCheckoutTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            recorder.stop(SandboxPhaseEnum.CHECKOUT_WAIT, start);
+        }
+        if (container == null) {
+            throw new IllegalStateException("沙箱繁忙，暂无可用容器");
+        }
+        return container;
+    }
+
+    /**
+     * 尝试再借出一个容器，只取空闲容器或在池未满时创建，不等待归还；没有可用容器时返回null
+     */
+    public PooledContainer tryCheckout(PhaseRecorder recorder) {
+        PooledContainer container = idleContainers.poll();
+        if (container != null || !reserveSlot()) {
+            return container;
+        }
+        try {
+            awaitImage(recorder);
+        } catch (RuntimeException e) {
+            createdCount.decrementAndGet();
+            log.warn("镜像未就绪：{}", e.getMessage());
+            return null;
+        }
+        try {
+            // 创建失败时已归还名额
+            return createContainer(recorder);
+        } catch (RuntimeException e) {
+            log.warn("创建容器失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把容器绑定到指定CPU核心，已绑定在该核心时跳过
+     */
+    public void pin(PooledContainer container, int core) {
+        if (Integer.valueOf(core).equals(container.getCore())) {
+            return;
+        }
+        try {
+            dockerClient.updateContainerCmd(container.getId()).withCpusetCpus(String.valueOf(core)).exec();
+            container.setCore(core);
+        } catch (RuntimeException e) {
+            log.warn("绑定容器CPU失败：{}", container.getId(), e);
+        }
+    }
+
+    /**
+     * 归还容器
+     * @param container 容器
+     * @param tainted 本次运行是否污染了容器（超时进程残留、内存溢出等）
+     */
+    public void release(PooledContainer container, boolean tainted) {
+        container.markUsed();
+        if (closed || tainted || container.getUses() >= config.getMaxUses() || !isRunning(container)
+                || !reset(container)) {
+            destroy(container);
+            if (!closed) {
+                scheduler.execute(this::refill);
+            }
+            return;
+        }
+        idleContainers.offer(container);
+    }
+
+    /**
+     * 清空上一次提交留下的文件：宿主机工作目录中除执行器外的全部文件（即容器的/app）与容器的/tmp
+     * @return 是否清理干净，失败时容器不再复用
+     */
+    private boolean reset(PooledContainer container) {
+        try {
+            File[] files = new File(container.getWorkDir()).listFiles();
+            if (files == null) {
+                return false;
+            }
+            for (File file : files) {
+                if (!PooledContainer.RUNNER_DIR.equals(file.getName())) {
+                    FileUtil.del(file);
+                }
+            }
+            ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(container.getId())
+                    .withCmd("sh", "-c", RESET_SCRIPT)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .exec();
+            boolean completed = dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                    .exec(new ExecStartResultCallback())
+                    .awaitCompletion(config.getResetTimeout(), TimeUnit.MILLISECONDS);
+            Long exitCode = dockerClient.inspectExecCmd(execCreateCmdResponse.getId()).exec().getExitCodeLong();
+            if (completed && exitCode != null && exitCode == 0) {
+                return true;
+            }
+            log.warn("清理容器失败，不再复用：{}，退出码：{}", container.getId(), exitCode);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("清理容器失败，不再复用：{}", container.getId(), e);
+        }
+        return false;
+    }
+
+    private void refill() {
+        try {
+            if (reserveSlot()) {
+                idleContainers.offer(createContainer(PhaseRecorder.DISABLED));
+            }
+        } catch (RuntimeException e) {
+            log.error("补充容器失败", e);
+        }
+    }
+
+    /**
+     * 池未满时占用一个容器名额
+     */
+    private boolean reserveSlot() {
+        int created;
+        do {
+            created = createdCount.get();
+            if (created >= config.getPoolSize()) {
+                return false;
+            }
+        } while (!createdCount.compareAndSet(created, created + 1));
+        return true;
+    }
+
+    /**
+     * 发起镜像检查，已就绪或正在检查时直接返回当前结果
+     */
+    private synchronized CompletableFuture<Void> prepareImage() {
+        CompletableFuture<Void> future = imageReady;
+        if (future == null || future.isCompletedExceptionally()) {
+            future = CompletableFuture.runAsync(this::pullImageIfMissing, imagePuller);
+            imageReady = future;
+        }
+        return future;
+    }
+
+    /**
+     * 镜像不存在时拉取并等待完成
+     */
+    private void pullImageIfMissing() {
+        try {
+            dockerClient.inspectImageCmd(config.getImage()).exec();
+        } catch (NotFoundException e) {
+            log.info("拉取镜像：{}", config.getImage());
+            try {
+                dockerClient.pullImageCmd(config.getImage())
+                        .exec(new PullImageResultCallback())
+                        .awaitCompletion();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+            log.info("镜像拉取完成：{}", config.getImage());
+        }
+    }
+
+    /**
+     * 等待镜像就绪，已就绪时不访问守护进程
+     */
+    private void awaitImage(PhaseRecorder recorder) {
+        CompletableFuture<Void> future = imageReady;
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            return;
+        }
+        long start = recorder.start();
+        try {
+            prepareImage().get(config.getImageTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待镜像被中断", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("镜像尚未就绪：" + config.getImage());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("镜像检查失败：" + config.getImage(), e.getCause());
+        } finally {
+            recorder.stop(SandboxPhaseEnum.IMAGE_CHECK, start);
+        }
+    }
+
+    /**
+     * 创建容器时发现镜像已被删除，下一次借出重新检查
+     */
+    private synchronized void invalidateImage() {
+        CompletableFuture<Void> future = imageReady;
+        if (future != null && future.isDone()) {
+            imageReady = null;
+        }
+    }
+
+    /**
+     * 用一次性容器以镜像自带的JDK生成运行器的归档，写入宿主机目录，失败时容器内不使用归档
+     */
+    private void generateArchive() {
+        if (!startup.isCdsEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        String name = NAME_PREFIX + "cds-" + UUID.fastUUID().toString(true);
+        String containerId = null;
+        ownedContainers.add(name);
+        try {
+            RunnerCds.prepare(cdsDir, PooledContainer.CDS_DIR);
+            HostConfig hostConfig = HostConfig.newHostConfig()
+                    .withBinds(new Bind(cdsDir, new Volume(PooledContainer.CDS_DIR), AccessMode.rw))
+                    .withMemory(config.getMemoryLimit())
+                    .withMemorySwap(config.getMemoryLimit())
+                    .withNetworkMode("none")
+                    .withCapDrop(Capability.ALL)
+                    .withSecurityOpts(Collections.singletonList("no-new-privileges"));
+            Map<String, String> labels = new HashMap<>();
+            labels.put(LABEL_POOL, "true");
+            labels.put(LABEL_HOST, hostName);
+            labels.put(LABEL_INSTANCE, instanceId);
+            containerId = dockerClient.createContainerCmd(config.getImage())
+                    .withName(name)
+                    .withHostConfig(hostConfig)
+                    .withLabels(labels)
+                    .withCmd("sh", "-c", RunnerCds.dumpScript("java", PooledContainer.CDS_DIR, startup.getJvmOptions()))
+                    .exec()
+                    .getId();
+            dockerClient.startContainerCmd(containerId).exec();
+            Integer statusCode = dockerClient.waitContainerCmd(containerId)
+                    .exec(new WaitContainerResultCallback())
+                    .awaitStatusCode(startup.getDumpTimeout(), TimeUnit.MILLISECONDS);
+            archiveReady = statusCode == 0 && new File(cdsDir, RunnerCds.ARCHIVE).isFile();
+            if (archiveReady) {
+                log.info("已生成镜像{}的运行器AppCDS归档，耗时{}ms", config.getImage(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                log.warn("生成镜像{}的运行器AppCDS归档失败，退出码：{}", config.getImage(), statusCode);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("生成镜像{}的运行器AppCDS归档失败：{}", config.getImage(), e.getMessage());
+        } finally {
+            // 创建请求失败但守护进程已创建的容器，由清理任务删除
+            ownedContainers.remove(name);
+            if (containerId != null) {
+                try {
+                    dockerClient.removeContainerCmd(containerId).withForce(true).exec();
+                } catch (RuntimeException e) {
+                    log.warn("删除容器失败：{}", containerId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建并启动容器，调用前需已占用名额，失败时归还名额
+     * 容器名在创建前登记，清理任务不会删除刚创建、尚未返回的容器
+     */
+    private PooledContainer createContainer(PhaseRecorder recorder) {
+        long start = recorder.start();
+        String key = UUID.fastUUID().toString(true);
+        String name = NAME_PREFIX + key;
+        String workDir = workRoot + File.separator + key;
+        FileUtil.mkdir(workDir);
+        ownedContainers.add(name);
+        try {
+            // 批量执行器随工作目录一起挂载进容器
+            RunnerPool.extractRunnerClasses(workDir + File.separator + PooledContainer.RUNNER_DIR);
+            HostConfig hostConfig = HostConfig.newHostConfig()
+                    .withBinds(new Bind(workDir, new Volume(PooledContainer.CONTAINER_DIR), AccessMode.ro),
+                            new Bind(cdsDir, new Volume(PooledContainer.CDS_DIR), AccessMode.ro))
+                    .withMemory(config.getMemoryLimit())
+                    .withMemorySwap(config.getMemoryLimit())
+                    // CpuCount只对Windows容器生效，Linux容器按CFS配额限制可用的CPU核数
+                    .withNanoCPUs(config.getCpuCount() * 1_000_000_000L)
+                    .withPidsLimit(config.getPidsLimit())
+                    .withNetworkMode("none")
+                    .withReadonlyRootfs(true)
+                    .withTmpFs(Collections.singletonMap("/tmp", "rw,noexec,size=16m"))
+                    .withCapDrop(Capability.ALL)
+                    .withSecurityOpts(Collections.singletonList("no-new-privileges"));
+            Map<String, String> labels = new HashMap<>();
+            labels.put(LABEL_POOL, "true");
+            labels.put(LABEL_HOST, hostName);
+            labels.put(LABEL_INSTANCE, instanceId);
+            CreateContainerResponse containerResponse = dockerClient.createContainerCmd(config.getImage())
+                    .withName(name)
+                    .withHostConfig(hostConfig)
+                    .withLabels(labels)
+                    // 容器常驻，用户代码通过exec运行
+                    .withCmd("tail", "-f", "/dev/null")
+                    .exec();
+            String containerId = containerResponse.getId();
+            dockerClient.startContainerCmd(containerId).exec();
+            return new PooledContainer(containerId, name, workDir, locateCgroup(containerId));
+        } catch (IOException e) {
+            createdCount.decrementAndGet();
+            ownedContainers.remove(name);
+            FileUtil.del(workDir);
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            // 已创建但启动失败的容器不再属于本池，由清理任务删除
+            createdCount.decrementAndGet();
+            ownedContainers.remove(name);
+            FileUtil.del(workDir);
+            if (e instanceof NotFoundException) {
+                invalidateImage();
+            }
+            throw e;
+        } finally {
+            recorder.stop(SandboxPhaseEnum.CONTAINER_CREATE, start);
+        }
+    }
+
+    /**
+     * 查找容器的cgroup v2目录，找不到时只在第一次记录日志
+     */
+    private CgroupStats locateCgroup(String containerId) {
+        CgroupStats cgroupStats = CgroupStats.locate(config.getCgroupRoot(), containerId);
+        if (cgroupStats == null && !cgroupMissingLogged) {
+            cgroupMissingLogged = true;
+            log.info("未找到容器的cgroup v2目录（{}），资源统计使用守护进程的stats接口", config.getCgroupRoot());
+        }
+        return cgroupStats;
+    }
+
+    private boolean isRunning(PooledContainer container) {
+        try {
+            InspectContainerResponse.ContainerState state =
+                    dockerClient.inspectContainerCmd(container.getId()).exec().getState();
+            return Boolean.TRUE.equals(state.getRunning());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledContainer container) {
+        createdCount.decrementAndGet();
+        ownedContainers.remove(container.getName());
+        FileUtil.del(container.getWorkDir());
+        try {
+            dockerClient.removeContainerCmd(container.getId()).withForce(true).exec();
+        } catch (RuntimeException e) {
+            // 删除失败的容器交给清理任务
+            log.warn("删除容器失败：{}", container.getId(), e);
+        }
+    }
+
+    /**
+     * 清理泄漏容器：本主机上不属于当前池的沙箱容器，按创建前登记的容器名判断，正在创建的容器不会被误删
+     * @param startup 启动时清理本主机上一次运行遗留的全部容器
+     */
+    void reapLeaked(boolean startup) {
+        try {
+            List<Container> containers = dockerClient.listContainersCmd()
+                    .withShowAll(true)
+                    .withLabelFilter(Collections.singletonMap(LABEL_HOST, hostName))
+                    .exec();
+            for (Container container : containers) {
+                Map<String, String> labels = container.getLabels();
+                boolean mine = instanceId.equals(labels.get(LABEL_INSTANCE));
+                if (!labels.containsKey(LABEL_POOL) || (mine && isOwned(container))) {
+                    continue;
+                }
+                // 同一主机只部署一个沙箱实例：启动时清理上次遗留的全部容器，运行期间只清理本实例泄漏的和已退出的容器
+                if (mine || startup || !"running".equals(container.getState())) {
+                    log.info("清理泄漏容器：{}", container.getId());
+                    dockerClient.removeContainerCmd(container.getId()).withForce(true).exec();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("清理泄漏容器失败：{}", e.getMessage());
+        }
+    }
+
+    private boolean isOwned(Container container) {
+        String[] names = container.getNames();
+        if (names == null) {
+            return false;
+        }
+        for (String name : names) {
+            // 列表接口返回的容器名带/前缀
+            if (ownedContainers.contains(name.startsWith("/") ? name.substring(1) : name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        imagePuller.shutdownNow();
+        PooledContainer container;
+        while ((container = idleContainers.poll()) != null) {
+            destroy(container);
+        }
+    }
+
+}
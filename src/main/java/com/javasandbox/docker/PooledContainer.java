@@ -0,0 +1,104 @@
+package com.javasandbox.docker;
+
+import com.javasandbox.runner.RunnerMain;
+import lombok.Getter;
+
+import java.io.File;
+
+/**
+ * 容器池中的一个常驻容器
+ * 宿主机工作目录以只读方式挂载到容器的/app，每次提交的字节码写入其中的独立子目录
+ */
+@Getter
+public class PooledContainer {
+
+    // 容器内挂载点
+    public static final String CONTAINER_DIR = "/app";
+
+    // 工作目录中存放批量执行器（RunnerMain）字节码的子目录
+    public static final String RUNNER_DIR = "runner";
+
+    // 容器内AppCDS归档目录，宿主机上按镜像生成，只读挂载
+    public static final String CDS_DIR = "/cds";
+
+    private final String id;
+
+    // 容器名，创建前登记在容器池中
+    private final String name;
+
+    // 宿主机工作目录
+    private final String workDir;
+
+    // 容器的cgroup v2统计，宿主机cgroup不可用时为null，退回守护进程的统计接口
+    private final CgroupStats cgroupStats;
+
+    private int uses = 0;
+
+    // 当前绑定的CPU核心（cpuset），未绑定为null
+    private Integer core;
+
+    PooledContainer(String id, String name, String workDir, CgroupStats cgroupStats) {
+        this.id = id;
+        this.name = name;
+        this.workDir = workDir;
+        this.cgroupStats = cgroupStats;
+    }
+
+    /**
+     * 本次运行在宿主机上的运行目录
+     */
+    public String hostRunDir(String runId) {
+        return workDir + File.separator + runId;
+    }
+
+    /**
+     * 本次运行在容器内的运行目录
+     */
+    public String containerRunDir(String runId) {
+        return CONTAINER_DIR + "/" + runId;
+    }
+
+    /**
+     * 本次运行在宿主机上的字节码目录，位于运行目录下，输入与期望输出文件不在其中
+     */
+    public String hostClassDir(String runId) {
+        return hostRunDir(runId) + File.separator + RunnerMain.CLASS_DIR;
+    }
+
+    /**
+     * 本次运行在容器内的classpath
+     */
+    public String containerClassDir(String runId) {
+        return containerRunDir(runId) + "/" + RunnerMain.CLASS_DIR;
+    }
+
+    /**
+     * 批量执行的用例请求文件在宿主机上的路径
+     */
+    public String hostRequestFile(String runId) {
+        return workDir + File.separator + runId + ".cases";
+    }
+
+    /**
+     * 批量执行的用例请求文件在容器内的路径
+     */
+    public String containerRequestFile(String runId) {
+        return CONTAINER_DIR + "/" + runId + ".cases";
+    }
+
+    /**
+     * 批量执行器在容器内的classpath
+     */
+    public String containerRunnerDir() {
+        return CONTAINER_DIR + "/" + RUNNER_DIR;
+    }
+
+    void setCore(Integer core) {
+        this.core = core;
+    }
+
+    void markUsed() {
+        uses++;
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.javasandbox.job;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.service.CodeSandBox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 批量判题调度
+ * 全部批量请求共享固定数量的判题线程，单个批量请求同时执行的提交数不超过线程数，多个批量请求的提交交替进入线程池；
+ * 批量请求内源码相同的提交排在一起连续执行，由编译缓存保证只编译一次；结果按完成顺序交给调用方
+ */
+@Slf4j
+@Component
+public class BatchJudgeService {
+
+    private final SandboxProperties.Batch config;
+
+    private final CodeSandBox codeSandBox;
+
+    private final ThreadPoolExecutor executor;
+
+    // 读取流式请求体，每个读取中的请求占用一个线程，不占用请求线程与判题线程
+    private final ExecutorService reader;
+
+    // 进行中的批量请求数
+    private final AtomicInteger activeBatches = new AtomicInteger();
+
+    // 全部批量请求中等待执行的提交数
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final Counter uniqueCounter;
+
+    private final Counter duplicateCounter;
+
+    public BatchJudgeService(SandboxProperties sandboxProperties,
+                             @Qualifier("javaDockerCodeSandBox") CodeSandBox codeSandBox,
+                             MeterRegistry meterRegistry) {
+        this.config = sandboxProperties.getBatch();
+        this.codeSandBox = codeSandBox;
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, config.getConcurrency());
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "batch-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger readerIndex = new AtomicInteger();
+        this.reader = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "batch-reader-" + readerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("sandbox.batch.active", activeBatches, AtomicInteger::get)
+                .description("进行中的批量请求数")
+                .register(meterRegistry);
+        Gauge.builder("sandbox.batch.pending", pendingCount, AtomicInteger::get)
+                .description("批量请求中等待执行的提交数")
+                .register(meterRegistry);
+        this.uniqueCounter = Counter.builder("sandbox.batch.submissions")
+                .description("批量请求的提交数，duplicate为与同一批量请求中之前的提交源码相同")
+                .tag("source", "unique")
+                .register(meterRegistry);
+        this.duplicateCounter = Counter.builder("sandbox.batch.submissions")
+                .description("批量请求的提交数，duplicate为与同一批量请求中之前的提交源码相同")
+                .tag("source", "duplicate")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 开始一个批量请求，逐个add提交，全部加入后close
+     * @param sink 接收每个提交的结果，由判题线程调用，需线程安全；抛出异常（如客户端断开）时取消剩余提交
+     * @param onComplete 全部结果交付（或取消）后调用一次
+     */
+    public Batch open(Consumer<BatchResult> sink, Runnable onComplete) {
+        activeBatches.incrementAndGet();
+        return new Batch(sink, onComplete);
+    }
+
+    /**
+     * 在独立线程上读取流式请求体，响应可以先返回，边读边交付结果
+     */
+    public void readAsync(Runnable task) {
+        reader.execute(task);
+    }
+
+    public int getMaxSize() {
+        return config.getMaxSize();
+    }
+
+    public long getTimeout() {
+        return config.getTimeout();
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        reader.shutdownNow();
+    }
+
+    /**
+     * 一个批量请求
+     */
+    public class Batch {
+
+        private final Consumer<BatchResult> sink;
+
+        private final Runnable onComplete;
+
+        // 等待执行的提交，按源码分组，组按首次出现的顺序排列
+        private final LinkedHashMap<String, ArrayDeque<Submission>> pending = new LinkedHashMap<>();
+
+        // 本批量请求中出现过的源码
+        private final Set<String> seenCodes = new HashSet<>();
+
+        // 已加入的提交数，即下一个提交的下标
+        private int size = 0;
+
+        private int running = 0;
+
+        private int finished = 0;
+
+        private boolean closed = false;
+
+        // 已取消：不再交付结果
+        private boolean cancelled = false;
+
+        private boolean completed = false;
+
+        // 全部结果交付后追加的错误信息（如超出批量上限），不对应任何提交
+        private String trailer;
+
+        Batch(Consumer<BatchResult> sink, Runnable onComplete) {
+            this.sink = sink;
+            this.onComplete = onComplete;
+        }
+
+        /**
+         * 加入一个提交，源码与等待中的提交相同时排在它们后面
+         * @return 超出批量上限或已取消时返回false，提交不会执行
+         */
+        public synchronized boolean add(CodeSandBoxDTO codeSandBoxDTO) {
+            if (closed || size >= config.getMaxSize()) {
+                return false;
+            }
+            String code = codeSandBoxDTO.getCode() == null ? "" : codeSandBoxDTO.getCode();
+            if (seenCodes.add(code)) {
+                uniqueCounter.increment();
+            } else {
+                duplicateCounter.increment();
+            }
+            pending.computeIfAbsent(code, key -> new ArrayDeque<>()).add(new Submission(size++, codeSandBoxDTO));
+            pendingCount.incrementAndGet();
+            dispatch();
+            return true;
+        }
+
+        /**
+         * 占用一个下标并直接返回错误（如无法解析的提交），与add一样计入批量上限
+         * @return 超出批量上限或已取消时返回false
+         */
+        public boolean fail(String message) {
+            int index;
+            synchronized (this) {
+                if (closed || size >= config.getMaxSize()) {
+                    return false;
+                }
+                index = size++;
+                running++;
+            }
+            BatchResult batchResult = new BatchResult();
+            batchResult.setIndex(index);
+            batchResult.setMessage(message);
+            deliver(batchResult);
+            return true;
+        }
+
+        /**
+         * 不再加入新的提交
+         */
+        public void close() {
+            close(null);
+        }
+
+        /**
+         * 不再加入新的提交，全部结果交付后再交付一行index为空的错误信息
+         * @param message 错误信息，如超出批量上限后被丢弃的提交；为null时不追加
+         */
+        public void close(String message) {
+            synchronized (this) {
+                closed = true;
+                if (trailer == null) {
+                    trailer = message;
+                }
+            }
+            completeIfDone();
+        }
+
+        /**
+         * 取消尚未开始的提交，已开始的提交执行完后不再交付结果
+         */
+        public void cancel() {
+            synchronized (this) {
+                closed = true;
+                cancelled = true;
+                for (ArrayDeque<Submission> group : pending.values()) {
+                    finished += group.size();
+                    pendingCount.addAndGet(-group.size());
+                }
+                pending.clear();
+            }
+            completeIfDone();
+        }
+
+        /**
+         * 未超出并发上限时按分组顺序取出等待中的提交交给判题线程
+         */
+        private void dispatch() {
+            Iterator<Map.Entry<String, ArrayDeque<Submission>>> iterator = pending.entrySet().iterator();
+            while (running < config.getConcurrency() && iterator.hasNext()) {
+                ArrayDeque<Submission> group = iterator.next().getValue();
+                while (running < config.getConcurrency() && !group.isEmpty()) {
+                    Submission submission = group.poll();
+                    pendingCount.decrementAndGet();
+                    running++;
+                    try {
+                        executor.execute(() -> run(submission));
+                    } catch (RejectedExecutionException e) {
+                        running--;
+                        finished++;
+                    }
+                }
+                if (group.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private void run(Submission submission) {
+            BatchResult batchResult = new BatchResult();
+            batchResult.setIndex(submission.index);
+            try {
+                batchResult.setResult(codeSandBox.runCode(submission.codeSandBoxDTO));
+            } catch (RuntimeException e) {
+                log.warn("批量判题中的提交执行失败：{}", submission.index, e);
+                batchResult.setMessage(e.getMessage());
+            }
+            deliver(batchResult);
+        }
+
+        private void deliver(BatchResult batchResult) {
+            boolean skip;
+            synchronized (this) {
+                skip = cancelled;
+            }
+            if (!skip) {
+                try {
+                    sink.accept(batchResult);
+                } catch (RuntimeException e) {
+                    log.info("批量判题结果交付失败，取消剩余提交：{}", e.getMessage());
+                    cancel();
+                }
+            }
+            synchronized (this) {
+                running--;
+                finished++;
+                dispatch();
+            }
+            completeIfDone();
+        }
+
+        private void completeIfDone() {
+            String message;
+            synchronized (this) {
+                if (completed || !closed || finished < size) {
+                    return;
+                }
+                completed = true;
+                message = cancelled ? null : trailer;
+            }
+            if (message != null) {
+                BatchResult batchResult = new BatchResult();
+                batchResult.setMessage(message);
+                try {
+                    sink.accept(batchResult);
+                } catch (RuntimeException e) {
+                    log.info("批量判题结果交付失败：{}", e.getMessage());
+                }
+            }
+            activeBatches.decrementAndGet();
+            onComplete.run();
+        }
+    }
+
+    /**
+     * 批量请求中的一个提交
+     */
+    private static class Submission {
+
+        private final int index;
+
+        private final CodeSandBoxDTO codeSandBoxDTO;
+
+        Submission(int index, CodeSandBoxDTO codeSandBoxDTO) {
+            this.index = index;
+            this.codeSandBoxDTO = codeSandBoxDTO;
+        }
+    }
+
+}
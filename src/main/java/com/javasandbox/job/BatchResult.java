@@ -0,0 +1,19 @@
+package com.javasandbox.job;
+
+import com.javasandbox.model.CodeSandBoxResult;
+import lombok.Data;
+
+/**
+ * 批量判题中一个提交的结果，按完成顺序返回，index对应提交在批量请求中的下标
+ */
+@Data
+public class BatchResult {
+
+    // 提交在批量请求中的下标（从0开始），为空表示整个批量请求的错误（如超出批量上限）
+    private Integer index;
+    // 判题结果，执行失败时为空
+    private CodeSandBoxResult result;
+    // 执行失败时的错误信息
+    private String message;
+
+}
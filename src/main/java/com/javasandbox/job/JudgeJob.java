@@ -0,0 +1,47 @@
+package com.javasandbox.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.JobStateEnum;
+import lombok.Data;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步判题任务
+ */
+@Data
+public class JudgeJob {
+
+    // 任务id
+    private String id;
+    // 优先级，越大越先执行
+    private Integer priority;
+    // 任务状态
+    private JobStateEnum state;
+    // 判题结果，任务完成后才有值
+    private CodeSandBoxResult result;
+    // 执行失败时的错误信息
+    private String message;
+    // 提交时间
+    private Long submitTime;
+    // 开始执行时间
+    private Long startTime;
+    // 完成时间
+    private Long finishTime;
+
+    // 判题请求
+    @JsonIgnore
+    private CodeSandBoxDTO codeSandBoxDTO;
+
+    // 任务结束（完成或失败）时完成，用于长轮询
+    @JsonIgnore
+    private final CompletableFuture<JudgeJob> done = new CompletableFuture<>();
+
+    @JsonIgnore
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.javasandbox.job;
+
+import cn.hutool.core.lang.UUID;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.JobStateEnum;
+import com.javasandbox.service.CodeSandBox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步判题任务调度
+ * 任务进入有界优先队列，由固定数量的工作线程执行；队列满时拒绝提交，由调用方返回429
+ */
+@Slf4j
+@Component
+public class JudgeJobService {
+
+    private final SandboxProperties.Job config;
+
+    private final CodeSandBox codeSandBox;
+
+    private final Map<String, JudgeJob> jobs = new ConcurrentHashMap<>();
+
+    // 排队中（未开始执行）的任务数
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // 同优先级按提交顺序执行
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ThreadPoolExecutor executor;
+
+    // 清理过期任务结果
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "judge-job-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Timer waitTimer;
+
+    private final Timer runTimer;
+
+    private final Counter rejectedCounter;
+
+    public JudgeJobService(SandboxProperties sandboxProperties,
+                           @Qualifier("javaDockerCodeSandBox") CodeSandBox codeSandBox,
+                           MeterRegistry meterRegistry) {
+        this.config = sandboxProperties.getJob();
+        this.codeSandBox = codeSandBox;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> new Thread(r, "judge-worker-" + threadIndex.incrementAndGet()));
+        Gauge.builder("sandbox.job.queue.depth", queued, AtomicInteger::get)
+                .description("排队中的判题任务数")
+                .register(meterRegistry);
+        Gauge.builder("sandbox.job.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("执行中的判题任务数")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("sandbox.job.wait")
+                .description("判题任务排队耗时")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("sandbox.job.run")
+                .description("判题任务执行耗时")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("sandbox.job.rejected")
+                .description("队列已满被拒绝的判题任务数")
+                .register(meterRegistry);
+        cleaner.scheduleWithFixedDelay(this::removeExpired, config.getResultTtl(), config.getResultTtl(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交判题任务
+     * @param codeSandBoxDTO 判题请求
+     * @param priority 优先级，越大越先执行
+     * @throws RejectedExecutionException 队列已满
+     */
+    public JudgeJob submit(CodeSandBoxDTO codeSandBoxDTO, int priority) {
+        if (queued.incrementAndGet() > config.getQueueCapacity()) {
+            queued.decrementAndGet();
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("判题队列已满");
+        }
+        JudgeJob judgeJob = new JudgeJob();
+        judgeJob.setId(UUID.fastUUID().toString(true));
+        judgeJob.setPriority(priority);
+        judgeJob.setState(JobStateEnum.QUEUED);
+        judgeJob.setSubmitTime(System.currentTimeMillis());
+        judgeJob.setCodeSandBoxDTO(codeSandBoxDTO);
+        jobs.put(judgeJob.getId(), judgeJob);
+        executor.execute(new JobTask(judgeJob, sequence.incrementAndGet()));
+        return judgeJob;
+    }
+
+    public JudgeJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * 建议客户端的重试间隔（秒）：按当前排队数与平均执行耗时估算
+     */
+    public long retryAfterSeconds() {
+        double meanRunMillis = runTimer.mean(TimeUnit.MILLISECONDS);
+        long estimate = (long) Math.ceil(queued.get() * meanRunMillis / config.getWorkers() / 1000);
+        return Math.max(1L, estimate);
+    }
+
+    public long getMaxWait() {
+        return config.getMaxWait();
+    }
+
+    private void execute(JudgeJob judgeJob) {
+        queued.decrementAndGet();
+        long startTime = System.currentTimeMillis();
+        judgeJob.setStartTime(startTime);
+        judgeJob.setState(JobStateEnum.RUNNING);
+        waitTimer.record(startTime - judgeJob.getSubmitTime(), TimeUnit.MILLISECONDS);
+        try {
+            CodeSandBoxResult codeSandBoxResult = codeSandBox.runCode(judgeJob.getCodeSandBoxDTO());
+            judgeJob.setResult(codeSandBoxResult);
+            judgeJob.setState(JobStateEnum.FINISHED);
+        } catch (RuntimeException e) {
+            log.error("判题任务执行失败：{}", judgeJob.getId(), e);
+            judgeJob.setMessage(e.getMessage());
+            judgeJob.setState(JobStateEnum.FAILED);
+        } finally {
+            long finishTime = System.currentTimeMillis();
+            judgeJob.setFinishTime(finishTime);
+            runTimer.record(finishTime - startTime, TimeUnit.MILLISECONDS);
+            // 结果已产生，释放请求体
+            judgeJob.setCodeSandBoxDTO(null);
+            judgeJob.getDone().complete(judgeJob);
+        }
+    }
+
+    private void removeExpired() {
+        long expireBefore = System.currentTimeMillis() - config.getResultTtl();
+        jobs.values().removeIf(judgeJob -> judgeJob.isDone() && judgeJob.getFinishTime() < expireBefore);
+    }
+
+    @PreDestroy
+    public void close() {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 优先队列中的任务：优先级高的先执行，同优先级先提交的先执行
+     */
+    private class JobTask implements Runnable, Comparable<JobTask> {
+
+        private final JudgeJob judgeJob;
+
+        private final long sequence;
+
+        JobTask(JudgeJob judgeJob, long sequence) {
+            this.judgeJob = judgeJob;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            execute(judgeJob);
+        }
+
+        @Override
+        public int compareTo(JobTask other) {
+            int compare = Integer.compare(other.judgeJob.getPriority(), judgeJob.getPriority());
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.javasandbox.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录一次判题各阶段的累计耗时，并行执行的用例可同时记录
+ * 关闭指标且不需要阶段明细时使用共享的DISABLED实例，不读时钟也不分配对象
+ */
+public class PhaseRecorder {
+
+    private static final SandboxPhaseEnum[] PHASES = SandboxPhaseEnum.values();
+
+    public static final PhaseRecorder DISABLED = new PhaseRecorder(false, false);
+
+    // 各阶段累计耗时（纳秒），未开启时为null
+    private final AtomicLongArray nanos;
+
+    // 是否在结果中返回阶段明细
+    private final boolean debug;
+
+    private final long startTime;
+
+    public PhaseRecorder(boolean debug) {
+        this(true, debug);
+    }
+
+    private PhaseRecorder(boolean enabled, boolean debug) {
+        this.nanos = enabled ? new AtomicLongArray(PHASES.length) : null;
+        this.debug = debug;
+        this.startTime = nanos == null ? 0L : System.nanoTime();
+    }
+
+    public boolean isEnabled() {
+        return nanos != null;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * 开始计时
+     * @return 开始时间，传给stop
+     */
+    public long start() {
+        return nanos == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * 结束计时，耗时累加到阶段上
+     */
+    public void stop(SandboxPhaseEnum phase, long start) {
+        if (nanos != null) {
+            nanos.addAndGet(phase.ordinal(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 阶段累计耗时（纳秒）
+     */
+    public long get(SandboxPhaseEnum phase) {
+        return nanos == null ? 0L : nanos.get(phase.ordinal());
+    }
+
+    /**
+     * 从创建到现在的总耗时（纳秒）
+     */
+    public long elapsed() {
+        return nanos == null ? 0L : System.nanoTime() - startTime;
+    }
+
+    /**
+     * 阶段明细：阶段 -> 耗时（微秒），只包含执行过的阶段
+     */
+    public Map<String, Long> toMicros() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        for (SandboxPhaseEnum phase : PHASES) {
+            long value = get(phase);
+            if (value > 0) {
+                phases.put(phase.getValue(), TimeUnit.NANOSECONDS.toMicros(value));
+            }
+        }
+        return phases;
+    }
+
+}
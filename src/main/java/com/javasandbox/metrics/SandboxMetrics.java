@@ -0,0 +1,139 @@
+package com.javasandbox.metrics;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.SubmissionStateEnum;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 判题分阶段耗时指标，按沙箱类型与判题结果区分
+ * sandbox.phase：各阶段耗时，标签 sandbox/phase/verdict
+ * sandbox.run：整次判题耗时，计数即各结果的提交数，标签 sandbox/verdict
+ */
+@Component
+public class SandboxMetrics {
+
+    public static final String NATIVE = "native";
+
+    public static final String DOCKER = "docker";
+
+    public static final String NAMESPACE = "namespace";
+
+    private static final String[] SANDBOXES = {NATIVE, DOCKER, NAMESPACE};
+
+    private static final SandboxPhaseEnum[] PHASES = SandboxPhaseEnum.values();
+
+    private static final SubmissionStateEnum[] STATES = SubmissionStateEnum.values();
+
+    // 没有结果（抛出异常）时的结果标签
+    private static final String ERROR = "error";
+
+    private final SandboxProperties.Metrics config;
+
+    private final MeterRegistry meterRegistry;
+
+    // 按 沙箱/阶段/结果 下标缓存的计时器，首次用到时注册，注册本身是幂等的
+    private final Timer[][][] phaseTimers = new Timer[SANDBOXES.length][PHASES.length][STATES.length + 1];
+
+    private final Timer[][] runTimers = new Timer[SANDBOXES.length][STATES.length + 1];
+
+    public SandboxMetrics(SandboxProperties sandboxProperties, MeterRegistry meterRegistry) {
+        this.config = sandboxProperties.getMetrics();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 为一次判题创建记录器，关闭指标且请求未要求阶段明细时返回共享的空实现
+     */
+    public PhaseRecorder newRecorder(CodeSandBoxDTO codeSandBoxDTO) {
+        boolean debug = Boolean.TRUE.equals(codeSandBoxDTO.getDebug());
+        if (!config.isEnabled() && !debug) {
+            return PhaseRecorder.DISABLED;
+        }
+        return new PhaseRecorder(debug);
+    }
+
+    /**
+     * 判题结束：记录各阶段耗时，请求要求时把阶段明细写入结果
+     * @param sandbox NATIVE、DOCKER或NAMESPACE
+     * @param codeSandBoxResult 判题结果，抛出异常时为null
+     */
+    public void finish(String sandbox, PhaseRecorder recorder, CodeSandBoxResult codeSandBoxResult) {
+        if (!recorder.isEnabled()) {
+            return;
+        }
+        if (recorder.isDebug() && codeSandBoxResult != null) {
+            codeSandBoxResult.setPhases(recorder.toMicros());
+        }
+        if (!config.isEnabled()) {
+            return;
+        }
+        int sandboxIndex = sandboxIndex(sandbox);
+        int verdictIndex = verdictIndex(codeSandBoxResult);
+        for (SandboxPhaseEnum phase : PHASES) {
+            long nanos = recorder.get(phase);
+            if (nanos > 0) {
+                phaseTimer(sandboxIndex, phase, verdictIndex).record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        runTimer(sandboxIndex, verdictIndex).record(recorder.elapsed(), TimeUnit.NANOSECONDS);
+    }
+
+    private static int sandboxIndex(String sandbox) {
+        for (int i = 0; i < SANDBOXES.length; i++) {
+            if (SANDBOXES[i].equals(sandbox)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("未知的沙箱类型：" + sandbox);
+    }
+
+    private static int verdictIndex(CodeSandBoxResult codeSandBoxResult) {
+        if (codeSandBoxResult == null || codeSandBoxResult.getStatus() == null) {
+            return STATES.length;
+        }
+        for (SubmissionStateEnum state : STATES) {
+            if (state.getValue() == codeSandBoxResult.getStatus()) {
+                return state.ordinal();
+            }
+        }
+        return STATES.length;
+    }
+
+    private static String verdict(int verdictIndex) {
+        return verdictIndex == STATES.length ? ERROR : STATES[verdictIndex].name().toLowerCase();
+    }
+
+    private Timer phaseTimer(int sandboxIndex, SandboxPhaseEnum phase, int verdictIndex) {
+        Timer timer = phaseTimers[sandboxIndex][phase.ordinal()][verdictIndex];
+        if (timer == null) {
+            timer = Timer.builder("sandbox.phase")
+                    .description("判题各阶段耗时")
+                    .tag("sandbox", SANDBOXES[sandboxIndex])
+                    .tag("phase", phase.getValue())
+                    .tag("verdict", verdict(verdictIndex))
+                    .register(meterRegistry);
+            phaseTimers[sandboxIndex][phase.ordinal()][verdictIndex] = timer;
+        }
+        return timer;
+    }
+
+    private Timer runTimer(int sandboxIndex, int verdictIndex) {
+        Timer timer = runTimers[sandboxIndex][verdictIndex];
+        if (timer == null) {
+            timer = Timer.builder("sandbox.run")
+                    .description("判题总耗时")
+                    .tag("sandbox", SANDBOXES[sandboxIndex])
+                    .tag("verdict", verdict(verdictIndex))
+                    .register(meterRegistry);
+            runTimers[sandboxIndex][verdictIndex] = timer;
+        }
+        return timer;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.javasandbox.metrics;
+
+import lombok.Getter;
+
+/**
+ * 判题阶段枚举，value为指标中的phase标签
+ */
+@Getter
+public enum SandboxPhaseEnum {
+    WORKSPACE("工作目录准备", "workspace"),
+    SCAN("禁用代码扫描", "scan"),
+    COMPILE("编译", "compile"),
+    IMAGE_CHECK("镜像检查", "image_check"),
+    CONTAINER_CREATE("容器创建与启动", "container_create"),
+    CHECKOUT_WAIT("等待空闲容器", "checkout_wait"),
+    EXEC("用例执行", "exec"),
+    STATS("资源统计", "stats"),
+    CLEANUP("清理", "cleanup"),
+    ;
+
+    private final String name;
+    private final String value;
+
+    SandboxPhaseEnum(String name, String value) {
+        this.name = name;
+        this.value = value;
+    }
+}
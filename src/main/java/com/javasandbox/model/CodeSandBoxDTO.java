@@ -22,5 +22,19 @@ public class CodeSandBoxDTO {
     List<String> input;
     // 语言
     Integer language;
+    // 单个用例的CPU时间限制（毫秒），为空则使用沙箱默认配置
+    Long timeLimit;
+    // 输入方式，取值见InputModeEnum，为空时通过标准输入传入
+    Integer inputMode;
+    // 各用例的期望输出，不为空时在沙箱内比对输出，不一致返回答案错误
+    List<String> expectedOutput;
+    // 各用例期望输出文件，相对于沙箱配置的判题数据目录，与expectedOutput二选一
+    List<String> expectedOutputFile;
+    // 输出比较方式，取值见CompareModeEnum，为空时忽略行末空白
+    Integer compareMode;
+    // 浮点误差比较时允许的绝对/相对误差，为空则使用沙箱默认配置
+    Double epsilon;
+    // 为true时在结果中返回各阶段耗时明细
+    Boolean debug;
 
 }
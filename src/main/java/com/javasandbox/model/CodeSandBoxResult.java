@@ -1,15 +1,17 @@
 package com.javasandbox.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 代码沙箱响应结果
  */
 @Data
 public class CodeSandBoxResult {
-    // 输出
+    // 输出，沙箱内比对期望输出时不返回
     private List<String> output;
     // 错误信息
     private String message;
@@ -17,5 +19,12 @@ public class CodeSandBoxResult {
     private Integer status;
     // 判题信息
     private JudgeInfo judgeInfo;
+    // 第一个未通过的用例下标（从0开始），全部通过时为空
+    private Integer failedCase;
+    // 各阶段耗时（微秒），只在请求带debug时返回
+    private Map<String, Long> phases;
+    // 执行器启动、握手失败或响应中断得到的结果，不是用户程序自身的结论，不缓存
+    @JsonIgnore
+    private boolean incomplete;
 
 }
@@ -0,0 +1,23 @@
+package com.javasandbox.model;
+
+import lombok.Getter;
+
+/**
+ * 输出比较方式枚举，取值与OutputChecker.MODE_*一致
+ */
+@Getter
+public enum CompareModeEnum {
+    EXACT("精确匹配", 0),
+    TRAILING_WHITESPACE("忽略行末空白", 1),
+    TOKEN("逐词比较", 2),
+    FLOAT("浮点误差", 3),
+    ;
+
+    private final String name;
+    private final int value;
+
+    CompareModeEnum(String name, int value) {
+        this.name = name;
+        this.value = value;
+    }
+}
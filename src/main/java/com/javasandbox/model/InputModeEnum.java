@@ -0,0 +1,21 @@
+package com.javasandbox.model;
+
+import lombok.Getter;
+
+/**
+ * 用例输入方式枚举
+ */
+@Getter
+public enum InputModeEnum {
+    STDIN("标准输入", 0),
+    ARGS("命令行参数", 1),
+    ;
+
+    private final String name;
+    private final int value;
+
+    InputModeEnum(String name, int value) {
+        this.name = name;
+        this.value = value;
+    }
+}
@@ -0,0 +1,23 @@
+package com.javasandbox.model;
+
+import lombok.Getter;
+
+/**
+ * 异步判题任务状态枚举
+ */
+@Getter
+public enum JobStateEnum {
+    QUEUED("排队中", 0),
+    RUNNING("运行中", 1),
+    FINISHED("已完成", 2),
+    FAILED("执行失败", 3),
+    ;
+
+    private final String name;
+    private final int value;
+
+    JobStateEnum(String name, int value) {
+        this.name = name;
+        this.value = value;
+    }
+}
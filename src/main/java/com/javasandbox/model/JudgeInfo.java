@@ -12,7 +12,13 @@ public class JudgeInfo {
 
     // 程序占用内存
     private Long memory;
-    // 程序运行时间
+    // 程序运行时间（墙钟时间，毫秒）
     private Long time;
+    // 程序占用的CPU时间（user+sys，毫秒）
+    private Long cpuTime;
+
+    public JudgeInfo(Long memory, Long time) {
+        this(memory, time, null);
+    }
 
 }
@@ -14,6 +14,7 @@ public enum SubmissionStateEnum {
     MEMORY_LIMIT_EXCEEDED("内存超限", 4),
     COMPILE_ERROR("编译错误", 5),
     RUNTIME_ERROR("运行错误", 6),
+    OUTPUT_LIMIT_EXCEEDED("输出超限", 7),
     ;
 
     private final String name;
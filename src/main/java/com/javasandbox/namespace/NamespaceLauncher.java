@@ -0,0 +1,228 @@
+package com.javasandbox.namespace;
+
+import com.javasandbox.cgroup.RunGroup;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.runner.RunnerMain;
+import com.javasandbox.runner.RunnerCds;
+import com.javasandbox.runner.RunnerPool;
+import com.javasandbox.runner.RunnerStartup;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在Linux命名空间中启动批量模式的运行器，不依赖Docker守护进程
+ * unshare创建用户/挂载/PID/网络/IPC/UTS命名空间，在其中：
+ * 以tmpfs作为新的根目录，只读绑定系统库目录与JDK，读写绑定本次的运行目录到/app，
+ * pivot_root后卸载宿主机根目录，再清空全部capability、设置rlimit后启动运行器
+ */
+@Slf4j
+@Component
+public class NamespaceLauncher {
+
+    // 沙箱内运行目录
+    public static final String APP_DIR = "/app";
+
+    // 沙箱内运行器字节码目录
+    public static final String RUNNER_DIR = "/runner";
+
+    // 沙箱内JDK目录
+    public static final String JDK_DIR = "/jdk";
+
+    // 沙箱内AppCDS归档目录
+    public static final String CDS_DIR = "/cds";
+
+    // 运行器需要的设备文件
+    private static final String[] DEVICES = {"null", "zero", "random", "urandom"};
+
+    // 检测是否支持命名空间的超时时间（毫秒）
+    private static final long PROBE_TIMEOUT = 5000L;
+
+    private final SandboxProperties.Namespace config;
+
+    private final int outputLimit;
+
+    private final RunnerStartup runnerStartup;
+
+    // 运行器字节码解压到工作目录根目录下
+    private final String runnerDir;
+
+    private volatile boolean available = false;
+
+    public NamespaceLauncher(SandboxProperties sandboxProperties, RunnerStartup runnerStartup) {
+        this.config = sandboxProperties.getNamespace();
+        this.outputLimit = sandboxProperties.getOutput().getLimit();
+        this.runnerStartup = runnerStartup;
+        this.runnerDir = sandboxProperties.getWorkspace().resolveRoot() + File.separator + "namespace-runner";
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            RunnerPool.extractRunnerClasses(runnerDir);
+        } catch (IOException e) {
+            log.error("解压运行器字节码失败，命名空间沙箱不可用", e);
+            return;
+        }
+        available = probe();
+        if (!available) {
+            log.warn("当前系统不支持创建非特权用户命名空间，命名空间沙箱不可用");
+        }
+    }
+
+    /**
+     * 能否创建非特权用户命名空间并在其中挂载
+     */
+    private boolean probe() {
+        List<String> command = new ArrayList<>(unshareCommand());
+        command.addAll(Arrays.asList("/bin/sh", "-c", "mount -t tmpfs tmpfs /tmp"));
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 在新的命名空间中启动批量模式的运行器，运行器的stdout为RunnerMain协议的响应
+     * @param workDir 本次独占的工作目录，其下app目录为运行目录，root目录作为新根目录的挂载点
+     * @param requestFile 沙箱内的用例请求文件路径
+     * @param cpuLimit 整个运行器的CPU时间上限（毫秒），兜底用例自身的限时
+     * @param errorFile 运行器错误输出写入的宿主机文件
+     * @param runGroup 整个命名空间所在的cgroup子组，为null时不限制
+     */
+    public Process start(File workDir, String requestFile, long cpuLimit, File errorFile, RunGroup runGroup)
+            throws IOException {
+        List<String> command = new ArrayList<>(unshareCommand());
+        command.add("/bin/sh");
+        command.add("-c");
+        command.add(buildScript(workDir, requestFile, cpuLimit));
+        ProcessBuilder processBuilder = new ProcessBuilder(runGroup == null ? command : runGroup.wrap(command))
+                .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                .redirectError(errorFile);
+        // 不把宿主机的环境变量带进沙箱
+        processBuilder.environment().clear();
+        processBuilder.environment().put("PATH", "/usr/sbin:/usr/bin:/sbin:/bin");
+        return processBuilder.start();
+    }
+
+    private List<String> unshareCommand() {
+        // --kill-child：unshare被杀死时命名空间内的1号进程随之结束，整个PID命名空间一起销毁
+        return Arrays.asList(config.getUnshare(), "--user", "--map-root-user", "--mount", "--pid", "--fork",
+                "--kill-child", "--net", "--ipc", "--uts", "--cgroup", "--");
+    }
+
+    /**
+     * 在命名空间内执行的初始化脚本
+     */
+    String buildScript(File workDir, String requestFile, long cpuLimit) {
+        String root = new File(workDir, "root").getAbsolutePath();
+        String appDir = new File(workDir, "app").getAbsolutePath();
+        StringBuilder script = new StringBuilder("set -e\n");
+        // 1.新根目录
+        script.append("R=").append(quote(root)).append('\n');
+        script.append("mount -t tmpfs -o size=").append(config.getTmpfsSize()).append(",mode=755 tmpfs \"$R\"\n");
+        script.append("mkdir -p \"$R/proc\" \"$R/dev\" \"$R/tmp\" \"$R/.old\" \"$R").append(APP_DIR)
+                .append("\" \"$R").append(RUNNER_DIR).append("\" \"$R").append(JDK_DIR).append("\"\n");
+        // 2.系统库目录与JDK只读绑定，符号链接（如/bin -> usr/bin）原样创建
+        for (String readOnlyPath : config.getReadOnlyPaths()) {
+            Path path = Paths.get(readOnlyPath);
+            if (Files.isSymbolicLink(path)) {
+                try {
+                    script.append("ln -s ").append(quote(Files.readSymbolicLink(path).toString()))
+                            .append(" \"$R\"").append(quote(readOnlyPath)).append('\n');
+                } catch (IOException e) {
+                    log.warn("读取符号链接失败：{}", readOnlyPath);
+                }
+            } else if (Files.isDirectory(path)) {
+                script.append("mkdir -p \"$R\"").append(quote(readOnlyPath)).append('\n');
+                bindReadOnly(script, readOnlyPath, readOnlyPath);
+            }
+        }
+        bindReadOnly(script, System.getProperty("java.home"), JDK_DIR);
+        bindReadOnly(script, runnerDir, RUNNER_DIR);
+        // 宿主机JDK的归档只读绑定，沙箱内的JDK与宿主机是同一个，归档可以直接使用
+        boolean archiveReady = runnerStartup.isArchiveReady();
+        if (archiveReady) {
+            script.append("mkdir \"$R").append(CDS_DIR).append("\"\n");
+            bindReadOnly(script, runnerStartup.getCdsDir(), CDS_DIR);
+        }
+        script.append("mount --bind ").append(quote(appDir)).append(" \"$R").append(APP_DIR).append("\"\n");
+        for (String device : DEVICES) {
+            script.append("touch \"$R/dev/").append(device).append("\" && mount --bind /dev/").append(device)
+                    .append(" \"$R/dev/").append(device).append("\"\n");
+        }
+        // 新PID命名空间的proc，只能看到沙箱内的进程
+        script.append("mount -t proc proc \"$R/proc\"\n");
+        // 3.切换根目录并卸载宿主机根目录，沙箱内再也访问不到宿主机文件系统
+        script.append("cd \"$R\"\n");
+        script.append("pivot_root . .old\n");
+        script.append("umount -l /.old\n");
+        script.append("rmdir /.old\n");
+        script.append("cd ").append(APP_DIR).append('\n');
+        // 4.设置rlimit、清空capability后启动运行器，CPU时间按秒向上取整
+        List<String> command = new ArrayList<>(Arrays.asList("exec", "prlimit", "--core=0",
+                "--fsize=" + config.getFileSizeLimit(),
+                "--nofile=" + config.getOpenFilesLimit(),
+                "--cpu=" + TimeUnit.MILLISECONDS.toSeconds(cpuLimit + 999),
+                "--", "setpriv", "--no-new-privs", "--bounding-set=-all", "--inh-caps=-all",
+                JDK_DIR + "/bin/java", "-Dfile.encoding=utf-8", "-Drunner.maxOutput=" + outputLimit));
+        // 启动参数组合在前，命名空间自己的参数（堆大小等）可以覆盖
+        command.addAll(runnerStartup.getJvmOptions());
+        command.addAll(config.getJvmOptions());
+        if (archiveReady) {
+            command.addAll(RunnerCds.archiveOptions(CDS_DIR + "/" + RunnerCds.ARCHIVE));
+        }
+        // JDK18起默认禁止运行时安装SecurityManager，需要显式允许（JDK12起支持该取值）
+        if (Runtime.version().feature() >= 12) {
+            command.add("-Djava.security.manager=allow");
+        }
+        command.addAll(Arrays.asList("-cp", RUNNER_DIR, RunnerMain.class.getName(), requestFile));
+        for (int i = 0; i < command.size(); i++) {
+            script.append(i == 0 ? command.get(i) : " " + quote(command.get(i)));
+        }
+        script.append('\n');
+        return script.toString();
+    }
+
+    private static void bindReadOnly(StringBuilder script, String source, String target) {
+        script.append("mount --bind ").append(quote(source)).append(" \"$R\"").append(quote(target)).append('\n');
+        script.append("mount -o remount,bind,ro \"$R\"").append(quote(target)).append('\n');
+    }
+
+    /**
+     * 按shell单引号规则转义
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+}
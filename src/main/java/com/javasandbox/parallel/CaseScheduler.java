@@ -0,0 +1,165 @@
+package com.javasandbox.parallel;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.utils.CpuAffinityUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * 用例并行调度
+ * 全局按CPU核心划分执行槽位，每个用例独占一个槽位（核心）运行；单次提交最多同时占用maxPerSubmission个槽位
+ */
+@Slf4j
+@Component
+public class CaseScheduler {
+
+    private final SandboxProperties.Parallel config;
+
+    // 空闲槽位，元素为槽位绑定的CPU核心编号
+    private final LinkedBlockingQueue<Integer> freeCores = new LinkedBlockingQueue<>();
+
+    private final ExecutorService executor;
+
+    public CaseScheduler(SandboxProperties sandboxProperties) {
+        this.config = sandboxProperties.getParallel();
+        List<Integer> cores = config.getCpus();
+        if (cores == null || cores.isEmpty()) {
+            cores = new ArrayList<>();
+            for (int i = 0; i < config.getSlots(); i++) {
+                cores.add(i);
+            }
+        }
+        freeCores.addAll(cores);
+        if (config.isEnabled() && config.isPinCpu() && !CpuAffinityUtil.isSupported()) {
+            log.warn("当前系统不支持taskset，用例并行执行但不绑定CPU");
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "case-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 执行一次提交的全部用例，任一用例失败后不再开始新的用例
+     * 用例按下标顺序领取，失败用例之前的用例一定已执行完，调用方按下标顺序汇总即可得到确定的结果
+     * @param caseCount 用例数
+     * @param task 单个用例的执行逻辑
+     * @param failed 判断用例是否失败
+     * @return 按下标排列的用例结果，未执行的用例为null
+     */
+    public <T> List<T> runCases(int caseCount, CaseTask<T> task, Predicate<T> failed) {
+        // 未开启并行时在当前线程中逐个执行，不绑定CPU
+        if (!config.isEnabled() || caseCount <= 1) {
+            List<T> results = new ArrayList<>();
+            for (int i = 0; i < caseCount; i++) {
+                T result = task.run(i, null);
+                results.add(result);
+                if (failed.test(result)) {
+                    break;
+                }
+            }
+            while (results.size() < caseCount) {
+                results.add(null);
+            }
+            return results;
+        }
+        AtomicReferenceArray<T> results = new AtomicReferenceArray<>(caseCount);
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        int workers = Math.min(caseCount, config.getMaxPerSubmission());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            futures.add(executor.submit(() -> {
+                int index;
+                while (!stop.get() && (index = next.getAndIncrement()) < caseCount) {
+                    Integer core = acquireCore();
+                    try {
+                        T result = task.run(index, config.isPinCpu() ? core : null);
+                        results.set(index, result);
+                        if (failed.test(result)) {
+                            stop.set(true);
+                        }
+                    } catch (RuntimeException e) {
+                        stop.set(true);
+                        throw e;
+                    } finally {
+                        freeCores.offer(core);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                stop.set(true);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+        List<T> list = new ArrayList<>(caseCount);
+        for (int i = 0; i < caseCount; i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 单次提交最多同时执行的用例数
+     */
+    public int getMaxPerSubmission() {
+        return config.isEnabled() ? config.getMaxPerSubmission() : 1;
+    }
+
+    private Integer acquireCore() {
+        try {
+            return freeCores.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 单个用例的执行逻辑
+     */
+    @FunctionalInterface
+    public interface CaseTask<T> {
+
+        /**
+         * @param index 用例下标
+         * @param core 独占的CPU核心，不绑定时为null
+         */
+        T run(int index, Integer core);
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.javasandbox.pipeline;
+
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.compile.CompiledClassCache;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.metrics.SandboxPhaseEnum;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.runner.CaseAnswer;
+import com.javasandbox.security.ForbiddenPatternScanner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 判题流水线
+ * 一次提交依次经过 源码扫描 -> 编译 -> 工作目录准备 -> 用例执行 -> 判题/清理，各阶段由独立的定长线程池执行，
+ * 阶段之间以有界队列衔接：编译密集的提交不占用执行线程，下一个提交的编译与上一个提交的执行重叠；
+ * 某一阶段排满时上一阶段的线程阻塞等待，压力逐级传回请求线程
+ * sandbox.pipeline.queue.depth / sandbox.pipeline.utilization：各阶段排队数与忙碌线程占比
+ * sandbox.pipeline.wait：各阶段排队耗时，sandbox.pipeline.blocked：因下一阶段排满而阻塞的次数
+ */
+@Slf4j
+@Component
+public class JudgePipeline {
+
+    private static final PipelineStageEnum[] STAGES = PipelineStageEnum.values();
+
+    private final SandboxProperties sandboxProperties;
+
+    private final ForbiddenPatternScanner forbiddenPatternScanner;
+
+    private final CompiledClassCache compiledClassCache;
+
+    // 各阶段的线程池，关闭流水线时为空，全部阶段在调用线程中执行
+    private final Map<PipelineStageEnum, ThreadPoolExecutor> executors = new EnumMap<>(PipelineStageEnum.class);
+
+    private final Map<PipelineStageEnum, Executor> stageExecutors = new EnumMap<>(PipelineStageEnum.class);
+
+    public JudgePipeline(SandboxProperties sandboxProperties, ForbiddenPatternScanner forbiddenPatternScanner,
+                         CompiledClassCache compiledClassCache, MeterRegistry meterRegistry) {
+        this.sandboxProperties = sandboxProperties;
+        this.forbiddenPatternScanner = forbiddenPatternScanner;
+        this.compiledClassCache = compiledClassCache;
+        SandboxProperties.Pipeline config = sandboxProperties.getPipeline();
+        for (PipelineStageEnum stage : STAGES) {
+            if (!config.isEnabled()) {
+                stageExecutors.put(stage, Runnable::run);
+                continue;
+            }
+            SandboxProperties.Stage stageConfig = stageConfig(config, stage);
+            int threads = Math.max(1, stageConfig.getThreads());
+            Counter blocked = Counter.builder("sandbox.pipeline.blocked")
+                    .description("因下一阶段排满而阻塞的次数")
+                    .tag("stage", stage.getValue())
+                    .register(meterRegistry);
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, stageConfig.getQueueCapacity())), r -> {
+                Thread thread = new Thread(r, "pipeline-" + stage.getValue() + "-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, (r, pool) -> {
+                // 队列已满：阻塞提交方（上一阶段的线程或请求线程）直到有空位
+                if (pool.isShutdown()) {
+                    throw new RejectedExecutionException("判题流水线已关闭");
+                }
+                blocked.increment();
+                try {
+                    pool.getQueue().put(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("等待判题流水线队列被中断", e);
+                }
+            });
+            executors.put(stage, executor);
+            Gauge.builder("sandbox.pipeline.queue.depth", executor, pool -> pool.getQueue().size())
+                    .description("排队中的任务数")
+                    .tag("stage", stage.getValue())
+                    .register(meterRegistry);
+            Gauge.builder("sandbox.pipeline.utilization", executor,
+                    pool -> (double) pool.getActiveCount() / pool.getMaximumPoolSize())
+                    .description("忙碌线程占比")
+                    .tag("stage", stage.getValue())
+                    .register(meterRegistry);
+            Timer waitTimer = Timer.builder("sandbox.pipeline.wait")
+                    .description("任务排队耗时")
+                    .tag("stage", stage.getValue())
+                    .register(meterRegistry);
+            stageExecutors.put(stage, task -> {
+                long submitTime = System.nanoTime();
+                executor.execute(() -> {
+                    waitTimer.record(System.nanoTime() - submitTime, TimeUnit.NANOSECONDS);
+                    task.run();
+                });
+            });
+        }
+    }
+
+    private static SandboxProperties.Stage stageConfig(SandboxProperties.Pipeline config, PipelineStageEnum stage) {
+        switch (stage) {
+            case SCAN:
+                return config.getScan();
+            case COMPILE:
+                return config.getCompile();
+            case WORKSPACE:
+                return config.getWorkspace();
+            case EXECUTE:
+                return config.getExecute();
+            case JUDGE:
+                return config.getJudge();
+            default:
+                return config.getCleanup();
+        }
+    }
+
+    private Executor stage(PipelineStageEnum stage) {
+        return stageExecutors.get(stage);
+    }
+
+    /**
+     * 让一次提交走完流水线，调用线程等待判题与清理都结束
+     * @param stages 沙箱的工作目录准备、执行、判题与清理
+     */
+    public <W, R> CodeSandBoxResult run(CodeSandBoxDTO codeSandBoxDTO, PhaseRecorder recorder,
+                                        SandboxStages<W, R> stages) {
+        // 期望输出引用的判题数据不合法时直接拒绝，不进入队列
+        CaseAnswer.check(codeSandBoxDTO, sandboxProperties);
+        Submission<W, R> submission = new Submission<>();
+        CompletableFuture<Void> executed = CompletableFuture
+                .runAsync(() -> scanSource(codeSandBoxDTO, submission, recorder), stage(PipelineStageEnum.SCAN))
+                .thenRunAsync(() -> compile(codeSandBoxDTO, submission, recorder), stage(PipelineStageEnum.COMPILE))
+                .thenRunAsync(() -> {
+                    if (submission.result == null) {
+                        submission.resource = stages.prepare(codeSandBoxDTO, submission.compileResult, recorder);
+                    }
+                }, stage(PipelineStageEnum.WORKSPACE))
+                .thenRunAsync(() -> {
+                    if (submission.result == null) {
+                        submission.output = stages.execute(codeSandBoxDTO, submission.resource, recorder);
+                    }
+                }, stage(PipelineStageEnum.EXECUTE));
+        // 判题与清理互不依赖，同时进行
+        CompletableFuture<CodeSandBoxResult> judged = executed.thenApplyAsync(ignored -> submission.result != null
+                ? submission.result : stages.judge(codeSandBoxDTO, submission.output),
+                stage(PipelineStageEnum.JUDGE));
+        CompletableFuture<Void> cleaned = executed.handleAsync((ignored, throwable) -> {
+            if (submission.resource != null) {
+                try {
+                    stages.cleanup(submission.resource, recorder);
+                } catch (RuntimeException e) {
+                    log.error("归还运行资源失败", e);
+                }
+            }
+            return null;
+        }, stage(PipelineStageEnum.CLEANUP));
+        try {
+            CompletableFuture.allOf(judged, cleaned).join();
+            return judged.join();
+        } catch (CompletionException e) {
+            // 原样抛出阶段中的异常，调用方按原有的异常类型处理
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 共享的多模式串自动机扫描源码敏感词
+     */
+    private void scanSource(CodeSandBoxDTO codeSandBoxDTO, Submission<?, ?> submission, PhaseRecorder recorder) {
+        long start = recorder.start();
+        String match = forbiddenPatternScanner.scanSource(codeSandBoxDTO.getCode());
+        recorder.stop(SandboxPhaseEnum.SCAN, start);
+        if (match != null) {
+            submission.result = banned("代码中包含敏感词" + match);
+        }
+    }
+
+    /**
+     * 内存中编译代码，相同源码直接命中编译缓存；编译通过后扫描字节码常量池中对禁用类/方法的引用
+     */
+    private void compile(CodeSandBoxDTO codeSandBoxDTO, Submission<?, ?> submission, PhaseRecorder recorder) {
+        if (submission.result != null) {
+            return;
+        }
+        long start = recorder.start();
+        CompileResult compileResult = compiledClassCache.compile(codeSandBoxDTO.getCode());
+        recorder.stop(SandboxPhaseEnum.COMPILE, start);
+        if (!compileResult.isSuccess()) {
+            CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+            codeSandBoxResult.setMessage(compileResult.getMessage());
+            codeSandBoxResult.setStatus(SubmissionStateEnum.COMPILE_ERROR.getValue());
+            submission.result = codeSandBoxResult;
+            return;
+        }
+        start = recorder.start();
+        String forbidden = forbiddenPatternScanner.scanBytecode(compileResult.getClassBytes());
+        recorder.stop(SandboxPhaseEnum.SCAN, start);
+        if (forbidden != null) {
+            submission.result = banned("代码中使用了禁止的类或方法" + forbidden);
+            return;
+        }
+        submission.compileResult = compileResult;
+    }
+
+    private static CodeSandBoxResult banned(String message) {
+        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+        codeSandBoxResult.setMessage(message);
+        codeSandBoxResult.setStatus(5);
+        return codeSandBoxResult;
+    }
+
+    /**
+     * 阶段的排队数，关闭流水线时为0
+     */
+    public int getQueueDepth(PipelineStageEnum stage) {
+        ThreadPoolExecutor executor = executors.get(stage);
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void close() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    /**
+     * 一次提交在各阶段之间传递的状态，阶段按顺序执行，由CompletableFuture保证可见性
+     */
+    private static class Submission<W, R> {
+
+        // 扫描或编译阶段已得出的结果（禁用代码、编译错误），后续阶段跳过
+        private CodeSandBoxResult result;
+
+        private CompileResult compileResult;
+
+        private W resource;
+
+        private R output;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.javasandbox.pipeline;
+
+import lombok.Getter;
+
+/**
+ * 判题流水线阶段枚举，value为指标中的stage标签与线程名前缀
+ */
+@Getter
+public enum PipelineStageEnum {
+    SCAN("源码扫描", "scan"),
+    COMPILE("编译", "compile"),
+    WORKSPACE("工作目录准备", "workspace"),
+    EXECUTE("用例执行", "execute"),
+    JUDGE("判题", "judge"),
+    CLEANUP("清理", "cleanup"),
+    ;
+
+    private final String name;
+    private final String value;
+
+    PipelineStageEnum(String name, String value) {
+        this.name = name;
+        this.value = value;
+    }
+}
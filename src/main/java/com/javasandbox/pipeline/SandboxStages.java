@@ -0,0 +1,35 @@
+package com.javasandbox.pipeline;
+
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+
+/**
+ * 沙箱在判题流水线中的各阶段，扫描与编译由流水线统一完成
+ * @param <W> 工作目录准备阶段取得的运行资源（工作目录、容器等），由清理阶段归还
+ * @param <R> 用例执行阶段的原始结果
+ */
+public interface SandboxStages<W, R> {
+
+    /**
+     * 准备运行资源并写入字节码，失败时自行释放已取得的资源
+     */
+    W prepare(CodeSandBoxDTO codeSandBoxDTO, CompileResult compileResult, PhaseRecorder recorder);
+
+    /**
+     * 执行用例
+     */
+    R execute(CodeSandBoxDTO codeSandBoxDTO, W resource, PhaseRecorder recorder);
+
+    /**
+     * 由执行结果得出判题结果
+     */
+    CodeSandBoxResult judge(CodeSandBoxDTO codeSandBoxDTO, R results);
+
+    /**
+     * 归还运行资源，执行阶段抛出异常时也会调用
+     */
+    void cleanup(W resource, PhaseRecorder recorder);
+
+}
@@ -0,0 +1,173 @@
+package com.javasandbox.runner;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CompareModeEnum;
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单个用例的期望输出与比较方式
+ * 期望输出较小时随请求直接传递，超过内联上限或引用判题数据文件时，由运行器直接从文件读取；
+ * 期望输出文件写在运行目录中，不在用户字节码目录（classpath）下
+ */
+@Data
+public class CaseAnswer {
+
+    // 比较方式，取值见CompareModeEnum
+    private int compareMode;
+    // 浮点误差比较允许的误差
+    private double epsilon;
+    // 内联的期望输出
+    private byte[] expected = new byte[0];
+    // 期望输出文件（宿主机路径），为null表示使用内联输出
+    private File expectedFile;
+    // 期望输出文件在运行器中的路径（Docker容器内与宿主机路径不同）
+    private String expectedPath;
+
+    /**
+     * 提交是否需要在沙箱内比对输出
+     */
+    public static boolean isPresent(CodeSandBoxDTO codeSandBoxDTO) {
+        return codeSandBoxDTO.getExpectedOutput() != null || codeSandBoxDTO.getExpectedOutputFile() != null;
+    }
+
+    /**
+     * 运行前校验比较方式与期望输出文件，不合法时抛出IllegalArgumentException
+     */
+    public static void check(CodeSandBoxDTO codeSandBoxDTO, SandboxProperties sandboxProperties) {
+        if (!isPresent(codeSandBoxDTO)) {
+            return;
+        }
+        Integer compareMode = codeSandBoxDTO.getCompareMode();
+        if (compareMode != null && Arrays.stream(CompareModeEnum.values())
+                .noneMatch(mode -> mode.getValue() == compareMode)) {
+            throw new IllegalArgumentException("不支持的比较方式：" + compareMode);
+        }
+        List<String> expectedOutputFile = codeSandBoxDTO.getExpectedOutputFile();
+        if (codeSandBoxDTO.getExpectedOutput() == null) {
+            for (int i = 0; i < codeSandBoxDTO.getInput().size(); i++) {
+                resolveDataFile(sandboxProperties.getJudge().getDataDir(),
+                        i < expectedOutputFile.size() ? expectedOutputFile.get(i) : null);
+            }
+        }
+    }
+
+    /**
+     * 构造第index个用例的期望输出，提交未给出期望输出时返回null
+     * @param hostDir 本次运行目录（宿主机路径），大期望输出写入该目录，不能是用户字节码目录
+     * @param runnerDir 运行器看到的同一目录
+     */
+    public static CaseAnswer of(CodeSandBoxDTO codeSandBoxDTO, int index, SandboxProperties sandboxProperties,
+                                String hostDir, String runnerDir) {
+        List<String> expectedOutput = codeSandBoxDTO.getExpectedOutput();
+        List<String> expectedOutputFile = codeSandBoxDTO.getExpectedOutputFile();
+        if (!isPresent(codeSandBoxDTO)) {
+            return null;
+        }
+        SandboxProperties.Judge judge = sandboxProperties.getJudge();
+        CaseAnswer caseAnswer = newAnswer(codeSandBoxDTO, judge);
+        String fileName = "expected-" + index + ".txt";
+        if (expectedOutput != null) {
+            // 缺少的期望输出按空输出比较
+            String expected = index < expectedOutput.size() ? expectedOutput.get(index) : "";
+            if (expected.length() <= sandboxProperties.getInput().getInlineLimit()) {
+                caseAnswer.setExpected(expected.getBytes(StandardCharsets.UTF_8));
+                return caseAnswer;
+            }
+            File file = new File(hostDir, fileName);
+            FileUtil.writeString(expected, file, StandardCharsets.UTF_8);
+            caseAnswer.setExpectedFile(file);
+            caseAnswer.setExpectedPath(runnerDir + "/" + fileName);
+            return caseAnswer;
+        }
+        File dataFile = resolveDataFile(judge.getDataDir(),
+                index < expectedOutputFile.size() ? expectedOutputFile.get(index) : null);
+        if (hostDir.equals(runnerDir)) {
+            // 运行器与宿主机共用文件系统，直接读取判题数据
+            caseAnswer.setExpectedFile(dataFile);
+            caseAnswer.setExpectedPath(dataFile.getAbsolutePath());
+            return caseAnswer;
+        }
+        // 判题数据目录不在容器内，复制到挂载的运行目录
+        File file = FileUtil.copy(dataFile, new File(hostDir, fileName), true);
+        caseAnswer.setExpectedFile(file);
+        caseAnswer.setExpectedPath(runnerDir + "/" + fileName);
+        return caseAnswer;
+    }
+
+    /**
+     * 构造只在宿主机侧比对的期望输出，不写任何文件：期望输出保留在内存中，判题数据文件直接引用
+     * 用于用户进程与比对不在同一个运行器中的场景，期望输出不会出现在用户进程能访问的目录里
+     */
+    public static CaseAnswer forHost(CodeSandBoxDTO codeSandBoxDTO, int index, SandboxProperties sandboxProperties) {
+        if (!isPresent(codeSandBoxDTO)) {
+            return null;
+        }
+        SandboxProperties.Judge judge = sandboxProperties.getJudge();
+        CaseAnswer caseAnswer = newAnswer(codeSandBoxDTO, judge);
+        List<String> expectedOutput = codeSandBoxDTO.getExpectedOutput();
+        if (expectedOutput != null) {
+            String expected = index < expectedOutput.size() ? expectedOutput.get(index) : "";
+            caseAnswer.setExpected(expected.getBytes(StandardCharsets.UTF_8));
+            return caseAnswer;
+        }
+        List<String> expectedOutputFile = codeSandBoxDTO.getExpectedOutputFile();
+        File dataFile = resolveDataFile(judge.getDataDir(),
+                index < expectedOutputFile.size() ? expectedOutputFile.get(index) : null);
+        caseAnswer.setExpectedFile(dataFile);
+        caseAnswer.setExpectedPath(dataFile.getAbsolutePath());
+        return caseAnswer;
+    }
+
+    private static CaseAnswer newAnswer(CodeSandBoxDTO codeSandBoxDTO, SandboxProperties.Judge judge) {
+        CaseAnswer caseAnswer = new CaseAnswer();
+        caseAnswer.setCompareMode(codeSandBoxDTO.getCompareMode() == null
+                ? CompareModeEnum.TRAILING_WHITESPACE.getValue() : codeSandBoxDTO.getCompareMode());
+        caseAnswer.setEpsilon(codeSandBoxDTO.getEpsilon() == null ? judge.getEpsilon() : codeSandBoxDTO.getEpsilon());
+        return caseAnswer;
+    }
+
+    /**
+     * 解析判题数据目录下的期望输出文件，不允许引用目录以外的文件
+     */
+    private static File resolveDataFile(String dataDir, String name) {
+        if (dataDir == null || dataDir.isEmpty()) {
+            throw new IllegalArgumentException("未配置判题数据目录，不能引用期望输出文件");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("缺少期望输出文件");
+        }
+        Path root = Paths.get(dataDir).toAbsolutePath().normalize();
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root) || !Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("期望输出文件不存在：" + name);
+        }
+        return path.toFile();
+    }
+
+    /**
+     * 创建宿主机侧使用的流式比对器
+     */
+    public OutputChecker newChecker() {
+        byte[] bytes = expected;
+        if (expectedFile != null) {
+            try {
+                bytes = Files.readAllBytes(expectedFile.toPath());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new OutputChecker(bytes, compareMode, epsilon);
+    }
+
+}
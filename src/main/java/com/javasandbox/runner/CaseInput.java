@@ -0,0 +1,81 @@
+package com.javasandbox.runner;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.model.InputModeEnum;
+import lombok.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个用例的输入
+ * 标准输入较小时随请求直接传递，超过内联上限时写入文件，由运行器或子进程直接从文件读取
+ */
+@Data
+public class CaseInput {
+
+    // 程序参数
+    private List<String> args = Collections.emptyList();
+    // 内联的标准输入
+    private byte[] stdin = new byte[0];
+    // 标准输入文件（宿主机路径），为null表示使用内联输入
+    private File stdinFile;
+    // 标准输入文件在运行器中的路径（Docker容器内与宿主机路径不同）
+    private String stdinPath;
+
+    /**
+     * 按请求的输入方式构造用例输入
+     * @param inputMode 输入方式，取值见InputModeEnum，为空时使用标准输入
+     */
+    public static CaseInput of(String input, Integer inputMode, int inlineLimit, String hostDir, String runnerDir,
+                               int index) {
+        if (Integer.valueOf(InputModeEnum.ARGS.getValue()).equals(inputMode)) {
+            return ofArgs(input);
+        }
+        return ofStdin(input, inlineLimit, hostDir, runnerDir, index);
+    }
+
+    /**
+     * 以命令行参数传入用例（旧方式）
+     */
+    public static CaseInput ofArgs(String input) {
+        CaseInput caseInput = new CaseInput();
+        caseInput.setArgs(Arrays.asList(input.split(" ")));
+        return caseInput;
+    }
+
+    /**
+     * 以标准输入传入用例
+     * @param input 用例输入
+     * @param inlineLimit 内联上限（字符数），超过后写入文件
+     * @param hostDir 输入文件所在的宿主机目录
+     * @param runnerDir 运行器看到的同一目录
+     * @param index 用例下标
+     */
+    public static CaseInput ofStdin(String input, int inlineLimit, String hostDir, String runnerDir, int index) {
+        CaseInput caseInput = new CaseInput();
+        if (input.length() <= inlineLimit) {
+            caseInput.setStdin(input.getBytes(StandardCharsets.UTF_8));
+            return caseInput;
+        }
+        String fileName = "input-" + index + ".txt";
+        File file = new File(hostDir, fileName);
+        FileUtil.mkParentDirs(file);
+        // 按字符流写出，不在内存中再生成一份完整的字节数组
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(input);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        caseInput.setStdinFile(file);
+        caseInput.setStdinPath(runnerDir + "/" + fileName);
+        return caseInput;
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.javasandbox.runner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式比对用户程序的标准输出与期望输出，输出边写入边比较，不保留完整输出
+ * 第一次出现不一致时立即标记并回调，由调用方提前结束程序
+ * 注意：本类与RunnerMain一起被解压到运行器目录中，只能依赖JDK自身的类
+ *
+ * 比较方式（取值与CompareModeEnum一致）：
+ * 精确匹配：逐字节相同
+ * 忽略行末空白：忽略每行末尾的空白字符与输出末尾的空行
+ * 逐词比较：按空白字符切分后逐个比较
+ * 浮点误差：逐词比较，两边都是数字时绝对误差或相对误差不超过epsilon即视为相同
+ */
+public class OutputChecker extends OutputStream {
+
+    public static final int MODE_EXACT = 0;
+
+    public static final int MODE_TRAILING_WHITESPACE = 1;
+
+    public static final int MODE_TOKEN = 2;
+
+    public static final int MODE_FLOAT = 3;
+
+    // 浮点比较时单个输出词的最大长度，超出直接判为不一致
+    private static final int MAX_NUMBER_LENGTH = 1024;
+
+    private final int mode;
+
+    private final double epsilon;
+
+    // 精确匹配/忽略行末空白：期望输出（后者已去掉行末空白）及已匹配的位置
+    private byte[] expected;
+
+    private int position = 0;
+
+    // 忽略行末空白：尚未确定是否为行末空白的换行与空白，只记录数量与是否仍与期望一致
+    private int pendingLines = 0;
+
+    private int pendingSpaces = 0;
+
+    private boolean linesMatch = true;
+
+    private boolean spacesMatch = true;
+
+    // 逐词比较：期望的词与当前正在读取的输出词
+    private List<byte[]> expectedTokens;
+
+    private int tokenIndex = 0;
+
+    private final ByteArrayOutputStream token = new ByteArrayOutputStream();
+
+    private volatile boolean mismatch = false;
+
+    private Runnable onMismatch;
+
+    public OutputChecker(byte[] expected, int mode, double epsilon) {
+        this.mode = mode;
+        this.epsilon = epsilon;
+        switch (mode) {
+            case MODE_EXACT:
+                this.expected = expected;
+                break;
+            case MODE_TRAILING_WHITESPACE:
+                this.expected = stripTrailingWhitespace(expected);
+                break;
+            case MODE_TOKEN:
+            case MODE_FLOAT:
+                this.expectedTokens = splitTokens(expected);
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的比较方式：" + mode);
+        }
+    }
+
+    /**
+     * 出现不一致时的回调，只会调用一次
+     */
+    public void setOnMismatch(Runnable onMismatch) {
+        this.onMismatch = onMismatch;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (mismatch) {
+            return;
+        }
+        switch (mode) {
+            case MODE_EXACT:
+                match((byte) b);
+                break;
+            case MODE_TRAILING_WHITESPACE:
+                writeLine((byte) b);
+                break;
+            default:
+                writeToken((byte) b);
+                break;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len && !mismatch; i++) {
+            write(b[i]);
+        }
+    }
+
+    /**
+     * 输出结束后做最后的比较
+     * @return 输出与期望是否一致
+     */
+    public synchronized boolean finish() {
+        if (!mismatch) {
+            if (mode == MODE_TOKEN || mode == MODE_FLOAT) {
+                endToken();
+                if (!mismatch && tokenIndex != expectedTokens.size()) {
+                    fail();
+                }
+            } else if (position != expected.length) {
+                // 输出比期望短，忽略行末空白时末尾未确认的空白直接丢弃
+                fail();
+            }
+        }
+        return !mismatch;
+    }
+
+    /**
+     * 是否已经出现不一致
+     */
+    public boolean isMismatch() {
+        return mismatch;
+    }
+
+    private void match(byte b) {
+        if (position >= expected.length || expected[position] != b) {
+            fail();
+            return;
+        }
+        position++;
+    }
+
+    private void writeLine(byte b) {
+        if (b == '\n') {
+            // 换行前的空白是行末空白，直接丢弃
+            linesMatch = linesMatch && expectedAt(position + pendingLines, b);
+            pendingLines++;
+            pendingSpaces = 0;
+            spacesMatch = linesMatch;
+            return;
+        }
+        if (isWhitespace(b)) {
+            spacesMatch = spacesMatch && expectedAt(position + pendingLines + pendingSpaces, b);
+            pendingSpaces++;
+            return;
+        }
+        // 遇到非空白字符，之前的换行与空白都不是行末空白，必须与期望一致
+        if (!spacesMatch) {
+            fail();
+            return;
+        }
+        position += pendingLines + pendingSpaces;
+        pendingLines = 0;
+        pendingSpaces = 0;
+        match(b);
+    }
+
+    private boolean expectedAt(int index, byte b) {
+        return index < expected.length && expected[index] == b;
+    }
+
+    private void writeToken(byte b) {
+        if (isWhitespace(b) || b == '\n') {
+            endToken();
+            return;
+        }
+        token.write(b);
+        if (tokenIndex >= expectedTokens.size()) {
+            fail();
+            return;
+        }
+        int maxLength = expectedTokens.get(tokenIndex).length;
+        if (mode == MODE_FLOAT) {
+            maxLength = Math.max(maxLength, MAX_NUMBER_LENGTH);
+        }
+        if (token.size() > maxLength) {
+            fail();
+        }
+    }
+
+    private void endToken() {
+        if (token.size() == 0) {
+            return;
+        }
+        byte[] actual = token.toByteArray();
+        token.reset();
+        if (tokenIndex >= expectedTokens.size() || !tokenEquals(expectedTokens.get(tokenIndex), actual)) {
+            fail();
+            return;
+        }
+        tokenIndex++;
+    }
+
+    private boolean tokenEquals(byte[] expectedToken, byte[] actual) {
+        if (Arrays.equals(expectedToken, actual)) {
+            return true;
+        }
+        if (mode != MODE_FLOAT) {
+            return false;
+        }
+        try {
+            double expectedValue = Double.parseDouble(new String(expectedToken, StandardCharsets.US_ASCII));
+            double actualValue = Double.parseDouble(new String(actual, StandardCharsets.US_ASCII));
+            double diff = Math.abs(expectedValue - actualValue);
+            return diff <= epsilon || diff <= epsilon * Math.abs(expectedValue);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void fail() {
+        mismatch = true;
+        if (onMismatch != null) {
+            onMismatch.run();
+        }
+    }
+
+    /**
+     * 去掉每行末尾的空白与末尾的空行，换行统一为\n
+     */
+    static byte[] stripTrailingWhitespace(byte[] bytes) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length);
+        int lineStart = 0;
+        int pendingLines = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i < bytes.length && bytes[i] != '\n') {
+                continue;
+            }
+            int lineEnd = i;
+            while (lineEnd > lineStart && isWhitespace(bytes[lineEnd - 1])) {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                for (; pendingLines > 0; pendingLines--) {
+                    outputStream.write('\n');
+                }
+                outputStream.write(bytes, lineStart, lineEnd - lineStart);
+            }
+            if (i < bytes.length) {
+                pendingLines++;
+            }
+            lineStart = i + 1;
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static List<byte[]> splitTokens(byte[] bytes) {
+        List<byte[]> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= bytes.length; i++) {
+            boolean separator = i == bytes.length || bytes[i] == '\n' || isWhitespace(bytes[i]);
+            if (separator && start >= 0) {
+                tokens.add(Arrays.copyOfRange(bytes, start, i));
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 除换行外的ASCII空白字符（\r视为空白，兼容Windows换行）
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+}
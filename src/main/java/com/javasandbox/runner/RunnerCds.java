@@ -0,0 +1,129 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.model.CompareModeEnum;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 运行器JVM的AppCDS归档
+ * 用训练程序跑一遍批量模式的运行器，记录加载的类，只保留JDK自身的类做静态归档：
+ * 归档不包含任何应用类路径，任意classpath（运行器目录、用户代码目录）都能使用，JDK挪到别的路径下也能使用；
+ * 宿主机与Docker镜像使用同一套训练文件和生成脚本，各自用自己的JVM生成
+ */
+public class RunnerCds {
+
+    // 归档文件名
+    public static final String ARCHIVE = "runner.jsa";
+
+    private static final String RUNNER = "runner";
+
+    private static final String TRAIN = "train";
+
+    private static final String REQUEST = "train.cases";
+
+    // 训练程序覆盖常见题目的输入解析、集合与格式化输出
+    private static final String TRAIN_CODE = "import java.io.*;\n"
+            + "import java.util.*;\n"
+            + "import java.util.stream.*;\n"
+            + "public class Main {\n"
+            + "    public static void main(String[] args) throws IOException {\n"
+            + "        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));\n"
+            + "        String line = reader.readLine();\n"
+            + "        Scanner scanner = new Scanner(line == null ? \"\" : line);\n"
+            + "        List<Long> numbers = new ArrayList<>();\n"
+            + "        while (scanner.hasNextLong()) {\n"
+            + "            numbers.add(scanner.nextLong());\n"
+            + "        }\n"
+            + "        Map<Long, Integer> counts = new HashMap<>();\n"
+            + "        numbers.forEach(x -> counts.merge(x, 1, Integer::sum));\n"
+            + "        long[] sorted = numbers.stream().mapToLong(Long::longValue).sorted().toArray();\n"
+            + "        StringBuilder builder = new StringBuilder();\n"
+            + "        builder.append(Arrays.stream(sorted).sum()).append(' ').append(counts.size());\n"
+            + "        System.out.println(builder);\n"
+            + "        System.out.println(String.format(\"%.2f\", Math.sqrt(sorted.length)));\n"
+            + "        System.out.println(Arrays.stream(args).collect(Collectors.joining(\",\")));\n"
+            + "    }\n"
+            + "}\n";
+
+    private RunnerCds() {
+    }
+
+    /**
+     * 准备训练文件：运行器字节码、训练程序字节码、批量请求
+     * @param hostDir 宿主机上的归档目录
+     * @param jvmDir 生成归档的JVM看到的同一目录
+     */
+    public static void prepare(String hostDir, String jvmDir) throws IOException {
+        RunnerPool.extractRunnerClasses(hostDir + File.separator + RUNNER);
+        // 按Java 8字节码编译，镜像中的低版本JDK也能运行
+        List<String> options = new ArrayList<>(InMemoryJavaCompiler.DEFAULT_OPTIONS);
+        options.addAll(Arrays.asList("--release", "8"));
+        CompileResult compileResult = new InMemoryJavaCompiler(options).compile(TRAIN_CODE);
+        if (!compileResult.isSuccess()) {
+            throw new IOException("训练程序编译失败：" + compileResult.getMessage());
+        }
+        compileResult.writeClassFiles(hostDir + File.separator + TRAIN);
+        // 两个用例：原样返回输出、比对期望输出，两条路径上的类都会被加载
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(hostDir + File.separator + REQUEST)))) {
+            String classDir = jvmDir + "/" + TRAIN;
+            CaseInput caseInput = CaseInput.ofStdin("3 1 2 3", Integer.MAX_VALUE, hostDir, jvmDir, 0);
+            RunnerProcess.writeRequest(out, classDir, caseInput, null, 5000L, 5000L);
+            CaseAnswer caseAnswer = new CaseAnswer();
+            caseAnswer.setCompareMode(CompareModeEnum.TRAILING_WHITESPACE.getValue());
+            caseAnswer.setEpsilon(1e-6);
+            caseAnswer.setExpected("9 3\n2.00\n\n".getBytes(StandardCharsets.UTF_8));
+            RunnerProcess.writeRequest(out, classDir, caseInput, caseAnswer, 5000L, 5000L);
+        }
+    }
+
+    /**
+     * 生成归档的shell脚本：训练运行记录类列表，过滤出JDK的类，再静态归档
+     * @param java java命令
+     * @param jvmDir JVM看到的归档目录
+     * @param jvmOptions 与运行时一致的JVM参数（-Xshare相关参数会被去掉）
+     */
+    public static String dumpScript(String java, String jvmDir, List<String> jvmOptions) {
+        StringBuilder options = new StringBuilder();
+        for (String option : jvmOptions) {
+            if (!option.startsWith("-Xshare") && !option.startsWith("-XX:SharedArchiveFile")) {
+                options.append(' ').append(quote(option));
+            }
+        }
+        String dir = quote(jvmDir);
+        return "set -e\n"
+                + "rm -f " + dir + "/" + ARCHIVE + "\n"
+                + quote(java) + options + " -XX:DumpLoadedClassList=" + dir + "/runner.classlist"
+                + " -cp " + dir + "/" + RUNNER + " " + RunnerMain.class.getName() + " " + dir + "/" + REQUEST
+                + " > /dev/null\n"
+                + "grep -E '^(java|javax|jdk|sun|com/sun)/' " + dir + "/runner.classlist > " + dir + "/jdk.classlist\n"
+                + quote(java) + options + " -Xshare:dump -XX:SharedClassListFile=" + dir + "/jdk.classlist"
+                + " -XX:SharedArchiveFile=" + dir + "/" + ARCHIVE + " > /dev/null\n";
+    }
+
+    /**
+     * 使用归档的JVM参数
+     * @param archive JVM看到的归档文件路径
+     */
+    public static List<String> archiveOptions(String archive) {
+        return Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:auto");
+    }
+
+    /**
+     * 按shell单引号规则转义
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+}
@@ -0,0 +1,586 @@
+package com.javasandbox.runner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilePermission;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ReflectPermission;
+import java.net.SocketPermission;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.AccessControlException;
+import java.security.AccessController;
+import java.security.CodeSource;
+import java.security.Permission;
+import java.security.Policy;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻运行器JVM入口，由RunnerPool启动，每个用例在一次性的类加载器中执行用户Main
+ * 注意：本类会被单独解压到运行器目录中启动，只能依赖JDK自身的类
+ *
+ * 两种模式：
+ * 常驻模式（无参数）：请求从stdin读取，用于原生沙箱的运行器池
+ * 批量模式（参数为请求文件路径）：一次读取全部用例请求依次执行，用于Docker沙箱单次exec跑完所有用例；
+ * 用例都来自同一份提交，通过的用例创建过线程时继续执行后续用例，只在超时、违规等失败后退出
+ *
+ * 控制协议（DataInput/DataOutput格式），响应统一写到stdout：
+ * 启动完成：READY(int)
+ * 请求：classDir(UTF) 墙钟时间限制毫秒(long) CPU时间限制毫秒(long) 参数个数(int) 参数(UTF...)
+ *      标准输入(int长度+字节，长度为-1时后跟输入文件路径(UTF)，由运行器直接打开文件作为标准输入)
+ *      比较方式(int，-1表示不比对) [误差(double) 期望输出(int长度+字节，长度为-1时后跟期望输出文件路径(UTF))]
+ * 响应：status(int) exitCode(int) wallNanos(long) cpuNanos(long) peakMemory字节(long) tainted(boolean)
+ *      标准输出(int长度+字节，比对期望输出时为空) 错误输出(int长度+字节)
+ */
+@SuppressWarnings("removal")
+public class RunnerMain {
+
+    public static final int READY = 0x52454459;
+
+    public static final int STATUS_OK = 0;
+
+    public static final int STATUS_RUNTIME_ERROR = 1;
+
+    public static final int STATUS_SECURITY = 2;
+
+    public static final int STATUS_MEMORY = 3;
+
+    public static final int STATUS_TIMEOUT = 4;
+
+    public static final int STATUS_OUTPUT = 5;
+
+    public static final int STATUS_WRONG_ANSWER = 6;
+
+    // 请求中标准输入长度为该值时，后跟输入文件路径
+    public static final int STDIN_FILE = -1;
+
+    // 请求中比较方式为该值时不比对输出，原样返回标准输出
+    public static final int NO_CHECK = -1;
+
+    // 请求中期望输出长度为该值时，后跟期望输出文件路径
+    public static final int EXPECTED_FILE = -1;
+
+    // 用户字节码写入运行目录下的该子目录，运行目录中的输入、期望输出与请求文件不在classpath中，用户代码也读不到
+    public static final String CLASS_DIR = "classes";
+
+    // 等待用例期间检查CPU时间的间隔（毫秒）
+    private static final long CPU_CHECK_INTERVAL = 10L;
+
+    // 单个用例的输出上限，超出后立即结束用例，超出部分丢弃
+    private static final int MAX_OUTPUT = Integer.getInteger("runner.maxOutput", 8 * 1024 * 1024);
+
+    private static final RunnerSecurityManager SECURITY_MANAGER = new RunnerSecurityManager();
+
+    public static void main(String[] args) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                args.length > 0 ? new FileInputStream(args[0]) : new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // 除读取请求、执行用例的控制线程外，其余线程（含JVM的Finalizer等）都按用户代码检查
+        SECURITY_MANAGER.controlThread = Thread.currentThread();
+        try {
+            // 安装前设置策略：运行器自身的代码与JDK可信，用户代码不授予额外权限
+            Policy.setPolicy(new RunnerPolicy(Policy.getPolicy()));
+            System.setSecurityManager(SECURITY_MANAGER);
+        } catch (UnsupportedOperationException | SecurityException e) {
+            System.err.println("SecurityManager不可用：" + e.getMessage());
+            if (args.length == 0) {
+                // 常驻模式没有外层隔离，拒绝启动，由宿主退化为单独启动JVM
+                System.exit(1);
+            }
+            // 批量模式运行在容器或命名空间中（如镜像JDK未允许SecurityManager），依赖外层隔离继续运行
+        }
+        out.writeInt(READY);
+        out.flush();
+        while (true) {
+            String classDir;
+            try {
+                classDir = in.readUTF();
+            } catch (EOFException e) {
+                // 宿主关闭了控制流或批量请求已读完
+                return;
+            }
+            long timeLimit = in.readLong();
+            long cpuLimit = in.readLong();
+            String[] mainArgs = new String[in.readInt()];
+            for (int i = 0; i < mainArgs.length; i++) {
+                mainArgs[i] = in.readUTF();
+            }
+            int stdinLength = in.readInt();
+            InputStream stdin;
+            if (stdinLength == STDIN_FILE) {
+                stdin = new BufferedInputStream(new FileInputStream(in.readUTF()));
+            } else {
+                byte[] stdinBytes = new byte[stdinLength];
+                in.readFully(stdinBytes);
+                stdin = new ByteArrayInputStream(stdinBytes);
+            }
+            OutputChecker checker = null;
+            int compareMode = in.readInt();
+            if (compareMode != NO_CHECK) {
+                double epsilon = in.readDouble();
+                int expectedLength = in.readInt();
+                byte[] expected;
+                if (expectedLength == EXPECTED_FILE) {
+                    expected = Files.readAllBytes(Paths.get(in.readUTF()));
+                } else {
+                    expected = new byte[expectedLength];
+                    in.readFully(expected);
+                }
+                checker = new OutputChecker(expected, compareMode, epsilon);
+            }
+            boolean recycle;
+            try {
+                recycle = runCase(classDir, timeLimit, cpuLimit, mainArgs, stdin, checker, out, args.length > 0);
+            } finally {
+                stdin.close();
+            }
+            if (recycle) {
+                // 运行器已被污染，退出后由宿主重新拉起；批量模式下剩余用例不再执行
+                Runtime.getRuntime().halt(0);
+            }
+        }
+    }
+
+    /**
+     * 执行一个用例并写出响应
+     * @param batch 是否为批量模式
+     * @return 运行器是否需要退出
+     */
+    private static boolean runCase(String classDir, long timeLimit, long cpuLimit, String[] mainArgs, InputStream stdin,
+                                   OutputChecker checker, DataOutputStream out, boolean batch)
+            throws IOException, InterruptedException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        // 用户代码执行结束、输出超限或输出与期望不一致时放行
+        CountDownLatch finished = new CountDownLatch(1);
+        LimitedOutputStream stdout = new LimitedOutputStream(MAX_OUTPUT, finished, checker);
+        LimitedOutputStream stderr = new LimitedOutputStream(MAX_OUTPUT, finished, null);
+        InputStream originIn = System.in;
+        PrintStream originOut = System.out;
+        PrintStream originErr = System.err;
+        PrintStream userErr = newPrintStream(stderr);
+        ThreadGroup userGroup = new ThreadGroup("user");
+        Set<Thread> threadsBefore = liveThreads();
+        SECURITY_MANAGER.threadCreated = false;
+        Throwable[] failure = new Throwable[1];
+        long[] cpuNanos = new long[1];
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        boolean timeout;
+        boolean outputExceeded;
+        boolean mismatch;
+        long wallNanos;
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{new File(classDir).toURI().toURL()},
+                ClassLoader.getPlatformClassLoader())) {
+            System.setIn(stdin);
+            System.setOut(newPrintStream(stdout));
+            System.setErr(userErr);
+            Thread userThread = new Thread(userGroup, () -> {
+                try {
+                    Class<?> mainClass = Class.forName("Main", true, classLoader);
+                    Method mainMethod = mainClass.getMethod("main", String[].class);
+                    mainMethod.invoke(null, (Object) mainArgs);
+                } catch (InvocationTargetException e) {
+                    failure[0] = e.getCause();
+                } catch (Throwable e) {
+                    failure[0] = e;
+                } finally {
+                    cpuNanos[0] = Math.max(cpuNanos[0], threadBean.getCurrentThreadCpuTime());
+                    System.out.flush();
+                    finished.countDown();
+                }
+            }, "main");
+            // 不继承控制线程的应用类加载器
+            userThread.setContextClassLoader(classLoader);
+            SECURITY_MANAGER.userGroup = userGroup;
+            SECURITY_MANAGER.classDir = new File(classDir).getAbsolutePath();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeLimit);
+            long cpuLimitNanos = TimeUnit.MILLISECONDS.toNanos(cpuLimit);
+            userThread.start();
+            // CPU时间与墙钟时间分别限制：墙钟时间只兜底等待阻塞（如sleep、等待输入）的程序
+            timeout = false;
+            while (!finished.await(CPU_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                long groupCpuNanos = userCpuNanos(userGroup, threadBean);
+                cpuNanos[0] = Math.max(cpuNanos[0], groupCpuNanos);
+                if (System.nanoTime() >= deadline || (cpuLimit > 0 && groupCpuNanos > cpuLimitNanos)) {
+                    timeout = true;
+                    break;
+                }
+            }
+            wallNanos = System.nanoTime() - start;
+            outputExceeded = stdout.exceeded || stderr.exceeded;
+            // 输出已与期望不一致，不再等待用户代码
+            mismatch = checker != null && checker.isMismatch();
+            if (!timeout && !outputExceeded && !mismatch) {
+                // 用户代码已执行完，等待线程退出
+                userThread.join();
+            }
+            cpuNanos[0] = Math.max(cpuNanos[0], userCpuNanos(userGroup, threadBean));
+        } finally {
+            System.setIn(originIn);
+            System.setOut(originOut);
+            System.setErr(originErr);
+        }
+        long peakMemory = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakMemory += pool.getPeakUsage().getUsed();
+            }
+        }
+        // 判定结果
+        int status = STATUS_OK;
+        int exitCode = 0;
+        Throwable cause = failure[0];
+        if (timeout) {
+            status = STATUS_TIMEOUT;
+            exitCode = -1;
+        } else if (outputExceeded) {
+            status = STATUS_OUTPUT;
+            exitCode = -1;
+        } else if (mismatch) {
+            status = STATUS_WRONG_ANSWER;
+            exitCode = -1;
+        } else if (cause instanceof ExitTrappedException) {
+            exitCode = ((ExitTrappedException) cause).status;
+            status = exitCode == 0 ? STATUS_OK : STATUS_RUNTIME_ERROR;
+        } else if (cause != null) {
+            exitCode = 1;
+            if (cause instanceof OutOfMemoryError) {
+                status = STATUS_MEMORY;
+            } else if (cause instanceof SecurityException) {
+                status = STATUS_SECURITY;
+            } else {
+                status = STATUS_RUNTIME_ERROR;
+            }
+            userErr.print("Exception in thread \"main\" ");
+            cause.printStackTrace(userErr);
+            userErr.flush();
+        }
+        if (status == STATUS_OK && checker != null && !checker.finish()) {
+            status = STATUS_WRONG_ANSWER;
+        }
+        // 超时、违规、创建过线程或遗留线程都会污染运行器，退出后由宿主重新拉起，线程不会带到下一个用例
+        boolean failed = status == STATUS_TIMEOUT || status == STATUS_OUTPUT || status == STATUS_MEMORY
+                || status == STATUS_SECURITY;
+        boolean tainted = failed || SECURITY_MANAGER.threadCreated || userGroup.activeCount() > 0
+                || hasNewThreads(threadsBefore);
+        SECURITY_MANAGER.userGroup = null;
+        out.writeInt(status);
+        out.writeInt(exitCode);
+        out.writeLong(wallNanos);
+        out.writeLong(cpuNanos[0]);
+        out.writeLong(peakMemory);
+        out.writeBoolean(tainted);
+        stdout.writeTo(out);
+        stderr.writeTo(out);
+        out.flush();
+        // 批量模式下后续用例属于同一份提交，通过的用例留下的线程（如并行流的公共线程池）不影响判题
+        return batch ? failed : tainted;
+    }
+
+    /**
+     * 用户线程组中存活线程的CPU时间之和（纳秒）
+     */
+    private static long userCpuNanos(ThreadGroup userGroup, ThreadMXBean threadBean) {
+        Thread[] threads = new Thread[userGroup.activeCount() + 8];
+        int count = userGroup.enumerate(threads);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long cpu = threadBean.getThreadCpuTime(threads[i].getId());
+            if (cpu > 0) {
+                total += cpu;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 当前存活的全部线程
+     */
+    private static Set<Thread> liveThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() + 16];
+        int count = root.enumerate(threads, true);
+        Set<Thread> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < count; i++) {
+            result.add(threads[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 用例期间是否出现了新的非守护线程或JVM系统线程组以外的线程（JIT编译线程等由JVM按需增减，不算在内）
+     */
+    private static boolean hasNewThreads(Set<Thread> threadsBefore) {
+        ThreadGroup system = Thread.currentThread().getThreadGroup();
+        while (system.getParent() != null) {
+            system = system.getParent();
+        }
+        for (Thread thread : liveThreads()) {
+            if (!threadsBefore.contains(thread) && (!thread.isDaemon() || thread.getThreadGroup() != system)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PrintStream newPrintStream(OutputStream outputStream) throws UnsupportedEncodingException {
+        return new PrintStream(outputStream, true, "UTF-8");
+    }
+
+    /**
+     * 超出上限后丢弃写入并通知运行器结束用例的输出流
+     * 指定了比对器时输出直接交给比对器、不在内存中保留，不一致时同样通知运行器结束用例
+     */
+    private static class LimitedOutputStream extends ByteArrayOutputStream {
+
+        private final int limit;
+
+        private final CountDownLatch finished;
+
+        private final OutputChecker checker;
+
+        // 已写入的字节数，比对模式下不保留内容，只计数
+        private int written = 0;
+
+        private volatile boolean exceeded = false;
+
+        LimitedOutputStream(int limit, CountDownLatch finished, OutputChecker checker) {
+            this.limit = limit;
+            this.finished = finished;
+            this.checker = checker;
+            if (checker != null) {
+                checker.setOnMismatch(finished::countDown);
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (written < limit) {
+                append(new byte[]{(byte) b}, 0, 1);
+            } else {
+                exceed();
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (len > limit - written) {
+                append(b, off, limit - written);
+                exceed();
+                return;
+            }
+            append(b, off, len);
+        }
+
+        private void append(byte[] b, int off, int len) {
+            written += len;
+            if (checker != null) {
+                checker.write(b, off, len);
+            } else {
+                super.write(b, off, len);
+            }
+        }
+
+        private void exceed() {
+            exceeded = true;
+            finished.countDown();
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * 用户代码调用System.exit时抛出，由运行器转换为退出码
+     */
+    private static class ExitTrappedException extends SecurityException {
+
+        private final int status;
+
+        ExitTrappedException(int status) {
+            super("exit " + status);
+            this.status = status;
+        }
+    }
+
+    /**
+     * 在默认策略之外信任运行器自身的代码，使安全管理器在检查时只看调用栈上的JDK代码与用户代码
+     */
+    private static class RunnerPolicy extends Policy {
+
+        private final CodeSource runnerSource = RunnerMain.class.getProtectionDomain().getCodeSource();
+
+        private final Policy defaults;
+
+        RunnerPolicy(Policy defaults) {
+            this.defaults = defaults;
+        }
+
+        @Override
+        public boolean implies(ProtectionDomain domain, Permission permission) {
+            return (runnerSource != null && runnerSource.equals(domain.getCodeSource()))
+                    || defaults.implies(domain, permission);
+        }
+    }
+
+    /**
+     * 约束控制线程以外全部线程的安全管理器：禁止写文件、删除文件、执行命令、网络访问，读文件仅限字节码目录与JDK目录；
+     * 线程只能访问用例线程组内的线程，文件描述符、类加载器、绕过访问检查与修改线程组只允许JDK自身在特权代码块中使用
+     */
+    private static class RunnerSecurityManager extends SecurityManager {
+
+        // 只允许JDK自身的特权代码使用的权限
+        private static final Permission[] PRIVILEGED = {
+                new RuntimePermission("modifyThreadGroup"),
+                new RuntimePermission("readFileDescriptor"),
+                new RuntimePermission("writeFileDescriptor"),
+                new RuntimePermission("getClassLoader"),
+                new ReflectPermission("suppressAccessChecks")};
+
+        private static final RuntimePermission MODIFY_THREAD = new RuntimePermission("modifyThread");
+
+        private static final RuntimePermission MODIFY_THREAD_GROUP = new RuntimePermission("modifyThreadGroup");
+
+        private final String javaHome = System.getProperty("java.home");
+
+        private volatile Thread controlThread;
+
+        private volatile ThreadGroup userGroup;
+
+        private volatile String classDir;
+
+        // 用例期间控制线程以外的线程创建过线程
+        private volatile boolean threadCreated;
+
+        @Override
+        public void checkAccess(Thread t) {
+            if (!inUserCode()) {
+                return;
+            }
+            ThreadGroup group = userGroup;
+            ThreadGroup target = t.getThreadGroup();
+            if (group == null || target == null || !group.parentOf(target)) {
+                checkPrivileged(MODIFY_THREAD);
+            }
+        }
+
+        /**
+         * 创建线程时也会调用（由Thread构造时记为创建了线程），只允许在用例线程组内创建
+         */
+        @Override
+        public void checkAccess(ThreadGroup g) {
+            if (!inUserCode()) {
+                return;
+            }
+            if (StackWalker.getInstance().walk(frames -> frames.limit(8).anyMatch(frame ->
+                    frame.getClassName().equals(Thread.class.getName())
+                            && (frame.getMethodName().equals("<init>") || frame.getMethodName().equals("init"))))) {
+                threadCreated = true;
+            }
+            ThreadGroup group = userGroup;
+            if (group == null || !group.parentOf(g)) {
+                checkPrivileged(MODIFY_THREAD_GROUP);
+            }
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (inUserCode()) {
+                throw new ExitTrappedException(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            checkPermission(perm);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            if (!inUserCode()) {
+                return;
+            }
+            String name = perm.getName();
+            if (perm instanceof FilePermission) {
+                String actions = perm.getActions();
+                if (actions.contains("write") || actions.contains("delete") || actions.contains("execute")) {
+                    throw new SecurityException(actions + " 权限异常：" + name);
+                }
+                if (!isUnder(name, javaHome) && (classDir == null || !isUnder(name, classDir))) {
+                    throw new SecurityException("read 权限异常：" + name);
+                }
+            } else if (perm instanceof SocketPermission) {
+                throw new SecurityException("网络权限异常：" + name);
+            } else if (perm instanceof RuntimePermission && (name.equals("setSecurityManager")
+                    || name.equals("createSecurityManager") || name.equals("setIO")
+                    || name.startsWith("loadLibrary"))) {
+                throw new SecurityException(name + " 权限异常");
+            } else {
+                for (Permission privileged : PRIVILEGED) {
+                    if (privileged.equals(perm)) {
+                        checkPrivileged(perm);
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 调用栈上直到最近的特权代码块都是JDK自身的代码时放行，用户代码（含经反射、MethodHandle调用）不被授予这些权限
+         */
+        private static void checkPrivileged(Permission perm) {
+            try {
+                AccessController.checkPermission(perm);
+            } catch (AccessControlException e) {
+                throw new SecurityException(perm.getName() + " 权限异常");
+            }
+        }
+
+        /**
+         * 路径是否为目录本身或其下的文件，按完整的路径段比较（/app/run不包含/app/run.cases）
+         */
+        private static boolean isUnder(String name, String dir) {
+            return name.equals(dir) || name.startsWith(dir.endsWith(File.separator) ? dir : dir + File.separator);
+        }
+
+        private boolean inUserCode() {
+            return Thread.currentThread() != controlThread;
+        }
+    }
+
+}
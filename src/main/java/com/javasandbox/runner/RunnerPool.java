@@ -0,0 +1,243 @@
+package com.javasandbox.runner;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import com.javasandbox.cgroup.CgroupPool;
+import com.javasandbox.cgroup.RunGroup;
+import com.javasandbox.config.SandboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原生沙箱的常驻运行器池
+ * 预先启动若干锁定权限的运行器JVM，用例执行完归还；执行满maxRuns次或出现违规后销毁并补充新的运行器
+ */
+@Slf4j
+@Component
+public class RunnerPool {
+
+    // 运行器自身超出用例时间限制多久后强制杀死
+    private static final long KILL_GRACE = 2000L;
+
+    // 启动失败后首次重试的等待时间（毫秒），之后每次翻倍
+    private static final long RETRY_DELAY = 500L;
+
+    // 启动失败后重试的最长等待时间（毫秒）
+    private static final long MAX_RETRY_DELAY = 60000L;
+
+    // 运行器classpath中需要的字节码，只能依赖JDK自身的类
+    private static final String[] RUNNER_CLASSES = {"RunnerMain*.class", "OutputChecker*.class"};
+
+    private final SandboxProperties.RunnerPool config;
+
+    private final CgroupPool cgroupPool;
+
+    private final RunnerStartup runnerStartup;
+
+    // 单个用例的输出上限（字节）
+    private final int outputLimit;
+
+    private final LinkedBlockingQueue<RunnerProcess> idleRunners = new LinkedBlockingQueue<>();
+
+    // 负责启动/补充运行器
+    private final ExecutorService starter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "runner-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 运行器卡死时的兜底强杀，以及启动失败后的延迟重试
+    private final ScheduledExecutorService killer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "runner-killer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 运行器字节码解压到工作目录根目录下
+    private final String workspaceRoot;
+
+    private String runnerDir;
+
+    private volatile boolean closed = false;
+
+    public RunnerPool(SandboxProperties sandboxProperties, CgroupPool cgroupPool, RunnerStartup runnerStartup) {
+        this.config = sandboxProperties.getRunnerPool();
+        this.cgroupPool = cgroupPool;
+        this.runnerStartup = runnerStartup;
+        this.workspaceRoot = sandboxProperties.getWorkspace().resolveRoot();
+        this.outputLimit = sandboxProperties.getOutput().getLimit();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            runnerDir = workspaceRoot + File.separator + "runner";
+            extractRunnerClasses(runnerDir);
+        } catch (IOException e) {
+            log.error("解压运行器字节码失败，原生沙箱将退化为单独启动JVM", e);
+            config.setEnabled(false);
+            return;
+        }
+        for (int i = 0; i < config.getSize(); i++) {
+            starter.execute(() -> startRunner(0));
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 借用一个空闲运行器，等待超时返回null
+     */
+    public RunnerProcess borrow() {
+        try {
+            return idleRunners.poll(config.getBorrowTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 在运行器中执行一个用例，运行器超出墙钟时间限制仍未响应会被强制杀死
+     */
+    public RunnerResult run(RunnerProcess runner, String classDir, CaseInput caseInput, CaseAnswer caseAnswer,
+                            long timeLimit, long cpuLimit) throws IOException {
+        ScheduledFuture<?> kill = killer.schedule(runner::destroy, timeLimit + KILL_GRACE, TimeUnit.MILLISECONDS);
+        try {
+            return runner.run(classDir, caseInput, caseAnswer, timeLimit, cpuLimit);
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    /**
+     * 归还运行器，被污染或执行次数达到上限的运行器会被销毁并补充
+     */
+    public void release(RunnerProcess runner) {
+        if (closed) {
+            runner.destroy();
+            return;
+        }
+        if (runner.isTainted() || runner.getRuns() >= config.getMaxRuns()) {
+            runner.destroy();
+            starter.execute(() -> startRunner(0));
+            return;
+        }
+        idleRunners.offer(runner);
+    }
+
+    /**
+     * 启动一个运行器放入池中，失败后按次数退避重试，运行器数量不会因启动失败永久减少
+     * @param failures 此前连续失败的次数
+     */
+    private void startRunner(int failures) {
+        if (closed) {
+            return;
+        }
+        // 每个运行器放进独立的cgroup子组，限制整个JVM的内存、线程数与CPU
+        RunGroup runGroup = cgroupPool.acquire();
+        List<String> command = runGroup == null ? buildCommand() : runGroup.wrap(buildCommand());
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(new File(runnerDir))
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        RunnerProcess runner = null;
+        try {
+            runner = new RunnerProcess(processBuilder.start(), runGroup);
+            runner.awaitReady();
+            idleRunners.offer(runner);
+        } catch (IOException e) {
+            long delay = Math.min(RETRY_DELAY << Math.min(failures, 16), MAX_RETRY_DELAY);
+            log.error("启动运行器失败，{}ms后重试", delay, e);
+            if (runner != null) {
+                runner.destroy();
+            } else if (runGroup != null) {
+                runGroup.close();
+            }
+            retryStart(failures + 1, delay);
+        }
+    }
+
+    private void retryStart(int failures, long delay) {
+        try {
+            killer.schedule(() -> {
+                try {
+                    starter.execute(() -> startRunner(failures));
+                } catch (RejectedExecutionException e) {
+                    // 已关闭
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+        }
+    }
+
+    private List<String> buildCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Dfile.encoding=utf-8");
+        command.add("-Drunner.maxOutput=" + outputLimit);
+        command.addAll(config.getJvmOptions());
+        // 归档生成后补充启动的运行器使用归档
+        command.addAll(runnerStartup.getArchiveOptions());
+        // JDK18起默认禁止运行时安装SecurityManager，需要显式允许（JDK12起支持该取值）
+        if (Runtime.version().feature() >= 12) {
+            command.add("-Djava.security.manager=allow");
+        }
+        command.add("-cp");
+        command.add(runnerDir);
+        command.add(RunnerMain.class.getName());
+        return command;
+    }
+
+    /**
+     * 运行器只依赖JDK，把它的字节码（含输出比对器）单独解压出来作为运行器的classpath，兼容fat jar部署
+     * @param dir 作为classpath根目录的输出目录
+     */
+    public static void extractRunnerClasses(String dir) throws IOException {
+        String packagePath = RunnerMain.class.getPackage().getName().replace('.', '/');
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (String pattern : RUNNER_CLASSES) {
+            Resource[] resources = resolver.getResources("classpath*:" + packagePath + "/" + pattern);
+            for (Resource resource : resources) {
+                try (InputStream inputStream = resource.getInputStream()) {
+                    FileUtil.writeBytes(IoUtil.readBytes(inputStream),
+                            dir + File.separator + packagePath + File.separator + resource.getFilename());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        starter.shutdownNow();
+        killer.shutdownNow();
+        RunnerProcess runner;
+        while ((runner = idleRunners.poll()) != null) {
+            runner.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.cgroup.RunGroup;
+import com.javasandbox.docker.CgroupStats;
+import com.javasandbox.utils.CpuAffinityUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个已启动的常驻运行器JVM，同一时刻只允许一个线程使用
+ */
+public class RunnerProcess {
+
+    private final Process process;
+
+    // 运行器所在的cgroup子组，未启用cgroup时为null；子组随运行器常驻，统计按用例取差值
+    private final RunGroup runGroup;
+
+    // 最近一个用例期间的cgroup资源使用，未启用cgroup或统计失败时为null
+    private CgroupStats.Usage caseUsage;
+
+    private final DataOutputStream out;
+
+    private final DataInputStream in;
+
+    private int runs = 0;
+
+    private boolean tainted = false;
+
+    // 当前绑定的CPU核心，未绑定为null
+    private Integer core;
+
+    RunnerProcess(Process process, RunGroup runGroup) {
+        this.process = process;
+        this.runGroup = runGroup;
+        this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    /**
+     * 等待运行器完成启动
+     */
+    void awaitReady() throws IOException {
+        if (in.readInt() != RunnerMain.READY) {
+            throw new IOException("运行器握手失败");
+        }
+    }
+
+    /**
+     * 在运行器中执行一个用例
+     * @param classDir 用户字节码目录
+     * @param caseInput 用例输入
+     * @param caseAnswer 期望输出，为null时不比对
+     * @param timeLimit 墙钟时间限制（毫秒）
+     * @param cpuLimit CPU时间限制（毫秒）
+     */
+    public RunnerResult run(String classDir, CaseInput caseInput, CaseAnswer caseAnswer, long timeLimit,
+                            long cpuLimit) throws IOException {
+        runs++;
+        CgroupStats.Sample sample = startSample();
+        try {
+            writeRequest(out, classDir, caseInput, caseAnswer, timeLimit, cpuLimit);
+            out.flush();
+            RunnerResult runnerResult = readResult(in);
+            tainted = runnerResult.isTainted();
+            return runnerResult;
+        } catch (IOException e) {
+            // 运行器崩溃或被杀死
+            tainted = true;
+            throw e;
+        } finally {
+            finishSample(sample);
+        }
+    }
+
+    private CgroupStats.Sample startSample() {
+        caseUsage = null;
+        if (runGroup == null) {
+            return null;
+        }
+        try {
+            return runGroup.sample();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void finishSample(CgroupStats.Sample sample) {
+        if (sample == null) {
+            return;
+        }
+        try {
+            caseUsage = sample.finish();
+        } catch (IOException | RuntimeException e) {
+            // 统计失败不影响判题
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * 按RunnerMain协议写入一个用例请求
+     */
+    public static void writeRequest(DataOutputStream out, String classDir, CaseInput caseInput,
+                                    CaseAnswer caseAnswer, long timeLimit, long cpuLimit) throws IOException {
+        out.writeUTF(classDir);
+        out.writeLong(timeLimit);
+        out.writeLong(cpuLimit);
+        out.writeInt(caseInput.getArgs().size());
+        for (String arg : caseInput.getArgs()) {
+            out.writeUTF(arg);
+        }
+        if (caseInput.getStdinPath() != null) {
+            // 大输入由运行器直接从文件读取
+            out.writeInt(RunnerMain.STDIN_FILE);
+            out.writeUTF(caseInput.getStdinPath());
+        } else {
+            out.writeInt(caseInput.getStdin().length);
+            out.write(caseInput.getStdin());
+        }
+        if (caseAnswer == null) {
+            out.writeInt(RunnerMain.NO_CHECK);
+            return;
+        }
+        out.writeInt(caseAnswer.getCompareMode());
+        out.writeDouble(caseAnswer.getEpsilon());
+        if (caseAnswer.getExpectedPath() != null) {
+            out.writeInt(RunnerMain.EXPECTED_FILE);
+            out.writeUTF(caseAnswer.getExpectedPath());
+            return;
+        }
+        out.writeInt(caseAnswer.getExpected().length);
+        out.write(caseAnswer.getExpected());
+    }
+
+    /**
+     * 按RunnerMain协议读取一个用例响应
+     */
+    public static RunnerResult readResult(DataInputStream in) throws IOException {
+        RunnerResult runnerResult = new RunnerResult();
+        runnerResult.setStatus(in.readInt());
+        runnerResult.setExitCode(in.readInt());
+        runnerResult.setTime(TimeUnit.NANOSECONDS.toMillis(in.readLong()));
+        runnerResult.setCpuTime(TimeUnit.NANOSECONDS.toMillis(in.readLong()));
+        runnerResult.setMemory(in.readLong());
+        runnerResult.setTainted(in.readBoolean());
+        runnerResult.setStdio(readString(in));
+        runnerResult.setErrorStdio(readString(in));
+        return runnerResult;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把运行器绑定到指定核心，已绑定在该核心时跳过
+     */
+    public void pin(int core) {
+        if (this.core == null || this.core != core) {
+            this.core = CpuAffinityUtil.pin(process.pid(), core) ? core : null;
+        }
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public boolean isTainted() {
+        return tainted || !process.isAlive();
+    }
+
+    public long pid() {
+        return process.pid();
+    }
+
+    /**
+     * 最近一个用例期间运行器是否被cgroup内存上限触发的OOM Killer杀死，只比较该用例前后的oom_kill计数
+     */
+    public boolean isOomKilled() {
+        return caseUsage != null && caseUsage.isOomKilled();
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+        if (runGroup != null) {
+            // 子组删除前会杀死残留进程
+            process.onExit().thenRun(runGroup::close);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.model.SubmissionStateEnum;
+import lombok.Data;
+
+/**
+ * 运行器单个用例的执行结果
+ */
+@Data
+public class RunnerResult {
+
+    // 运行器状态，取值见RunnerMain.STATUS_*
+    private int status;
+    // 退出码
+    private int exitCode;
+    // 标准输出
+    private String stdio;
+    // 错误输出
+    private String errorStdio;
+    // 墙钟耗时（毫秒）
+    private long time;
+    // 用户线程CPU耗时（毫秒）
+    private long cpuTime;
+    // 堆内存峰值（字节）
+    private long memory;
+    // 运行器是否已被污染需要回收
+    private boolean tainted;
+
+    /**
+     * 转换为失败的提交状态，正常结束返回null
+     */
+    public SubmissionStateEnum toFailureState() {
+        switch (status) {
+            case RunnerMain.STATUS_TIMEOUT:
+                return SubmissionStateEnum.TIME_LIMIT_EXCEEDED;
+            case RunnerMain.STATUS_MEMORY:
+                return SubmissionStateEnum.MEMORY_LIMIT_EXCEEDED;
+            case RunnerMain.STATUS_OUTPUT:
+                return SubmissionStateEnum.OUTPUT_LIMIT_EXCEEDED;
+            case RunnerMain.STATUS_WRONG_ANSWER:
+                return SubmissionStateEnum.WRONG_ANSWER;
+            case RunnerMain.STATUS_SECURITY:
+            case RunnerMain.STATUS_RUNTIME_ERROR:
+                return SubmissionStateEnum.RUNTIME_ERROR;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 失败时返回给用户的信息
+     */
+    public String toFailureMessage() {
+        switch (status) {
+            case RunnerMain.STATUS_TIMEOUT:
+                return "超出最大时间限制";
+            case RunnerMain.STATUS_OUTPUT:
+                return "超出最大输出限制";
+            case RunnerMain.STATUS_WRONG_ANSWER:
+                return "答案错误";
+            case RunnerMain.STATUS_MEMORY:
+                // 被强制结束的进程没有错误输出
+                return errorStdio == null || errorStdio.isEmpty() ? "超出最大内存限制" : errorStdio;
+            default:
+                return errorStdio;
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.config.SandboxProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 冷启动JVM的启动优化：启动参数组合与宿主机JDK的AppCDS归档
+ * 启动后在后台生成归档，再分别用默认参数与优化参数启动运行器跑训练用例，记录启动耗时供核对时间限制
+ */
+@Slf4j
+@Component
+public class RunnerStartup {
+
+    // 单次启动等待的上限（毫秒）
+    private static final long LAUNCH_TIMEOUT = 30000L;
+
+    private final SandboxProperties.Startup config;
+
+    // 归档与训练文件目录
+    private final String cdsDir;
+
+    private final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    // 生成成功后的归档路径
+    private volatile String archive;
+
+    // 默认参数与优化参数下运行器跑完训练用例的耗时中位数（毫秒），未测量为-1
+    private final AtomicLong defaultStartup = new AtomicLong(-1);
+
+    private final AtomicLong tunedStartup = new AtomicLong(-1);
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "runner-startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RunnerStartup(SandboxProperties sandboxProperties, MeterRegistry meterRegistry) {
+        this.config = sandboxProperties.getStartup();
+        this.cdsDir = sandboxProperties.getWorkspace().resolveRoot() + File.separator + "cds";
+        Gauge.builder("sandbox.runner.startup", defaultStartup, AtomicLong::get)
+                .description("运行器JVM启动并跑完训练用例的耗时，-1表示未测量")
+                .baseUnit("milliseconds")
+                .tag("profile", "default")
+                .register(meterRegistry);
+        Gauge.builder("sandbox.runner.startup", tunedStartup, AtomicLong::get)
+                .description("运行器JVM启动并跑完训练用例的耗时，-1表示未测量")
+                .baseUnit("milliseconds")
+                .tag("profile", "tuned")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!config.isCdsEnabled() && config.getMeasureRuns() <= 0) {
+            return;
+        }
+        // 生成归档需要一两秒，不阻塞应用启动，生成前启动的JVM不使用归档
+        worker.execute(() -> {
+            try {
+                RunnerCds.prepare(cdsDir, cdsDir);
+            } catch (IOException e) {
+                log.warn("准备AppCDS训练文件失败：{}", e.getMessage());
+                return;
+            }
+            if (config.isCdsEnabled()) {
+                generate();
+            }
+            if (config.getMeasureRuns() > 0) {
+                measure();
+            }
+        });
+    }
+
+    private void generate() {
+        long start = System.nanoTime();
+        List<String> jvmOptions = new ArrayList<>(config.getJvmOptions());
+        jvmOptions.addAll(securityManagerOptions());
+        String path = cdsDir + File.separator + RunnerCds.ARCHIVE;
+        if (launch(Arrays.asList("/bin/sh", "-c", RunnerCds.dumpScript(java, cdsDir, jvmOptions)),
+                config.getDumpTimeout()) && new File(path).isFile()) {
+            archive = path;
+            log.info("已生成运行器AppCDS归档：{}，耗时{}ms", path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            log.warn("生成运行器AppCDS归档失败，冷启动JVM不使用归档");
+        }
+    }
+
+    /**
+     * 交替用两组参数启动运行器跑训练用例，取中位数
+     */
+    private void measure() {
+        List<String> defaultCommand = runnerCommand(Collections.emptyList());
+        List<String> tunedCommand = runnerCommand(getColdStartOptions());
+        long[] defaultTimes = new long[config.getMeasureRuns()];
+        long[] tunedTimes = new long[config.getMeasureRuns()];
+        for (int i = 0; i < config.getMeasureRuns(); i++) {
+            defaultTimes[i] = timeLaunch(defaultCommand);
+            tunedTimes[i] = timeLaunch(tunedCommand);
+            if (defaultTimes[i] < 0 || tunedTimes[i] < 0) {
+                log.warn("测量运行器启动耗时失败");
+                return;
+            }
+        }
+        defaultStartup.set(median(defaultTimes));
+        tunedStartup.set(median(tunedTimes));
+        log.info("运行器JVM启动耗时（含两个训练用例）：默认参数{}ms，启动参数{}{} {}ms", defaultStartup.get(),
+                config.getJvmOptions(), archive == null ? "" : "+AppCDS", tunedStartup.get());
+    }
+
+    private List<String> runnerCommand(List<String> jvmOptions) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmOptions);
+        command.addAll(securityManagerOptions());
+        command.addAll(Arrays.asList("-cp", cdsDir + File.separator + "runner", RunnerMain.class.getName(),
+                cdsDir + File.separator + "train.cases"));
+        return command;
+    }
+
+    private static List<String> securityManagerOptions() {
+        // JDK18起默认禁止运行时安装SecurityManager，需要显式允许（JDK12起支持该取值）
+        return Runtime.version().feature() >= 12
+                ? Collections.singletonList("-Djava.security.manager=allow") : Collections.emptyList();
+    }
+
+    private long timeLaunch(List<String> command) {
+        long start = System.nanoTime();
+        return launch(command, LAUNCH_TIMEOUT) ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : -1;
+    }
+
+    private static boolean launch(List<String> command, long timeout) {
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * 宿主机JVM使用归档的参数，归档未生成时为空
+     */
+    public List<String> getArchiveOptions() {
+        String current = archive;
+        return current == null ? Collections.emptyList() : RunnerCds.archiveOptions(current);
+    }
+
+    /**
+     * 冷启动运行用户代码的JVM参数：启动参数组合加归档
+     */
+    public List<String> getColdStartOptions() {
+        List<String> options = new ArrayList<>(config.getJvmOptions());
+        options.addAll(getArchiveOptions());
+        return options;
+    }
+
+    /**
+     * 冷启动JVM的启动参数组合，不含归档
+     */
+    public List<String> getJvmOptions() {
+        return config.getJvmOptions();
+    }
+
+    /**
+     * 归档所在目录，命名空间沙箱把它只读挂载进去
+     */
+    public String getCdsDir() {
+        return cdsDir;
+    }
+
+    public boolean isArchiveReady() {
+        return archive != null;
+    }
+
+    public long getDefaultStartup() {
+        return defaultStartup.get();
+    }
+
+    public long getTunedStartup() {
+        return tunedStartup.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        worker.shutdownNow();
+    }
+
+}
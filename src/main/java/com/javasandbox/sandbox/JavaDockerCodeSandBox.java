@@ -2,156 +2,483 @@ package com.javasandbox.sandbox;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.lang.UUID;
-import cn.hutool.core.util.ArrayUtil;
-import cn.hutool.dfa.WordTree;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.*;
 import com.github.dockerjava.api.model.*;
-import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.command.ExecStartResultCallback;
+import com.javasandbox.JavaSandboxApplication;
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.docker.CgroupStats;
+import com.javasandbox.docker.ContainerPool;
+import com.javasandbox.docker.PooledContainer;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.metrics.SandboxMetrics;
+import com.javasandbox.metrics.SandboxPhaseEnum;
 import com.javasandbox.model.CodeSandBoxDTO;
 import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.InputModeEnum;
 import com.javasandbox.model.JudgeInfo;
 import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.parallel.CaseScheduler;
+import com.javasandbox.pipeline.JudgePipeline;
+import com.javasandbox.pipeline.SandboxStages;
+import com.javasandbox.runner.CaseAnswer;
+import com.javasandbox.runner.CaseInput;
+import com.javasandbox.runner.OutputChecker;
+import com.javasandbox.runner.RunnerMain;
+import com.javasandbox.runner.RunnerProcess;
+import com.javasandbox.runner.RunnerResult;
 import com.javasandbox.service.CodeSandBox;
 import com.javasandbox.utils.CmdOutResult;
 import com.javasandbox.utils.ProcessUtil;
+import com.javasandbox.workspace.WorkspaceManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StopWatch;
 
+import javax.annotation.Resource;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Java原生代码沙箱
  */
+@Slf4j
 @Component
 public class JavaDockerCodeSandBox implements CodeSandBox {
 
-    private static final List<String> BLACK_LIST;
+    // 批量执行时除用例时间外额外等待的执行器启动时间
+    private static final long BATCH_GRACE = 10000L;
 
-    private static final long TIME_OUT = 5000L;
+    @Resource
+    private ContainerPool containerPool;
 
-    private static final long MEMORY_OUT = 100L*1024*1024;
+    @Resource
+    private SandboxProperties sandboxProperties;
 
+    @Resource
+    private SandboxMetrics sandboxMetrics;
 
+    @Resource
+    private WorkspaceManager workspaceManager;
 
-    static {
-        BLACK_LIST = Arrays.asList("File", "Write", "Read");
-    }
+    @Resource
+    private ResultCache resultCache;
+
+    @Resource
+    private CaseScheduler caseScheduler;
+
+    @Resource
+    private JudgePipeline judgePipeline;
+
+    private final DockerStages stages = new DockerStages();
 
     public static void main(String[] args) {
-        JavaDockerCodeSandBox javaNativeCodeSandBox = new JavaDockerCodeSandBox();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JavaSandboxApplication.class)
+                .web(WebApplicationType.NONE).run(args);
+        JavaDockerCodeSandBox javaNativeCodeSandBox = context.getBean(JavaDockerCodeSandBox.class);
         CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
         String code = FileUtil.readString("code/Main.java", StandardCharsets.UTF_8);
         codeSandBoxDTO.setCode(code);
         codeSandBoxDTO.setInput(Arrays.asList("1 2", "2 3"));
+        // 示例程序从命令行参数读取输入
+        codeSandBoxDTO.setInputMode(InputModeEnum.ARGS.getValue());
         codeSandBoxDTO.setLanguage(1);
         CodeSandBoxResult codeSandBoxResult = javaNativeCodeSandBox.runCode(codeSandBoxDTO);
         System.out.println(codeSandBoxResult.toString());
+        context.close();
     }
 
 
     @Override
     public CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO) {
-        String code = codeSandBoxDTO.getCode();
-        List<String> input = codeSandBoxDTO.getInput();
-        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
-        // 1.保存用户代码为Main.java
-        // 1.1判断temCode目录是否存在，不存在则创建
-        String root = System.getProperty("user.dir");
-        String path = root + File.separator + "temCode";
-        if (!FileUtil.exist(path)) {
-            FileUtil.mkdir(path);
-        }
-        // 1.2保存用户代码为Main.java--temCode/uuid/Main.java
-        String filePath = path + File.separator + UUID.randomUUID();
-        String codePath = filePath + File.separator + "Main.java";
-        File file = FileUtil.writeString(code, codePath, StandardCharsets.UTF_8);
-        // 2.编译代码
-        Runtime runtime = Runtime.getRuntime();
+        // 相同提交直接返回缓存结果，并发的相同提交只执行一次
+        return resultCache.runCode(SandboxMetrics.DOCKER, codeSandBoxDTO, this::runMeasured);
+    }
+
+    private CodeSandBoxResult runMeasured(CodeSandBoxDTO codeSandBoxDTO) {
+        PhaseRecorder recorder = sandboxMetrics.newRecorder(codeSandBoxDTO);
+        CodeSandBoxResult codeSandBoxResult = null;
+        try {
+            codeSandBoxResult = runCode(codeSandBoxDTO, recorder);
+            return codeSandBoxResult;
+        } finally {
+            sandboxMetrics.finish(SandboxMetrics.DOCKER, recorder, codeSandBoxResult);
+        }
+    }
+
+    private CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO, PhaseRecorder recorder) {
+        // 1.扫描与编译由流水线统一完成，之后的阶段由流水线分给各阶段的线程池执行
+        return judgePipeline.run(codeSandBoxDTO, recorder, stages);
+    }
+
+    /**
+     * 一次判题借出的容器
+     */
+    private static class ContainerLease {
+
+        // 本次运行的字节码目录名
+        private final String runId = UUID.randomUUID().toString();
+
+        private final CompileResult compileResult;
+
+        private final List<PooledContainer> containers;
+
+        // 各容器运行后是否仍然干净可复用
+        private final boolean[] clean;
+
+        ContainerLease(CompileResult compileResult, List<PooledContainer> containers) {
+            this.compileResult = compileResult;
+            this.containers = containers;
+            this.clean = new boolean[containers.size()];
+            Arrays.fill(clean, true);
+        }
+    }
+
+    /**
+     * Docker沙箱在流水线中的各阶段：借出容器，用例按区间分给各容器执行，汇总后归还容器
+     */
+    private class DockerStages implements SandboxStages<ContainerLease, List<CodeSandBoxResult>> {
+
+        @Override
+        public ContainerLease prepare(CodeSandBoxDTO codeSandBoxDTO, CompileResult compileResult,
+                                      PhaseRecorder recorder) {
+            // 2.从容器池借出已启动的容器（镜像检查与拉取由容器池负责），开启并行时再借出空闲容器分摊用例
+            List<PooledContainer> containers = new ArrayList<>();
+            containers.add(containerPool.checkout(recorder));
+            int parallelism = Math.min(codeSandBoxDTO.getInput().size(), caseScheduler.getMaxPerSubmission());
+            while (containers.size() < parallelism) {
+                PooledContainer extra = containerPool.tryCheckout(recorder);
+                if (extra == null) {
+                    break;
+                }
+                containers.add(extra);
+            }
+            return new ContainerLease(compileResult, containers);
+        }
+
+        @Override
+        public List<CodeSandBoxResult> execute(CodeSandBoxDTO codeSandBoxDTO, ContainerLease lease,
+                                               PhaseRecorder recorder) {
+            // 3.用例按连续区间分给各容器，各容器独占一个CPU核心同时执行
+            List<String> input = codeSandBoxDTO.getInput();
+            List<PooledContainer> containers = lease.containers;
+            int chunkSize = (input.size() + containers.size() - 1) / containers.size();
+            // 时间限制以请求为准
+            long cpuLimit = sandboxProperties.getTime().resolveCpuLimit(codeSandBoxDTO.getTimeLimit());
+            long wallLimit = sandboxProperties.getTime().resolveWallLimit(codeSandBoxDTO.getTimeLimit());
+            return caseScheduler.runCases(containers.size(), (index, core) -> {
+                PooledContainer container = containers.get(index);
+                int from = Math.min(index * chunkSize, input.size());
+                int to = Math.min((index + 1) * chunkSize, input.size());
+                if (core != null) {
+                    containerPool.pin(container, core);
+                }
+                CodeSandBoxResult chunkResult = new CodeSandBoxResult();
+                lease.clean[index] = runChunk(container, lease.runId, lease.compileResult, codeSandBoxDTO, from, to,
+                        cpuLimit, wallLimit, chunkResult, recorder);
+                return chunkResult;
+            }, chunkResult -> !Integer.valueOf(SubmissionStateEnum.ACCEPTED.getValue()).equals(chunkResult.getStatus()));
+        }
+
+        @Override
+        public CodeSandBoxResult judge(CodeSandBoxDTO codeSandBoxDTO, List<CodeSandBoxResult> chunkResults) {
+            // 4.按用例顺序汇总各容器的结果
+            CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+            mergeChunkResults(chunkResults, codeSandBoxResult);
+            return codeSandBoxResult;
+        }
+
+        @Override
+        public void cleanup(ContainerLease lease, PhaseRecorder recorder) {
+            // 5.归还容器；用户进程可能仍在容器内运行时销毁容器
+            long start = recorder.start();
+            for (int i = 0; i < lease.containers.size(); i++) {
+                containerPool.release(lease.containers.get(i), !lease.clean[i]);
+            }
+            recorder.stop(SandboxPhaseEnum.CLEANUP, start);
+        }
+    }
+
+    /**
+     * 在一个容器中执行一段连续的用例
+     * @param from 第一个用例的下标
+     * @param to 最后一个用例的下一个下标
+     * @return 容器是否仍然干净可复用
+     */
+    private boolean runChunk(PooledContainer container, String runId, CompileResult compileResult,
+                             CodeSandBoxDTO codeSandBoxDTO, int from, int to, long cpuLimit, long wallLimit,
+                             CodeSandBoxResult codeSandBoxResult, PhaseRecorder recorder) {
+        DockerClient dockerClient = containerPool.getDockerClient();
+        // 字节码写入容器挂载的工作目录--workDir/runId/classes
+        String filePath = container.hostRunDir(runId);
+        long start = recorder.start();
+        compileResult.writeClassFiles(container.hostClassDir(runId));
+        recorder.stop(SandboxPhaseEnum.WORKSPACE, start);
         try {
-            // 添加字典树解决文件漏洞
-            WordTree wordTree = new WordTree();
-            wordTree.addWords(BLACK_LIST);
-            String match = wordTree.match(code);
-            if (match != null) {
-                codeSandBoxResult.setMessage("代码中包含敏感词" + match);
-                codeSandBoxResult.setStatus(5);
-                return codeSandBoxResult;
-            }
-            Process process = runtime.exec("javac -encoding utf-8 " + file.getAbsolutePath());
-            // 等待代码执行结束
-            CmdOutResult cmdOutput = ProcessUtil.getCmdOutput(process);
-            Integer finished = cmdOutput.getFinished();
-            String stdio = cmdOutput.getStdio();
-            String errorStdio = cmdOutput.getErrorStdio();
-            // 判断编译错误
-            if (finished != 0) {
-                codeSandBoxResult.setMessage(stdio + errorStdio);
-                codeSandBoxResult.setStatus(SubmissionStateEnum.COMPILE_ERROR.getValue());
-                return codeSandBoxResult;
+            if (sandboxProperties.getDocker().isBatchExec()) {
+                return runBatchInContainer(dockerClient, container, runId, codeSandBoxDTO, from, to, cpuLimit,
+                        wallLimit, codeSandBoxResult, recorder);
+            }
+            return runInContainer(dockerClient, container, runId, codeSandBoxDTO, from, to, cpuLimit, wallLimit,
+                    codeSandBoxResult, recorder);
+        } finally {
+            // 本次字节码与输入文件交给后台删除
+            start = recorder.start();
+            workspaceManager.deleteAsync(new File(filePath), new File(container.hostRequestFile(runId)));
+            recorder.stop(SandboxPhaseEnum.CLEANUP, start);
+        }
+    }
+
+    /**
+     * 汇总各容器的结果：耗时与内存取全部已执行用例的最大值，状态取按用例顺序第一个失败的区间
+     */
+    private void mergeChunkResults(List<CodeSandBoxResult> chunkResults, CodeSandBoxResult codeSandBoxResult) {
+        List<String> output = new ArrayList<>();
+        long maxTime = 0L;
+        long maxCpuTime = 0L;
+        long maxMemory = 0L;
+        CodeSandBoxResult failure = null;
+        for (CodeSandBoxResult chunkResult : chunkResults) {
+            if (chunkResult == null) {
+                continue;
+            }
+            JudgeInfo judgeInfo = chunkResult.getJudgeInfo();
+            if (judgeInfo != null) {
+                maxTime = Math.max(judgeInfo.getTime(), maxTime);
+                maxMemory = Math.max(judgeInfo.getMemory(), maxMemory);
+                if (judgeInfo.getCpuTime() != null) {
+                    maxCpuTime = Math.max(judgeInfo.getCpuTime(), maxCpuTime);
+                }
+            }
+            if (failure != null) {
+                continue;
+            }
+            if (chunkResult.getOutput() != null) {
+                output.addAll(chunkResult.getOutput());
+            }
+            if (!Integer.valueOf(SubmissionStateEnum.ACCEPTED.getValue()).equals(chunkResult.getStatus())) {
+                failure = chunkResult;
+            }
+        }
+        codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory, maxTime, maxCpuTime));
+        codeSandBoxResult.setOutput(output);
+        if (failure != null) {
+            codeSandBoxResult.setMessage(failure.getMessage());
+            codeSandBoxResult.setStatus(failure.getStatus());
+            codeSandBoxResult.setFailedCase(failure.getFailedCase());
+            codeSandBoxResult.setIncomplete(failure.isIncomplete());
+            return;
+        }
+        codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+        codeSandBoxResult.setMessage("答案数量正常");
+    }
+
+    /**
+     * 单次exec在容器内的同一个JVM中跑完全部用例，执行器按RunnerMain协议逐个返回用例结果
+     * @return 容器是否仍然干净可复用
+     */
+    private boolean runBatchInContainer(DockerClient dockerClient, PooledContainer container, String runId,
+                                        CodeSandBoxDTO codeSandBoxDTO, int from, int to, long cpuLimit,
+                                        long wallLimit, CodeSandBoxResult codeSandBoxResult,
+                                        PhaseRecorder recorder) {
+        // 3.3全部用例请求写入挂载目录，大输入与大期望输出单独写成文件，执行器在容器内直接读取；
+        // 请求文件与期望输出在字节码目录之外，用户代码读不到
+        List<String> input = codeSandBoxDTO.getInput();
+        String classPath = container.containerClassDir(runId);
+        String runDir = container.containerRunDir(runId);
+        String hostDir = container.hostRunDir(runId);
+        int inlineLimit = sandboxProperties.getInput().getInlineLimit();
+        long start = recorder.start();
+        try (DataOutputStream requestOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(container.hostRequestFile(runId))))) {
+            for (int index = from; index < to; index++) {
+                CaseInput caseInput = CaseInput.of(input.get(index), codeSandBoxDTO.getInputMode(), inlineLimit,
+                        hostDir, runDir, index);
+                CaseAnswer caseAnswer = CaseAnswer.of(codeSandBoxDTO, index, sandboxProperties, hostDir, runDir);
+                RunnerProcess.writeRequest(requestOut, classPath, caseInput, caseAnswer, wallLimit, cpuLimit);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // 3.运行代码
-        // 3.1拉取jdk镜像
-        DockerClient dockerClient = DockerClientBuilder.getInstance().build();
-        List<Image> imageList = dockerClient.listImagesCmd().exec();
-        String image = "openjdk:11";
-        boolean pullJdk = false;
-        for (Image i : imageList) {
-            if (i.getRepoTags()[0].contains("jdk")) pullJdk = true;
-        }
-        // jdk镜像不存在，拉取镜像
-        if (!pullJdk) {
-            PullImageResultCallback pullImageResultCallback = new PullImageResultCallback() {
-                @Override
-                public void onNext(PullResponseItem item) {
-                    super.onNext(item);
-                }
-            };
-            dockerClient.pullImageCmd(image).exec(pullImageResultCallback);
-        }
-        // 3.2创建交互式容器运行代码
-        CreateContainerCmd containerCmd = dockerClient.createContainerCmd(image);
-        // 设置文件挂载目录
-        HostConfig hostConfig = new HostConfig();
-        hostConfig.setBinds(new Bind(filePath, new Volume("/app")));
-        CreateContainerResponse containerResponse = containerCmd
-                .withHostConfig(hostConfig)
+        recorder.stop(SandboxPhaseEnum.WORKSPACE, start);
+        // 3.4 docker exec containerId java -cp /app/runner RunnerMain /app/runId.cases
+        start = recorder.start();
+        // 启动参数组合与镜像JDK的AppCDS归档，缩短每次exec的JVM启动
+        List<String> runnerCmd = new ArrayList<>(Arrays.asList("java", "-Dfile.encoding=utf-8"));
+        runnerCmd.addAll(containerPool.getJvmOptions());
+        runnerCmd.addAll(Arrays.asList("-Drunner.maxOutput=" + sandboxProperties.getOutput().getLimit(),
+                "-cp", container.containerRunnerDir(),
+                RunnerMain.class.getName(), container.containerRequestFile(runId)));
+        ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(container.getId())
+                .withCmd(runnerCmd.toArray(new String[0]))
                 .withAttachStderr(true)
-                .withAttachStdin(true)
                 .withAttachStdout(true)
-                .withTty(true)
                 .exec();
-        String containerId = containerResponse.getId();
+        ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+        StringBuilder errorStdio = new StringBuilder();
+        ExecStartResultCallback execStartResultCallback = new ExecStartResultCallback() {
+            @Override
+            public void onNext(Frame frame) {
+                if (frame.getStreamType().equals(StreamType.STDOUT)) {
+                    // 用例结果帧
+                    resultBytes.write(frame.getPayload(), 0, frame.getPayload().length);
+                } else if (frame.getStreamType().equals(StreamType.STDERR)) {
+                    // 执行器自身的错误信息
+                    errorStdio.append(new String(frame.getPayload(), StandardCharsets.UTF_8));
+                }
+                super.onNext(frame);
+            }
+        };
+        // 执行器自行统计各用例的CPU与内存，容器cgroup只用于识别执行器被OOM Killer杀死
+        CgroupStats.Sample cgroupSample = startCgroupSample(container);
+        boolean completed;
+        boolean oomKilled = false;
+        try {
+            // 执行器对每个用例自行限时，这里只兜底等待
+            completed = dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                    .exec(execStartResultCallback)
+                    .awaitCompletion(wallLimit * (to - from) + BATCH_GRACE, TimeUnit.MILLISECONDS);
+            if (cgroupSample != null) {
+                oomKilled = cgroupSample.finish().isOomKilled();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            log.warn("读取容器cgroup失败：{}", e.getMessage());
+            completed = true;
+        } finally {
+            if (cgroupSample != null) {
+                cgroupSample.close();
+            }
+            recorder.stop(SandboxPhaseEnum.EXEC, start);
+        }
+        if (!completed) {
+            codeSandBoxResult.setJudgeInfo(new JudgeInfo(0L, wallLimit + 1));
+            codeSandBoxResult.setMessage("超出最大时间限制");
+            codeSandBoxResult.setStatus(SubmissionStateEnum.TIME_LIMIT_EXCEEDED.getValue());
+            return false;
+        }
+        // 4.逐个解析用例结果，在沙箱内比对时不返回输出
+        DataInputStream resultIn = new DataInputStream(new ByteArrayInputStream(resultBytes.toByteArray()));
+        boolean checked = CaseAnswer.isPresent(codeSandBoxDTO);
+        List<String> output = new ArrayList<>();
+        long maxTime = 0L;
+        long maxCpuTime = 0L;
+        long maxMemory = 0L;
+        try {
+            if (resultIn.readInt() != RunnerMain.READY) {
+                throw new IOException("执行器握手失败");
+            }
+            for (int index = from; index < to; index++) {
+                RunnerResult runnerResult = RunnerProcess.readResult(resultIn);
+                maxTime = Math.max(runnerResult.getTime(), maxTime);
+                maxCpuTime = Math.max(runnerResult.getCpuTime(), maxCpuTime);
+                maxMemory = Math.max(runnerResult.getMemory(), maxMemory);
+                codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+                SubmissionStateEnum failureState = runnerResult.toFailureState();
+                if (failureState != null) {
+                    codeSandBoxResult.setMessage(runnerResult.toFailureMessage());
+                    codeSandBoxResult.setStatus(failureState.getValue());
+                    codeSandBoxResult.setFailedCase(index);
+                    return true;
+                }
+                if (!checked) {
+                    output.add(runnerResult.getStdio().replace("\r", "").replace("\n", ""));
+                }
+            }
+        } catch (IOException e) {
+            // 响应不完整：执行器启动失败或被杀死，cgroup记录到OOM或退出码137为容器内存超限被OOM Killer杀死
+            SubmissionStateEnum state = SubmissionStateEnum.RUNTIME_ERROR;
+            if (oomKilled || Long.valueOf(137L).equals(
+                    dockerClient.inspectExecCmd(execCreateCmdResponse.getId()).exec().getExitCodeLong())) {
+                state = SubmissionStateEnum.MEMORY_LIMIT_EXCEEDED;
+            }
+            codeSandBoxResult.setMessage(errorStdio.toString());
+            codeSandBoxResult.setStatus(state.getValue());
+            codeSandBoxResult.setIncomplete(true);
+            return true;
+        }
+        codeSandBoxResult.setOutput(output);
+        codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+        codeSandBoxResult.setMessage("答案数量正常");
+        return true;
+    }
+
+    /**
+     * 在容器中逐个执行用例
+     * @return 容器是否仍然干净可复用，超时的用户进程可能仍在容器内运行
+     */
+    private boolean runInContainer(DockerClient dockerClient, PooledContainer container, String runId,
+                                   CodeSandBoxDTO codeSandBoxDTO, int from, int to, long cpuLimit, long wallLimit,
+                                   CodeSandBoxResult codeSandBoxResult, PhaseRecorder recorder) {
+        List<String> input = codeSandBoxDTO.getInput();
+        String containerId = container.getId();
+        // 容器内的字节码目录
+        String classPath = container.containerClassDir(runId);
+        int inlineLimit = sandboxProperties.getInput().getInlineLimit();
         // 3.3容器运行字节码文件
-        dockerClient.startContainerCmd(containerId).exec();
         CmdOutResult cmdOutResult = new CmdOutResult();
         List<String> output = new ArrayList<>();
         StopWatch stopWatch = new StopWatch();
         Long maxTime = 0L;
         final Long[] maxMemory = {0L};
-        for (String i : input) {
-            // docker exec containerId java -cp /app Main 1 2
-            String[] args = i.split(" ");
-            String[] cmd = ArrayUtil.append(new String[]{"java", "-cp", "/app", "Main"}, args);
+        long maxCpuTime = 0L;
+        int outputLimit = sandboxProperties.getOutput().getLimit();
+        Charset charset = Charset.forName(sandboxProperties.getOutput().getCharset());
+        boolean outputExceeded = false;
+        boolean checked = CaseAnswer.isPresent(codeSandBoxDTO);
+        // 第一个输出与期望不一致的用例，以及不一致时用户进程是否被提前放弃
+        Integer wrongCase = null;
+        boolean abandoned = false;
+        // 用户进程被容器内存上限触发的OOM Killer杀死
+        boolean oomKilled = false;
+        for (int index = from; index < to; index++) {
+            long start = recorder.start();
+            CaseInput caseInput = CaseInput.of(input.get(index), codeSandBoxDTO.getInputMode(), inlineLimit,
+                    container.hostRunDir(runId), container.containerRunDir(runId), index);
+            // 容器内的用户进程没有安全管理器，期望输出只留在宿主机上比对，不写入挂载目录
+            CaseAnswer caseAnswer = CaseAnswer.forHost(codeSandBoxDTO, index, sandboxProperties);
+            recorder.stop(SandboxPhaseEnum.WORKSPACE, start);
+            OutputChecker checker = caseAnswer == null ? null : caseAnswer.newChecker();
+            // docker exec -i containerId java -cp /app/runId Main
+            List<String> cmd = new ArrayList<>(Arrays.asList("java"));
+            cmd.addAll(containerPool.getJvmOptions());
+            cmd.addAll(Arrays.asList("-cp", classPath, "Main"));
+            cmd.addAll(caseInput.getArgs());
             // 创建命令
+            start = recorder.start();
             ExecCreateCmdResponse execCreateCmdResponse = dockerClient.execCreateCmd(containerId)
-                    .withCmd(cmd)
+                    .withCmd(cmd.toArray(new String[0]))
                     .withAttachStderr(true)
                     .withAttachStdin(true)
                     .withAttachStdout(true)
                     .exec();
-            // 统计使用内存最大值
+            recorder.stop(SandboxPhaseEnum.EXEC, start);
+            // 统计使用内存最大值，以及容器cgroup的CPU时间（首末两次采样之差，纳秒）
+            final long[] cpuUsage = {-1L, 0L};
             ResultCallback<Statistics> statsResultCallback = new ResultCallback<Statistics>() {
                 @Override
                 public void onStart(Closeable closeable) {
@@ -163,6 +490,15 @@ public class JavaDockerCodeSandBox implements CodeSandBox {
                     MemoryStatsConfig memoryStats = statistics.getMemoryStats();
                     Long maxUsage = memoryStats.getUsage();
                     maxMemory[0] = Math.max(maxUsage, maxMemory[0]);
+                    CpuStatsConfig cpuStats = statistics.getCpuStats();
+                    if (cpuStats != null && cpuStats.getCpuUsage() != null
+                            && cpuStats.getCpuUsage().getTotalUsage() != null) {
+                        long totalUsage = cpuStats.getCpuUsage().getTotalUsage();
+                        if (cpuUsage[0] < 0) {
+                            cpuUsage[0] = totalUsage;
+                        }
+                        cpuUsage[1] = totalUsage;
+                    }
                 }
 
                 @Override
@@ -177,17 +513,49 @@ public class JavaDockerCodeSandBox implements CodeSandBox {
 
                 @Override
                 public void close() throws IOException {
-                    System.out.println("内存统计结束");
+                    log.debug("内存统计结束");
                 }
             };
-            StatsCmd statsCmd = dockerClient.statsCmd(containerId);
-            statsCmd.exec(statsResultCallback);
-            // 执行命令运行用户字节码文件
+            // 优先在用例边界直接读取容器cgroup，找不到cgroup v2目录时退回守护进程的stats推送
+            start = recorder.start();
+            CgroupStats.Sample cgroupSample = startCgroupSample(container);
+            StatsCmd statsCmd = null;
+            if (cgroupSample == null) {
+                statsCmd = dockerClient.statsCmd(containerId);
+                statsCmd.exec(statsResultCallback);
+            }
+            recorder.stop(SandboxPhaseEnum.STATS, start);
+            // 执行命令运行用户字节码文件，输出超出上限后停止接收
+            AtomicLong outputBytes = new AtomicLong();
+            AtomicBoolean exceeded = new AtomicBoolean();
             ExecStartResultCallback execStartResultCallback = new ExecStartResultCallback() {
                 @Override
                 public void onNext(Frame frame) {
+                    if (checker != null && frame.getStreamType().equals(StreamType.STDOUT)) {
+                        // 标准输出边接收边比对，不一致时停止接收
+                        outputBytes.addAndGet(frame.getPayload().length);
+                        checker.write(frame.getPayload(), 0, frame.getPayload().length);
+                        if (checker.isMismatch() || outputBytes.get() > outputLimit) {
+                            exceeded.set(!checker.isMismatch());
+                            try {
+                                close();
+                            } catch (IOException e) {
+                                onError(e);
+                            }
+                        }
+                        return;
+                    }
+                    if (outputBytes.addAndGet(frame.getPayload().length) > outputLimit) {
+                        exceeded.set(true);
+                        try {
+                            close();
+                        } catch (IOException e) {
+                            onError(e);
+                        }
+                        return;
+                    }
                     StreamType streamType = frame.getStreamType();
-                    String payLoad = new String(frame.getPayload()).replace("\n","");
+                    String payLoad = new String(frame.getPayload(), charset).replace("\n","");
                     if (streamType.equals(StreamType.STDERR)) {
                         // 错误信息
                         cmdOutResult.setErrorStdio(payLoad);
@@ -200,44 +568,130 @@ public class JavaDockerCodeSandBox implements CodeSandBox {
                     super.onNext(frame);
                 }
             };
-            try {
+            boolean completed;
+            // 标准输入以流的形式送入exec，大输入直接从文件读取
+            try (InputStream stdin = openStdin(caseInput)) {
                 stopWatch.start();
-                dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                start = recorder.start();
+                completed = dockerClient.execStartCmd(execCreateCmdResponse.getId())
+                        .withStdIn(stdin)
                         .exec(execStartResultCallback)
-                        .awaitCompletion();
-                statsCmd.close();
-            } catch (InterruptedException e) {
-                System.out.println("执行失败");
+                        .awaitCompletion(wallLimit, TimeUnit.MILLISECONDS);
+                recorder.stop(SandboxPhaseEnum.EXEC, start);
+                start = recorder.start();
+                if (cgroupSample != null) {
+                    try (CgroupStats.Sample sample = cgroupSample) {
+                        CgroupStats.Usage usage = sample.finish();
+                        maxMemory[0] = Math.max(usage.getMemory(), maxMemory[0]);
+                        cpuUsage[0] = 0L;
+                        cpuUsage[1] = TimeUnit.MILLISECONDS.toNanos(usage.getCpuTime());
+                        oomKilled = usage.isOomKilled();
+                    } catch (IOException e) {
+                        log.warn("读取容器cgroup失败：{}", e.getMessage());
+                    }
+                } else {
+                    statsCmd.close();
+                }
+                recorder.stop(SandboxPhaseEnum.STATS, start);
+            } catch (InterruptedException | IOException e) {
+                log.warn("容器内执行失败：{}", e.getMessage());
                 throw new RuntimeException(e);
             }
             // 计算执行花费的最长时间
             stopWatch.stop();
             maxTime = Math.max(stopWatch.getLastTaskTimeMillis(), maxTime);
+            if (cpuUsage[0] >= 0) {
+                maxCpuTime = Math.max(TimeUnit.NANOSECONDS.toMillis(cpuUsage[1] - cpuUsage[0]), maxCpuTime);
+            }
+            if (!completed) {
+                // 超时不再等待后续用例
+                maxTime = Math.max(wallLimit + 1, maxTime);
+                break;
+            }
+            if (oomKilled) {
+                break;
+            }
+            if (maxCpuTime > cpuLimit) {
+                break;
+            }
+            if (exceeded.get()) {
+                outputExceeded = true;
+                break;
+            }
+            // 运行错误优先于答案错误
+            if (checker != null && cmdOutResult.getErrorStdio() == null) {
+                abandoned = checker.isMismatch();
+                if (abandoned || !checker.finish()) {
+                    wrongCase = index;
+                    break;
+                }
+            }
         }
         // 整理返回结果
-        JudgeInfo judgeInfo = new JudgeInfo(maxMemory[0]/1024,maxTime);
+        JudgeInfo judgeInfo = new JudgeInfo(maxMemory[0]/1024, maxTime, maxCpuTime);
         codeSandBoxResult.setJudgeInfo(judgeInfo);
         codeSandBoxResult.setOutput(output);
-        if (maxTime>TIME_OUT){
+        if (maxTime > wallLimit || maxCpuTime > cpuLimit) {
             codeSandBoxResult.setMessage("超出最大时间限制");
             codeSandBoxResult.setStatus(SubmissionStateEnum.TIME_LIMIT_EXCEEDED.getValue());
-            return codeSandBoxResult;
+            return false;
+        }
+        if (oomKilled) {
+            codeSandBoxResult.setMessage("超出最大内存限制");
+            codeSandBoxResult.setStatus(SubmissionStateEnum.MEMORY_LIMIT_EXCEEDED.getValue());
+            return true;
+        }
+        if (outputExceeded) {
+            // 用户进程可能仍在容器内运行
+            codeSandBoxResult.setMessage("超出最大输出限制");
+            codeSandBoxResult.setStatus(SubmissionStateEnum.OUTPUT_LIMIT_EXCEEDED.getValue());
+            return false;
         }
         if (cmdOutResult.getErrorStdio() != null) {
             codeSandBoxResult.setMessage(cmdOutResult.getErrorStdio());
             codeSandBoxResult.setStatus(SubmissionStateEnum.RUNTIME_ERROR.getValue());
-            return codeSandBoxResult;
+            return true;
         }
-        if (!(output.size() == input.size())) {
+        if (wrongCase != null) {
             codeSandBoxResult.setMessage("答案错误");
             codeSandBoxResult.setStatus(SubmissionStateEnum.WRONG_ANSWER.getValue());
-            return codeSandBoxResult;
+            codeSandBoxResult.setFailedCase(wrongCase);
+            // 提前停止接收输出时用户进程可能仍在容器内运行
+            return !abandoned;
+        }
+        if (!checked && output.size() != to - from) {
+            codeSandBoxResult.setMessage("答案错误");
+            codeSandBoxResult.setStatus(SubmissionStateEnum.WRONG_ANSWER.getValue());
+            return true;
         }
         codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
         codeSandBoxResult.setMessage("答案数量正常");
-        // 5.删除临时文件，返回结果
-        FileUtil.del(filePath);
-        return codeSandBoxResult;
+        return true;
+    }
+
+    /**
+     * 开始一个cgroup统计区间，容器没有可用的cgroup v2目录或读取失败时返回null
+     */
+    private CgroupStats.Sample startCgroupSample(PooledContainer container) {
+        if (container.getCgroupStats() == null) {
+            return null;
+        }
+        try {
+            return container.getCgroupStats().start();
+        } catch (IOException e) {
+            log.warn("读取容器cgroup失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 打开用例的标准输入流
+     */
+    private InputStream openStdin(CaseInput caseInput) throws IOException {
+        if (caseInput.getStdinFile() != null) {
+            return new FileInputStream(caseInput.getStdinFile());
+        }
+        return new ByteArrayInputStream(caseInput.getStdin());
     }
 
 }
@@ -0,0 +1,326 @@
+package com.javasandbox.sandbox;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.JavaSandboxApplication;
+import com.javasandbox.cgroup.CgroupPool;
+import com.javasandbox.cgroup.RunGroup;
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.metrics.SandboxMetrics;
+import com.javasandbox.metrics.SandboxPhaseEnum;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.InputModeEnum;
+import com.javasandbox.model.JudgeInfo;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.namespace.NamespaceLauncher;
+import com.javasandbox.pipeline.JudgePipeline;
+import com.javasandbox.pipeline.SandboxStages;
+import com.javasandbox.runner.CaseAnswer;
+import com.javasandbox.runner.CaseInput;
+import com.javasandbox.runner.RunnerMain;
+import com.javasandbox.runner.RunnerProcess;
+import com.javasandbox.runner.RunnerResult;
+import com.javasandbox.service.CodeSandBox;
+import com.javasandbox.utils.ProcessTimeoutUtil;
+import com.javasandbox.workspace.Workspace;
+import com.javasandbox.workspace.WorkspaceManager;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java命名空间代码沙箱
+ * 每次判题在新的用户/挂载/PID/网络命名空间中启动一个批量模式的运行器跑完全部用例，
+ * 隔离程度接近容器，但不需要Docker守护进程，启动只比直接启动JVM多几毫秒
+ */
+@Component
+public class JavaNamespaceCodeSandBox implements CodeSandBox {
+
+    // 运行器启动与各用例之外额外等待的时间（毫秒）
+    private static final long BATCH_GRACE = 5000L;
+
+    // 沙箱内的用例请求文件
+    private static final String REQUEST_FILE = "cases.bin";
+
+    // 读取运行器错误输出的上限（字节）
+    private static final int ERROR_LIMIT = 64 * 1024;
+
+    @Resource
+    private NamespaceLauncher namespaceLauncher;
+
+    @Resource
+    private SandboxProperties sandboxProperties;
+
+    @Resource
+    private SandboxMetrics sandboxMetrics;
+
+    @Resource
+    private WorkspaceManager workspaceManager;
+
+    @Resource
+    private ResultCache resultCache;
+
+    @Resource
+    private CgroupPool cgroupPool;
+
+    @Resource
+    private JudgePipeline judgePipeline;
+
+    private final NamespaceStages stages = new NamespaceStages();
+
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JavaSandboxApplication.class)
+                .web(WebApplicationType.NONE).run(args);
+        JavaNamespaceCodeSandBox javaNamespaceCodeSandBox = context.getBean(JavaNamespaceCodeSandBox.class);
+        CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
+        String code = FileUtil.readString("code/Main.java", StandardCharsets.UTF_8);
+        codeSandBoxDTO.setCode(code);
+        codeSandBoxDTO.setInput(Arrays.asList("1 2", "2 3"));
+        // 示例程序从命令行参数读取输入
+        codeSandBoxDTO.setInputMode(InputModeEnum.ARGS.getValue());
+        codeSandBoxDTO.setLanguage(1);
+        CodeSandBoxResult codeSandBoxResult = javaNamespaceCodeSandBox.runCode(codeSandBoxDTO);
+        System.out.println(codeSandBoxResult.toString());
+        context.close();
+    }
+
+    public boolean isAvailable() {
+        return namespaceLauncher.isAvailable();
+    }
+
+    @Override
+    public CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO) {
+        // 相同提交直接返回缓存结果，并发的相同提交只执行一次
+        return resultCache.runCode(SandboxMetrics.NAMESPACE, codeSandBoxDTO, this::runMeasured);
+    }
+
+    private CodeSandBoxResult runMeasured(CodeSandBoxDTO codeSandBoxDTO) {
+        PhaseRecorder recorder = sandboxMetrics.newRecorder(codeSandBoxDTO);
+        CodeSandBoxResult codeSandBoxResult = null;
+        try {
+            codeSandBoxResult = runCode(codeSandBoxDTO, recorder);
+            return codeSandBoxResult;
+        } finally {
+            sandboxMetrics.finish(SandboxMetrics.NAMESPACE, recorder, codeSandBoxResult);
+        }
+    }
+
+    private CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO, PhaseRecorder recorder) {
+        if (!namespaceLauncher.isAvailable()) {
+            throw new IllegalStateException("命名空间沙箱不可用");
+        }
+        // 1.扫描与编译由流水线统一完成，之后的阶段由流水线分给各阶段的线程池执行
+        return judgePipeline.run(codeSandBoxDTO, recorder, stages);
+    }
+
+    /**
+     * 一次判题独占的工作目录与cgroup子组
+     */
+    private static class NamespaceRun {
+
+        private final Workspace workspace;
+
+        // cgroup不可用时为null
+        private final RunGroup runGroup;
+
+        NamespaceRun(Workspace workspace, RunGroup runGroup) {
+            this.workspace = workspace;
+            this.runGroup = runGroup;
+        }
+    }
+
+    /**
+     * 命名空间沙箱在流水线中的各阶段：运行器边执行边返回用例结果，执行阶段直接得出判题结果
+     */
+    private class NamespaceStages implements SandboxStages<NamespaceRun, CodeSandBoxResult> {
+
+        @Override
+        public NamespaceRun prepare(CodeSandBoxDTO codeSandBoxDTO, CompileResult compileResult,
+                                    PhaseRecorder recorder) {
+            // 2.字节码与用例请求写入独占的工作目录，整个命名空间放进只用一次的cgroup子组，运行结束后归还
+            long start = recorder.start();
+            NamespaceRun run = new NamespaceRun(workspaceManager.acquire(), cgroupPool.acquire());
+            try {
+                writeCases(run.workspace, compileResult, codeSandBoxDTO);
+            } catch (RuntimeException e) {
+                cleanup(run, PhaseRecorder.DISABLED);
+                throw e;
+            }
+            recorder.stop(SandboxPhaseEnum.WORKSPACE, start);
+            return run;
+        }
+
+        @Override
+        public CodeSandBoxResult execute(CodeSandBoxDTO codeSandBoxDTO, NamespaceRun run, PhaseRecorder recorder) {
+            return runCases(run.workspace, run.runGroup, codeSandBoxDTO, recorder);
+        }
+
+        @Override
+        public CodeSandBoxResult judge(CodeSandBoxDTO codeSandBoxDTO, CodeSandBoxResult codeSandBoxResult) {
+            return codeSandBoxResult;
+        }
+
+        @Override
+        public void cleanup(NamespaceRun run, PhaseRecorder recorder) {
+            long start = recorder.start();
+            run.workspace.close();
+            if (run.runGroup != null) {
+                run.runGroup.close();
+            }
+            recorder.stop(SandboxPhaseEnum.CLEANUP, start);
+        }
+    }
+
+    /**
+     * 写入字节码与全部用例请求，大输入与大期望输出单独写成文件，运行器在沙箱内直接读取；
+     * 字节码在运行目录的子目录中，请求文件与期望输出不在classpath中
+     */
+    private void writeCases(Workspace workspace, CompileResult compileResult, CodeSandBoxDTO codeSandBoxDTO) {
+        List<String> input = codeSandBoxDTO.getInput();
+        File appDir = new File(workspace.getDir(), "app");
+        new File(workspace.getDir(), "root").mkdirs();
+        String hostDir = appDir.getAbsolutePath();
+        String classDir = NamespaceLauncher.APP_DIR + "/" + RunnerMain.CLASS_DIR;
+        compileResult.writeClassFiles(hostDir + File.separator + RunnerMain.CLASS_DIR);
+        // 时间限制以请求为准
+        long cpuLimit = sandboxProperties.getTime().resolveCpuLimit(codeSandBoxDTO.getTimeLimit());
+        long wallLimit = sandboxProperties.getTime().resolveWallLimit(codeSandBoxDTO.getTimeLimit());
+        int inlineLimit = sandboxProperties.getInput().getInlineLimit();
+        try (DataOutputStream requestOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(appDir, REQUEST_FILE))))) {
+            for (int index = 0; index < input.size(); index++) {
+                CaseInput caseInput = CaseInput.of(input.get(index), codeSandBoxDTO.getInputMode(), inlineLimit,
+                        hostDir, NamespaceLauncher.APP_DIR, index);
+                CaseAnswer caseAnswer = CaseAnswer.of(codeSandBoxDTO, index, sandboxProperties, hostDir,
+                        NamespaceLauncher.APP_DIR);
+                RunnerProcess.writeRequest(requestOut, classDir, caseInput, caseAnswer, wallLimit, cpuLimit);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 在命名空间中启动一个运行器依次执行全部用例
+     */
+    private CodeSandBoxResult runCases(Workspace workspace, RunGroup runGroup, CodeSandBoxDTO codeSandBoxDTO,
+                                       PhaseRecorder recorder) {
+        List<String> input = codeSandBoxDTO.getInput();
+        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+        long cpuLimit = sandboxProperties.getTime().resolveCpuLimit(codeSandBoxDTO.getTimeLimit());
+        long wallLimit = sandboxProperties.getTime().resolveWallLimit(codeSandBoxDTO.getTimeLimit());
+        // 3.启动运行器，运行器对每个用例自行限时，这里只兜底整个进程
+        long start = recorder.start();
+        File errorFile = new File(workspace.getDir(), "stderr.txt");
+        Process process;
+        try {
+            process = namespaceLauncher.start(workspace.getDir(), NamespaceLauncher.APP_DIR + "/" + REQUEST_FILE,
+                    cpuLimit * input.size() + BATCH_GRACE, errorFile, runGroup);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        ProcessTimeoutUtil.Deadline deadline = ProcessTimeoutUtil.watch(process,
+                wallLimit * input.size() + BATCH_GRACE);
+        // 4.逐个读取用例结果，在沙箱内比对时不返回输出
+        boolean checked = CaseAnswer.isPresent(codeSandBoxDTO);
+        List<String> output = new ArrayList<>();
+        long maxTime = 0L;
+        long maxCpuTime = 0L;
+        long maxMemory = 0L;
+        try (DataInputStream resultIn = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+            if (resultIn.readInt() != RunnerMain.READY) {
+                throw new IOException("运行器握手失败");
+            }
+            for (int index = 0; index < input.size(); index++) {
+                RunnerResult runnerResult = RunnerProcess.readResult(resultIn);
+                maxTime = Math.max(runnerResult.getTime(), maxTime);
+                maxCpuTime = Math.max(runnerResult.getCpuTime(), maxCpuTime);
+                maxMemory = Math.max(runnerResult.getMemory(), maxMemory);
+                codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+                SubmissionStateEnum failureState = runnerResult.toFailureState();
+                if (failureState != null) {
+                    codeSandBoxResult.setMessage(runnerResult.toFailureMessage());
+                    codeSandBoxResult.setStatus(failureState.getValue());
+                    codeSandBoxResult.setFailedCase(index);
+                    return codeSandBoxResult;
+                }
+                if (!checked) {
+                    // 与逐行读取输出拼接的结果保持一致
+                    output.add(runnerResult.getStdio().replace("\r", "").replace("\n", ""));
+                }
+            }
+        } catch (IOException e) {
+            // 响应不完整：运行器被cgroup内存上限杀死、被兜底超时结束，或命名空间初始化/运行器启动失败
+            waitExit(process);
+            if (isOomKilled(runGroup)) {
+                codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+                codeSandBoxResult.setMessage("超出最大内存限制");
+                codeSandBoxResult.setStatus(SubmissionStateEnum.MEMORY_LIMIT_EXCEEDED.getValue());
+                return codeSandBoxResult;
+            }
+            if (deadline.isTimedOut()) {
+                codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, wallLimit + 1, maxCpuTime));
+                codeSandBoxResult.setMessage("超出最大时间限制");
+                codeSandBoxResult.setStatus(SubmissionStateEnum.TIME_LIMIT_EXCEEDED.getValue());
+                return codeSandBoxResult;
+            }
+            codeSandBoxResult.setMessage(readError(errorFile));
+            codeSandBoxResult.setStatus(SubmissionStateEnum.RUNTIME_ERROR.getValue());
+            codeSandBoxResult.setIncomplete(true);
+            return codeSandBoxResult;
+        } finally {
+            // 提前失败时剩余用例不再执行，结束整个命名空间
+            process.destroyForcibly();
+            deadline.cancel();
+            recorder.stop(SandboxPhaseEnum.EXEC, start);
+        }
+        codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+        codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+        codeSandBoxResult.setOutput(output);
+        return codeSandBoxResult;
+    }
+
+    private static boolean isOomKilled(RunGroup runGroup) {
+        if (runGroup == null) {
+            return false;
+        }
+        try {
+            return runGroup.usage().isOomKilled();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void waitExit(Process process) {
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readError(File errorFile) {
+        if (!errorFile.isFile()) {
+            return "";
+        }
+        byte[] bytes = FileUtil.readBytes(errorFile);
+        return new String(bytes, 0, Math.min(bytes.length, ERROR_LIMIT), StandardCharsets.UTF_8);
+    }
+
+}
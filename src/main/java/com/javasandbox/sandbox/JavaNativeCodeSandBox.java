@@ -1,20 +1,50 @@
 package com.javasandbox.sandbox;
 
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.lang.UUID;
-import cn.hutool.dfa.WordTree;
+import com.javasandbox.JavaSandboxApplication;
+import com.javasandbox.cgroup.CgroupPool;
+import com.javasandbox.cgroup.RunGroup;
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.docker.CgroupStats;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.metrics.SandboxMetrics;
+import com.javasandbox.metrics.SandboxPhaseEnum;
 import com.javasandbox.model.CodeSandBoxDTO;
 import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.InputModeEnum;
 import com.javasandbox.model.JudgeInfo;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.parallel.CaseScheduler;
+import com.javasandbox.pipeline.JudgePipeline;
+import com.javasandbox.pipeline.SandboxStages;
+import com.javasandbox.runner.CaseAnswer;
+import com.javasandbox.runner.CaseInput;
+import com.javasandbox.runner.OutputChecker;
+import com.javasandbox.runner.RunnerMain;
+import com.javasandbox.runner.RunnerPool;
+import com.javasandbox.runner.RunnerProcess;
+import com.javasandbox.runner.RunnerResult;
+import com.javasandbox.runner.RunnerStartup;
 import com.javasandbox.security.SandboxSecurity;
 import com.javasandbox.service.CodeSandBox;
 import com.javasandbox.utils.CmdOutResult;
-import com.javasandbox.utils.ProcessMemoryUtil;
+import com.javasandbox.utils.CpuAffinityUtil;
+import com.javasandbox.utils.ProcessSampler;
+import com.javasandbox.utils.ProcessTimeoutUtil;
 import com.javasandbox.utils.ProcessUtil;
+import com.javasandbox.workspace.Workspace;
+import com.javasandbox.workspace.WorkspaceManager;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
 import org.springframework.util.StopWatch;
 
+import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -23,16 +53,45 @@ import java.util.List;
 /**
  * Java原生代码沙箱
  */
+@Component
 public class JavaNativeCodeSandBox implements CodeSandBox {
 
-    private static final List<String> BLACK_LIST;
+    // 当前JDK的java命令
+    private static final String JAVA = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
 
-    static {
-        BLACK_LIST = Arrays.asList("File","Write","Read");
-    }
+    @Resource
+    private RunnerPool runnerPool;
+
+    @Resource
+    private CaseScheduler caseScheduler;
+
+    @Resource
+    private SandboxProperties sandboxProperties;
+
+    @Resource
+    private SandboxMetrics sandboxMetrics;
+
+    @Resource
+    private WorkspaceManager workspaceManager;
+
+    @Resource
+    private ResultCache resultCache;
+
+    @Resource
+    private CgroupPool cgroupPool;
+
+    @Resource
+    private RunnerStartup runnerStartup;
+
+    @Resource
+    private JudgePipeline judgePipeline;
+
+    private final NativeStages stages = new NativeStages();
 
     public static void main(String[] args) {
-        JavaNativeCodeSandBox javaNativeCodeSandBox = new JavaNativeCodeSandBox();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JavaSandboxApplication.class)
+                .web(WebApplicationType.NONE).run(args);
+        JavaNativeCodeSandBox javaNativeCodeSandBox = context.getBean(JavaNativeCodeSandBox.class);
         CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
         String code = FileUtil.readString("code/Main.java", StandardCharsets.UTF_8);
 //        code = FileUtil.readString("code/TimeError.java", StandardCharsets.UTF_8);
@@ -42,122 +101,253 @@ public class JavaNativeCodeSandBox implements CodeSandBox {
 //        code = FileUtil.readString("code/RunCodeError.java", StandardCharsets.UTF_8);
         codeSandBoxDTO.setCode(code);
         codeSandBoxDTO.setInput(Arrays.asList("1 2", "2 3"));
+        // 示例程序从命令行参数读取输入
+        codeSandBoxDTO.setInputMode(InputModeEnum.ARGS.getValue());
         codeSandBoxDTO.setLanguage(1);
         CodeSandBoxResult codeSandBoxResult = javaNativeCodeSandBox.runCode(codeSandBoxDTO);
         System.out.println(codeSandBoxResult.toString());
+        context.close();
     }
 
 
     @Override
     public CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO) {
-        String code = codeSandBoxDTO.getCode();
-        List<String> input = codeSandBoxDTO.getInput();
-        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
-        // 1.读取保存用户代码为Main.java
-        // 1.1判断temCode目录是否存在，不存在则创建
-        String root = System.getProperty("user.dir");
-        String path = root + File.separator + "temCode";
-        if (!FileUtil.exist(path)){
-            FileUtil.mkdir(path);
-        }
-        // 1.2保存用户代码为Main.java--temCode/uuid/Main.java
-        String filePath =  path + File.separator + UUID.randomUUID();
-        String codePath = filePath + File.separator + "Main.java";
-        File file = FileUtil.writeString(code, codePath, StandardCharsets.UTF_8);
-        // 2.编译代码
-        Runtime runtime = Runtime.getRuntime();
+        // 相同提交直接返回缓存结果，并发的相同提交只执行一次
+        return resultCache.runCode(SandboxMetrics.NATIVE, codeSandBoxDTO, this::runMeasured);
+    }
+
+    private CodeSandBoxResult runMeasured(CodeSandBoxDTO codeSandBoxDTO) {
+        PhaseRecorder recorder = sandboxMetrics.newRecorder(codeSandBoxDTO);
+        CodeSandBoxResult codeSandBoxResult = null;
         try {
-            // 添加字典树解决文件漏洞
-            WordTree wordTree = new WordTree();
-            wordTree.addWords(BLACK_LIST);
-            String match = wordTree.match(code);
-            if (match!=null){
-                codeSandBoxResult.setMessage("代码中包含敏感词"+ match);
-                codeSandBoxResult.setStatus(5);
-                return codeSandBoxResult;
-            }
-            Process process = runtime.exec("javac -encoding utf-8 " + file.getAbsolutePath());
-            // 等待代码执行结束
-            CmdOutResult cmdOutput = ProcessUtil.getCmdOutput(process);
-            Integer finished = cmdOutput.getFinished();
-            String stdio = cmdOutput.getStdio();
-            String errorStdio = cmdOutput.getErrorStdio();
-            // 判断编译错误
-            if (finished!=0){
-                codeSandBoxResult.setMessage(stdio+errorStdio);
-                codeSandBoxResult.setStatus(5);
-                return codeSandBoxResult;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            codeSandBoxResult = runCode(codeSandBoxDTO, recorder);
+            return codeSandBoxResult;
+        } finally {
+            sandboxMetrics.finish(SandboxMetrics.NATIVE, recorder, codeSandBoxResult);
         }
-        // 3.运行代码
-        // 拼接命令行指令
-        List<String> output = new ArrayList<>();
-        Long maxTime = 0L;
-        for (String s : input) {
+    }
+
+    private CodeSandBoxResult runCode(CodeSandBoxDTO codeSandBoxDTO, PhaseRecorder recorder) {
+        // 1.扫描与编译由流水线统一完成，2.之后的阶段由流水线分给各阶段的线程池执行
+        return judgePipeline.run(codeSandBoxDTO, recorder, stages);
+    }
+
+    /**
+     * 原生沙箱在流水线中的各阶段：独占的工作目录中逐个（或并行）执行用例
+     */
+    private class NativeStages implements SandboxStages<Workspace, List<RunnerResult>> {
+
+        @Override
+        public Workspace prepare(CodeSandBoxDTO codeSandBoxDTO, CompileResult compileResult, PhaseRecorder recorder) {
+            // 2.运行阶段需要class文件，写入独占工作目录下的字节码目录，输入与期望输出文件在其外
+            long start = recorder.start();
+            Workspace workspace = workspaceManager.acquire();
             try {
-                // Process process = runtime.exec("java -Dfile.encoding=utf-8 -cp " + filePath + " Main " + s);
-                // 添加内存限制解决内存漏洞
-                 Process process = runtime.exec("java -Dfile.encoding=utf-8 -Xmx56m -cp " + filePath + " Main " + s);
-                // 使用自定义Java安全管理器设置文件权限
-//                File securityDir = new File("D:\\Java\\idea\\IdeaProjects\\java-sandbox\\src\\main\\resources\\security");
-//                Process process = runtime.exec("java -Dfile.encoding=utf-8 " +
-//                        "-Djava.security.manager=SandboxSecurity " +
-//                        "-cp " + filePath + " ; " + securityDir.getAbsolutePath() + " Main " + s);
-                // 添加时间限制解决时间漏洞
-                Thread thread = new Thread(() -> {
-                    try {
-                        Thread.sleep(1000L * 3);
-                        if (process.isAlive()) {
-                            process.destroy();
-                            FileUtil.del(filePath);
-                        }
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-                thread.setDaemon(true);
-                thread.start();
-                // 设置为守护线程
-                // TODO 计算内存
-                long processMemoryUsage = ProcessMemoryUtil.getProcessMemoryUsage(process);
-                // 启动计时器
-                StopWatch stopWatch = new StopWatch();
-                stopWatch.start();
-                // 等待代码执行结束
-                CmdOutResult cmdOutput = ProcessUtil.getCmdOutput(process);
-                if (cmdOutput.getErrorStdio().contains("SecurityException")) {
-                    System.out.println("SecurityException");
+                compileResult.writeClassFiles(classDir(workspace));
+            } catch (RuntimeException e) {
+                workspace.close();
+                throw e;
+            }
+            recorder.stop(SandboxPhaseEnum.WORKSPACE, start);
+            return workspace;
+        }
+
+        @Override
+        public List<RunnerResult> execute(CodeSandBoxDTO codeSandBoxDTO, Workspace workspace, PhaseRecorder recorder) {
+            // 3.运行代码，开启并行时各用例独占一个CPU核心同时执行，时间限制以请求为准
+            List<String> input = codeSandBoxDTO.getInput();
+            String filePath = workspace.getPath();
+            String classDir = classDir(workspace);
+            long cpuLimit = sandboxProperties.getTime().resolveCpuLimit(codeSandBoxDTO.getTimeLimit());
+            long wallLimit = sandboxProperties.getTime().resolveWallLimit(codeSandBoxDTO.getTimeLimit());
+            return caseScheduler.runCases(input.size(), (index, core) -> {
+                // 大输入与期望输出写入文件计入工作目录准备，各用例的执行耗时累加
+                long caseStart = recorder.start();
+                CaseInput caseInput = CaseInput.of(input.get(index), codeSandBoxDTO.getInputMode(),
+                        sandboxProperties.getInput().getInlineLimit(), filePath, filePath, index);
+                CaseAnswer caseAnswer = CaseAnswer.of(codeSandBoxDTO, index, sandboxProperties, filePath, filePath);
+                recorder.stop(SandboxPhaseEnum.WORKSPACE, caseStart);
+                caseStart = recorder.start();
+                try {
+                    return runCase(classDir, caseInput, caseAnswer, core, cpuLimit, wallLimit);
+                } finally {
+                    recorder.stop(SandboxPhaseEnum.EXEC, caseStart);
                 }
-                // 停止计时器，获取时间最大值，因为只要有一个时间超过限制就返回
-                stopWatch.stop();
-                maxTime = Math.max(stopWatch.getLastTaskTimeMillis(), maxTime);
-                Integer finished = cmdOutput.getFinished();
-                String stdio = cmdOutput.getStdio();
-                String errorStdio = cmdOutput.getErrorStdio();
-                // 运行存在错误
-                if (finished != 0){
-                    codeSandBoxResult.setMessage(errorStdio);
-                    codeSandBoxResult.setStatus(5);
+            }, runnerResult -> runnerResult.toFailureState() != null);
+        }
+
+        @Override
+        public CodeSandBoxResult judge(CodeSandBoxDTO codeSandBoxDTO, List<RunnerResult> results) {
+            // 5.按用例顺序汇总结果，在沙箱内比对时不返回输出
+            CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+            boolean checked = CaseAnswer.isPresent(codeSandBoxDTO);
+            List<String> output = new ArrayList<>();
+            long maxTime = 0L;
+            long maxCpuTime = 0L;
+            long maxMemory = 0L;
+            for (int index = 0; index < results.size(); index++) {
+                RunnerResult runnerResult = results.get(index);
+                maxTime = Math.max(runnerResult.getTime(), maxTime);
+                maxCpuTime = Math.max(runnerResult.getCpuTime(), maxCpuTime);
+                maxMemory = Math.max(runnerResult.getMemory(), maxMemory);
+                codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+                SubmissionStateEnum failureState = runnerResult.toFailureState();
+                if (failureState != null) {
+                    codeSandBoxResult.setMessage(runnerResult.toFailureMessage());
+                    codeSandBoxResult.setStatus(failureState.getValue());
+                    codeSandBoxResult.setFailedCase(index);
                     return codeSandBoxResult;
                 }
-                output.add(stdio);
-            } catch (IOException  e) {
-                throw new RuntimeException(e);
-            } finally {
-                FileUtil.del(filePath);
+                if (checked) {
+                    continue;
+                }
+                // 与逐行读取输出拼接的结果保持一致
+                output.add(runnerResult.getStdio().replace("\r", "").replace("\n", ""));
             }
+            codeSandBoxResult.setJudgeInfo(new JudgeInfo(maxMemory / 1024, maxTime, maxCpuTime));
+            codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+            codeSandBoxResult.setOutput(output);
+            return codeSandBoxResult;
         }
-        codeSandBoxResult.setJudgeInfo(new JudgeInfo( 0L,maxTime));
-        if (output.size()==input.size()){
-            codeSandBoxResult.setStatus(1);
+
+        @Override
+        public void cleanup(Workspace workspace, PhaseRecorder recorder) {
+            // 4.全部用例结束后归还工作目录，由后台线程删除文件
+            long start = recorder.start();
+            workspace.close();
+            recorder.stop(SandboxPhaseEnum.CLEANUP, start);
+        }
+    }
+
+    private static String classDir(Workspace workspace) {
+        return workspace.getPath() + File.separator + RunnerMain.CLASS_DIR;
+    }
+
+    /**
+     * 执行单个用例：优先使用常驻运行器，省去JVM启动；没有可用运行器时单独启动JVM
+     * @param filePath 字节码目录
+     * @param caseInput 用例输入
+     * @param caseAnswer 期望输出，为null时不比对
+     * @param core 独占的CPU核心，不绑定时为null
+     * @param cpuLimit CPU时间限制（毫秒）
+     * @param wallLimit 墙钟时间限制（毫秒）
+     */
+    private RunnerResult runCase(String filePath, CaseInput caseInput, CaseAnswer caseAnswer, Integer core,
+                                 long cpuLimit, long wallLimit) {
+        if (runnerPool.isEnabled()) {
+            RunnerProcess runner = runnerPool.borrow();
+            if (runner != null) {
+                try {
+                    if (core != null) {
+                        runner.pin(core);
+                    }
+                    return runnerPool.run(runner, filePath, caseInput, caseAnswer, wallLimit, cpuLimit);
+                } catch (IOException e) {
+                    // 运行器被cgroup内存上限杀死视为内存超限，否则是超时被强制杀死
+                    RunnerResult runnerResult = new RunnerResult();
+                    if (runner.isOomKilled()) {
+                        runnerResult.setStatus(RunnerMain.STATUS_MEMORY);
+                        return runnerResult;
+                    }
+                    runnerResult.setStatus(RunnerMain.STATUS_TIMEOUT);
+                    runnerResult.setTime(wallLimit);
+                    return runnerResult;
+                } finally {
+                    runnerPool.release(runner);
+                }
+            }
+        }
+        return runProcess(filePath, caseInput, caseAnswer, core, cpuLimit, wallLimit);
+    }
+
+    /**
+     * 单独启动JVM执行一个用例，CPU时间包含JVM自身的启动开销
+     */
+    private RunnerResult runProcess(String filePath, CaseInput caseInput, CaseAnswer caseAnswer, Integer core,
+                                    long cpuLimit, long wallLimit) {
+        // 进程放进只用一次的cgroup子组，内存、线程数与CPU受限，资源从子组读取
+        RunGroup runGroup = cgroupPool.acquire();
+        try {
+            // 添加内存限制解决内存漏洞
+            // 归档与当前JDK绑定，使用与运行器相同的java命令
+            List<String> command = new ArrayList<>(Arrays.asList(JAVA, "-Dfile.encoding=utf-8", "-Xmx56m"));
+            // 启动参数组合与AppCDS归档，缩短计入CPU时间的JVM启动开销
+            command.addAll(runnerStartup.getColdStartOptions());
+            command.addAll(Arrays.asList("-cp", filePath, "Main"));
+            command.addAll(caseInput.getArgs());
+            command = CpuAffinityUtil.pinnedCommand(core, command);
+            ProcessBuilder processBuilder = new ProcessBuilder(runGroup == null ? command : runGroup.wrap(command));
+            if (caseInput.getStdinFile() != null) {
+                // 大输入直接从文件重定向为标准输入，不经过本进程
+                processBuilder.redirectInput(ProcessBuilder.Redirect.from(caseInput.getStdinFile()));
+            }
+            Process process = processBuilder.start();
+            if (caseInput.getStdinFile() == null) {
+                ProcessUtil.writeStdin(process, caseInput.getStdin());
+            }
+            // 使用自定义Java安全管理器设置文件权限
+//            File securityDir = new File("D:\\Java\\idea\\IdeaProjects\\java-sandbox\\src\\main\\resources\\security");
+//            Process process = runtime.exec("java -Dfile.encoding=utf-8 " +
+//                    "-Djava.security.manager=SandboxSecurity " +
+//                    "-cp " + filePath + " ; " + securityDir.getAbsolutePath() + " Main " + input);
+            // 添加墙钟时间限制兜底阻塞等待的程序，由共享的调度线程统一管理，进程退出时自动取消
+            ProcessTimeoutUtil.Deadline deadline = ProcessTimeoutUtil.watch(process, wallLimit);
+            // 共享采样线程统计峰值常驻内存与CPU时间，超出限制时结束进程
+            ProcessSampler.ProcessWatch processWatch = ProcessSampler.watch(process,
+                    sandboxProperties.getMemory().getLimit(), cpuLimit);
+            // 启动计时器
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            // 等待代码执行结束，有期望输出时边读取边比对
+            SandboxProperties.Output outputConfig = sandboxProperties.getOutput();
+            OutputChecker checker = caseAnswer == null ? null : caseAnswer.newChecker();
+            CmdOutResult cmdOutput = ProcessUtil.getCmdOutput(process, outputConfig.getLimit(),
+                    Charset.forName(outputConfig.getCharset()), checker);
+            // 停止计时器
+            stopWatch.stop();
+            processWatch.close();
+            RunnerResult runnerResult = new RunnerResult();
+            runnerResult.setTime(stopWatch.getLastTaskTimeMillis());
+            runnerResult.setCpuTime(processWatch.getCpuTime());
+            runnerResult.setMemory(processWatch.getPeakMemory());
+            runnerResult.setExitCode(cmdOutput.getFinished());
+            runnerResult.setStdio(cmdOutput.getStdio());
+            runnerResult.setErrorStdio(cmdOutput.getErrorStdio());
+            boolean oomKilled = false;
+            if (runGroup != null) {
+                // 子组的统计包含进程的全部线程与本地内存
+                CgroupStats.Usage usage = runGroup.usage();
+                runnerResult.setCpuTime(usage.getCpuTime());
+                runnerResult.setMemory(Math.max(usage.getMemory(), processWatch.getPeakMemory()));
+                oomKilled = usage.isOomKilled();
+            }
+            if (oomKilled || processWatch.isMemoryExceeded()
+                    || cmdOutput.getErrorStdio().contains("java.lang.OutOfMemoryError")) {
+                // 被cgroup内存上限杀死，常驻内存超限被结束，或堆内存超出-Xmx
+                runnerResult.setStatus(RunnerMain.STATUS_MEMORY);
+            } else if (processWatch.isCpuExceeded() || deadline.isTimedOut()) {
+                runnerResult.setStatus(RunnerMain.STATUS_TIMEOUT);
+            } else if (cmdOutput.isOutputExceeded()) {
+                runnerResult.setStatus(RunnerMain.STATUS_OUTPUT);
+            } else if (checker != null && checker.isMismatch()) {
+                // 输出与期望不一致，进程已被提前结束
+                runnerResult.setStatus(RunnerMain.STATUS_WRONG_ANSWER);
+            } else if (cmdOutput.getFinished() != 0) {
+                // 运行存在错误，因安全限制退出的与运行器中一样判为违规
+                runnerResult.setStatus(cmdOutput.getErrorStdio().contains("java.lang.SecurityException")
+                        ? RunnerMain.STATUS_SECURITY : RunnerMain.STATUS_RUNTIME_ERROR);
+            } else {
+                runnerResult.setStatus(checker == null || checker.finish()
+                        ? RunnerMain.STATUS_OK : RunnerMain.STATUS_WRONG_ANSWER);
+            }
+            return runnerResult;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (runGroup != null) {
+                runGroup.close();
+            }
         }
-        codeSandBoxResult.setOutput(output);
-        // 4.删除临时文件
-        FileUtil.del(filePath);
-        // 5.返回结果
-        return codeSandBoxResult;
     }
 
 }
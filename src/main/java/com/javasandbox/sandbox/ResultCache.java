@@ -0,0 +1,314 @@
+package com.javasandbox.sandbox;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.JudgeInfo;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.security.ForbiddenPatternScanner;
+import com.javasandbox.service.CodeSandBox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 判题结果缓存，按 沙箱类型+缓存版本+影响结果的请求字段与配置（含扫描规则） 的哈希寻址
+ * 重判、重复点击运行等相同提交直接返回结果，并发的相同提交只执行一次
+ * 时间超限、内存超限以及耗时接近限制的结果受机器负载影响，执行器异常得到的不完整结果可能是偶发故障，都不缓存
+ */
+@Component
+public class ResultCache {
+
+    private final SandboxProperties sandboxProperties;
+
+    private final SandboxProperties.ResultCache config;
+
+    private final ForbiddenPatternScanner scanner;
+
+    // 按访问顺序排列的LRU表，读写都在this上同步
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 正在执行中的请求，相同key的并发请求共享同一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<CodeSandBoxResult>> inFlight = new ConcurrentHashMap<>();
+
+    private long cacheBytes = 0;
+
+    private final Counter hitCounter;
+
+    private final Counter coalescedCounter;
+
+    private final Counter missCounter;
+
+    // 命中缓存省下的执行耗时
+    private final Counter savedCounter;
+
+    public ResultCache(SandboxProperties sandboxProperties, ForbiddenPatternScanner scanner,
+                       MeterRegistry meterRegistry) {
+        this.sandboxProperties = sandboxProperties;
+        this.config = sandboxProperties.getResultCache();
+        this.scanner = scanner;
+        this.hitCounter = Counter.builder("sandbox.result.cache")
+                .description("判题结果缓存查询次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("sandbox.result.cache")
+                .description("判题结果缓存查询次数")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("sandbox.result.cache")
+                .description("判题结果缓存查询次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.savedCounter = Counter.builder("sandbox.result.cache.saved")
+                .description("命中判题结果缓存省下的执行耗时")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("sandbox.result.cache.size", this, ResultCache::size)
+                .description("判题结果缓存条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行判题，优先命中缓存
+     * @param sandbox 沙箱类型，不同沙箱的结果分开缓存
+     * @param delegate 实际执行判题
+     */
+    public CodeSandBoxResult runCode(String sandbox, CodeSandBoxDTO codeSandBoxDTO, CodeSandBox delegate) {
+        if (!config.isEnabled() || !isCacheable(codeSandBoxDTO)) {
+            return delegate.runCode(codeSandBoxDTO);
+        }
+        String key = cacheKey(sandbox, codeSandBoxDTO);
+        // 1.缓存
+        Entry entry = get(key);
+        if (entry != null) {
+            hitCounter.increment();
+            savedCounter.increment(entry.elapsedNanos / 1e9);
+            return copyOf(entry.result);
+        }
+        // 2.相同key只允许一个线程执行，其余线程等待其结果
+        CompletableFuture<CodeSandBoxResult> future = new CompletableFuture<>();
+        CompletableFuture<CodeSandBoxResult> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalescedCounter.increment();
+            try {
+                return copyOf(running.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // 抢到执行权前可能已有线程执行完，再查一次
+            entry = get(key);
+            if (entry != null) {
+                hitCounter.increment();
+                savedCounter.increment(entry.elapsedNanos / 1e9);
+                future.complete(copyOf(entry.result));
+                return copyOf(entry.result);
+            }
+            missCounter.increment();
+            long startTime = System.nanoTime();
+            CodeSandBoxResult codeSandBoxResult = delegate.runCode(codeSandBoxDTO);
+            long elapsedNanos = System.nanoTime() - startTime;
+            if (isDeterministic(codeSandBoxDTO, codeSandBoxResult)) {
+                put(key, new Entry(copyOf(codeSandBoxResult), elapsedNanos,
+                        System.currentTimeMillis() + config.getTtl()));
+            }
+            // 等待者拿到快照，不受执行者的调用方修改结果影响
+            future.complete(copyOf(codeSandBoxResult));
+            return codeSandBoxResult;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * 请求要求阶段明细、或期望输出引用判题数据文件（文件内容可能更新）时不走缓存
+     */
+    private static boolean isCacheable(CodeSandBoxDTO codeSandBoxDTO) {
+        return !Boolean.TRUE.equals(codeSandBoxDTO.getDebug())
+                && (codeSandBoxDTO.getExpectedOutputFile() == null || codeSandBoxDTO.getExpectedOutputFile().isEmpty());
+    }
+
+    /**
+     * 结果是否可复用：时间/内存超限与耗时接近限制的结果受机器负载影响，不完整的结果来自执行环境，重新执行可能得到不同结论
+     */
+    private boolean isDeterministic(CodeSandBoxDTO codeSandBoxDTO, CodeSandBoxResult codeSandBoxResult) {
+        Integer status = codeSandBoxResult.getStatus();
+        if (status == null || codeSandBoxResult.isIncomplete() || status == SubmissionStateEnum.TIME_LIMIT_EXCEEDED.getValue()
+                || status == SubmissionStateEnum.MEMORY_LIMIT_EXCEEDED.getValue()) {
+            return false;
+        }
+        JudgeInfo judgeInfo = codeSandBoxResult.getJudgeInfo();
+        if (judgeInfo == null) {
+            return true;
+        }
+        SandboxProperties.Time time = sandboxProperties.getTime();
+        double ratio = config.getNearLimitRatio();
+        if (judgeInfo.getCpuTime() != null
+                && judgeInfo.getCpuTime() >= time.resolveCpuLimit(codeSandBoxDTO.getTimeLimit()) * ratio) {
+            return false;
+        }
+        return judgeInfo.getTime() == null
+                || judgeInfo.getTime() < time.resolveWallLimit(codeSandBoxDTO.getTimeLimit()) * ratio;
+    }
+
+    /**
+     * 缓存key：sha256(影响判题结果的全部字段)，各字段带长度前缀避免拼接歧义
+     */
+    String cacheKey(String sandbox, CodeSandBoxDTO codeSandBoxDTO) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, sandbox);
+        append(builder, config.getVersion());
+        append(builder, codeSandBoxDTO.getLanguage());
+        append(builder, codeSandBoxDTO.getCode());
+        appendList(builder, codeSandBoxDTO.getInput());
+        append(builder, codeSandBoxDTO.getInputMode());
+        appendList(builder, codeSandBoxDTO.getExpectedOutput());
+        append(builder, codeSandBoxDTO.getCompareMode());
+        append(builder, codeSandBoxDTO.getEpsilon());
+        // 限制以实际生效的值为准，沙箱配置调整后旧结果自然失效
+        append(builder, sandboxProperties.getTime().resolveCpuLimit(codeSandBoxDTO.getTimeLimit()));
+        append(builder, sandboxProperties.getTime().resolveWallLimit(codeSandBoxDTO.getTimeLimit()));
+        append(builder, sandboxProperties.getMemory().getLimit());
+        append(builder, sandboxProperties.getDocker().getMemoryLimit());
+        append(builder, sandboxProperties.getDocker().getImage());
+        append(builder, sandboxProperties.getOutput().getLimit());
+        append(builder, sandboxProperties.getOutput().getCharset());
+        append(builder, sandboxProperties.getJudge().getEpsilon());
+        // 运行环境：命名空间与cgroup的限制、运行器与冷启动JVM参数、容器的CPU与进程数限制
+        SandboxProperties.Namespace namespace = sandboxProperties.getNamespace();
+        appendList(builder, namespace.getJvmOptions());
+        append(builder, namespace.getTmpfsSize());
+        append(builder, namespace.getFileSizeLimit());
+        append(builder, namespace.getOpenFilesLimit());
+        SandboxProperties.Cgroup cgroup = sandboxProperties.getCgroup();
+        append(builder, cgroup.isEnabled());
+        append(builder, cgroup.getPidsLimit());
+        append(builder, cgroup.getCpuQuota());
+        append(builder, sandboxProperties.getRunnerPool().isEnabled());
+        appendList(builder, sandboxProperties.getRunnerPool().getJvmOptions());
+        appendList(builder, sandboxProperties.getStartup().getJvmOptions());
+        append(builder, sandboxProperties.getDocker().getCpuCount());
+        append(builder, sandboxProperties.getDocker().getPidsLimit());
+        // 禁用代码扫描规则，规则文件重新加载后旧结果失效
+        append(builder, sandboxProperties.getScan().isSourceEnabled());
+        append(builder, sandboxProperties.getScan().isBytecodeEnabled());
+        append(builder, scanner.getRulesDigest());
+        return DigestUtil.sha256Hex(builder.toString());
+    }
+
+    private static void append(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append("-1:");
+            return;
+        }
+        String text = value.toString();
+        builder.append(text.length()).append(':').append(text);
+    }
+
+    private static void appendList(StringBuilder builder, List<String> values) {
+        if (values == null) {
+            builder.append("-1:");
+            return;
+        }
+        builder.append(values.size()).append('[');
+        for (String value : values) {
+            append(builder, value);
+        }
+    }
+
+    /**
+     * 返回副本，调用方修改结果不影响缓存
+     */
+    private static CodeSandBoxResult copyOf(CodeSandBoxResult codeSandBoxResult) {
+        CodeSandBoxResult copy = new CodeSandBoxResult();
+        copy.setOutput(codeSandBoxResult.getOutput() == null ? null
+                : Collections.unmodifiableList(new ArrayList<>(codeSandBoxResult.getOutput())));
+        copy.setMessage(codeSandBoxResult.getMessage());
+        copy.setStatus(codeSandBoxResult.getStatus());
+        JudgeInfo judgeInfo = codeSandBoxResult.getJudgeInfo();
+        if (judgeInfo != null) {
+            copy.setJudgeInfo(new JudgeInfo(judgeInfo.getMemory(), judgeInfo.getTime(), judgeInfo.getCpuTime()));
+        }
+        copy.setFailedCase(codeSandBoxResult.getFailedCase());
+        copy.setIncomplete(codeSandBoxResult.isIncomplete());
+        copy.setPhases(codeSandBoxResult.getPhases() == null ? null
+                : new LinkedHashMap<>(codeSandBoxResult.getPhases()));
+        return copy;
+    }
+
+    private synchronized Entry get(String key) {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expireTime < System.currentTimeMillis()) {
+            cache.remove(key);
+            cacheBytes -= entry.size;
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = cache.put(key, entry);
+        if (previous != null) {
+            cacheBytes -= previous.size;
+        }
+        cacheBytes += entry.size;
+        // 淘汰最久未访问的条目，直到满足条目数与字节数上限
+        Iterator<Map.Entry<String, Entry>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext() && (cache.size() > config.getMaxEntries() || cacheBytes > config.getMaxBytes())) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            cacheBytes -= eldest.getValue().size;
+            iterator.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    private static class Entry {
+
+        private final CodeSandBoxResult result;
+
+        // 原始执行耗时
+        private final long elapsedNanos;
+
+        private final long expireTime;
+
+        // 估算的占用字节数
+        private final long size;
+
+        Entry(CodeSandBoxResult result, long elapsedNanos, long expireTime) {
+            this.result = result;
+            this.elapsedNanos = elapsedNanos;
+            this.expireTime = expireTime;
+            long size = 64 + (result.getMessage() == null ? 0 : result.getMessage().length() * 2L);
+            if (result.getOutput() != null) {
+                for (String line : result.getOutput()) {
+                    size += 40 + line.length() * 2L;
+                }
+            }
+            this.size = size;
+        }
+    }
+
+}
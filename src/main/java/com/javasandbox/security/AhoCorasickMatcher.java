@@ -0,0 +1,91 @@
+package com.javasandbox.security;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 多模式串匹配自动机（Aho-Corasick），构建后不可变，可被多个线程同时使用
+ * 一次扫描文本即可找出任一模式串，耗时与模式串数量无关
+ */
+public class AhoCorasickMatcher {
+
+    private final Node root = new Node();
+
+    public AhoCorasickMatcher(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < pattern.length(); i++) {
+                node = node.next.computeIfAbsent(pattern.charAt(i), c -> new Node());
+            }
+            if (node.matched == null) {
+                node.matched = pattern;
+            }
+        }
+        buildFailLinks();
+    }
+
+    /**
+     * 按广度优先构建失配指针，并把失配链上的匹配结果合并到当前节点
+     */
+    private void buildFailLinks() {
+        Queue<Node> queue = new ArrayDeque<>();
+        for (Node child : root.next.values()) {
+            child.fail = root;
+            queue.offer(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                Node child = entry.getValue();
+                Node fail = node.fail;
+                while (fail != root && !fail.next.containsKey(entry.getKey())) {
+                    fail = fail.fail;
+                }
+                Node target = fail.next.get(entry.getKey());
+                child.fail = target != null && target != child ? target : root;
+                if (child.matched == null) {
+                    child.matched = child.fail.matched;
+                }
+                queue.offer(child);
+            }
+        }
+    }
+
+    /**
+     * 查找文本中最先出现的模式串
+     * @return 匹配到的模式串，没有匹配返回null
+     */
+    public String match(CharSequence text) {
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Node next = node.next.get(c);
+            while (next == null && node != root) {
+                node = node.fail;
+                next = node.next.get(c);
+            }
+            node = next == null ? root : next;
+            if (node.matched != null) {
+                return node.matched;
+            }
+        }
+        return null;
+    }
+
+    private static class Node {
+
+        private final Map<Character, Node> next = new HashMap<>();
+
+        private Node fail;
+
+        // 以当前节点结尾的模式串（含失配链上的）
+        private String matched;
+    }
+
+}
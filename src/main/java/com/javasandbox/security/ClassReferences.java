@@ -0,0 +1,140 @@
+package com.javasandbox.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 从class文件常量池中解析出的类与方法引用
+ * 源码中拼接字符串等写法绕不过常量池：调用任何类的方法都必须在常量池中留下类名与方法名
+ */
+public class ClassReferences {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    // 引用的类，内部名格式（java/io/File）
+    private final Set<String> classes = new LinkedHashSet<>();
+
+    // 引用的方法，格式为 类内部名.方法名（java/lang/Runtime.exec）
+    private final Set<String> methods = new LinkedHashSet<>();
+
+    public Set<String> getClasses() {
+        return classes;
+    }
+
+    public Set<String> getMethods() {
+        return methods;
+    }
+
+    /**
+     * 解析class文件的常量池
+     * @throws IllegalArgumentException 不是合法的class文件
+     */
+    public static ClassReferences parse(byte[] classBytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes))) {
+            if (in.readInt() != 0xCAFEBABE) {
+                throw new IllegalArgumentException("不是合法的class文件");
+            }
+            // minor_version、major_version
+            in.readInt();
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[] classIndex = new int[count];
+            // Methodref/InterfaceMethodref：所属类下标与NameAndType下标
+            int[][] methodRefs = new int[count][];
+            int[] nameIndex = new int[count];
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        utf8[i] = in.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                        classIndex[i] = in.readUnsignedShort();
+                        break;
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                        methodRefs[i] = new int[]{in.readUnsignedShort(), in.readUnsignedShort()};
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        nameIndex[i] = in.readUnsignedShort();
+                        in.readUnsignedShort();
+                        break;
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                        in.readInt();
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        in.readLong();
+                        // 8字节常量占两个下标
+                        i++;
+                        break;
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        in.readUnsignedShort();
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        in.readUnsignedByte();
+                        in.readUnsignedShort();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知的常量池类型：" + tag);
+                }
+            }
+            ClassReferences references = new ClassReferences();
+            for (int i = 1; i < count; i++) {
+                if (classIndex[i] != 0) {
+                    references.classes.add(elementType(utf8[classIndex[i]]));
+                }
+            }
+            for (int i = 1; i < count; i++) {
+                if (methodRefs[i] != null) {
+                    String owner = elementType(utf8[classIndex[methodRefs[i][0]]]);
+                    references.methods.add(owner + "." + utf8[nameIndex[methodRefs[i][1]]]);
+                }
+            }
+            return references;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("解析class文件失败", e);
+        }
+    }
+
+    /**
+     * 数组类型取元素类型：[[Ljava/io/File; -> java/io/File
+     */
+    private static String elementType(String name) {
+        int start = 0;
+        while (start < name.length() && name.charAt(start) == '[') {
+            start++;
+        }
+        if (start > 0 && name.charAt(start) == 'L' && name.endsWith(";")) {
+            return name.substring(start + 1, name.length() - 1);
+        }
+        return name.substring(start);
+    }
+
+}
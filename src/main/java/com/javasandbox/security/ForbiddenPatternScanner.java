@@ -0,0 +1,222 @@
+package com.javasandbox.security;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.javasandbox.config.SandboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 禁用代码扫描器，两种方式：
+ * 源码扫描：多模式串自动机一次扫描源码找出敏感词
+ * 字节码扫描：解析编译后class文件的常量池，找出对禁用类/方法的引用，不受源码拼接等写法影响
+ * 规则在启动时构建为不可变对象供所有请求共享，配置了规则文件时修改后整体替换
+ * 扫描只是纵深防御：尽早拒绝明显的危险代码，不能替代运行时隔离（运行器安全管理器、命名空间、容器）
+ */
+@Slf4j
+@Component
+public class ForbiddenPatternScanner {
+
+    private static final String WORD_PREFIX = "word:";
+
+    private static final String CLASS_PREFIX = "class:";
+
+    private static final String METHOD_PREFIX = "method:";
+
+    private final SandboxProperties.Scan config;
+
+    private volatile Rules rules;
+
+    // 已加载的规则文件修改时间
+    private volatile FileTime loadedTime;
+
+    private ScheduledExecutorService reloader;
+
+    public ForbiddenPatternScanner(SandboxProperties sandboxProperties) {
+        this.config = sandboxProperties.getScan();
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        if (config.getRulesFile() != null && !config.getRulesFile().isEmpty()) {
+            reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "scan-rules-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfModified,
+                    config.getReloadInterval(), config.getReloadInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 重新构建规则：配置了规则文件时从文件读取，否则使用配置项
+     */
+    public synchronized void reload() {
+        String rulesFile = config.getRulesFile();
+        if (rulesFile == null || rulesFile.isEmpty()) {
+            rules = new Rules(config.getWords(), config.getClasses(), config.getMethods());
+            return;
+        }
+        Path path = Paths.get(rulesFile);
+        try {
+            FileTime modifiedTime = Files.getLastModifiedTime(path);
+            List<String> words = new ArrayList<>();
+            List<String> classes = new ArrayList<>();
+            List<String> methods = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.startsWith(WORD_PREFIX)) {
+                    words.add(line.substring(WORD_PREFIX.length()).trim());
+                } else if (line.startsWith(CLASS_PREFIX)) {
+                    classes.add(line.substring(CLASS_PREFIX.length()).trim());
+                } else if (line.startsWith(METHOD_PREFIX)) {
+                    methods.add(line.substring(METHOD_PREFIX.length()).trim());
+                }
+            }
+            rules = new Rules(words, classes, methods);
+            loadedTime = modifiedTime;
+            log.info("已加载扫描规则：{}，敏感词{}个，类{}个，方法{}个", rulesFile,
+                    words.size(), classes.size(), methods.size());
+        } catch (IOException e) {
+            if (rules == null) {
+                // 启动时规则文件不可读，先使用配置项
+                rules = new Rules(config.getWords(), config.getClasses(), config.getMethods());
+            }
+            log.error("读取扫描规则文件失败，继续使用当前规则：{}", rulesFile, e);
+        }
+    }
+
+    private void reloadIfModified() {
+        try {
+            FileTime modifiedTime = Files.getLastModifiedTime(Paths.get(config.getRulesFile()));
+            if (!modifiedTime.equals(loadedTime)) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.warn("检查扫描规则文件失败：{}", config.getRulesFile());
+        }
+    }
+
+    /**
+     * 扫描源码中的敏感词
+     * @return 匹配到的敏感词，未开启或没有匹配返回null
+     */
+    public String scanSource(String code) {
+        if (!config.isSourceEnabled()) {
+            return null;
+        }
+        return rules.words.match(code);
+    }
+
+    /**
+     * 扫描编译后的字节码
+     * @param classBytes 类全限定名 -> 字节码
+     * @return 第一个被禁止的类或方法（Java格式），未开启或没有违规返回null
+     */
+    public String scanBytecode(Map<String, byte[]> classBytes) {
+        if (!config.isBytecodeEnabled()) {
+            return null;
+        }
+        Rules current = rules;
+        for (byte[] bytes : classBytes.values()) {
+            ClassReferences references = ClassReferences.parse(bytes);
+            for (String className : references.getClasses()) {
+                if (current.isForbiddenClass(className)) {
+                    return className.replace('/', '.');
+                }
+            }
+            for (String method : references.getMethods()) {
+                if (current.methods.contains(method)) {
+                    return method.replace('/', '.');
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 当前规则的摘要，规则变化（含规则文件重新加载）后改变，用于判题结果缓存的key
+     */
+    public String getRulesDigest() {
+        return rules.digest;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    /**
+     * 一套不可变的扫描规则，类名与方法名统一为class文件中的内部名格式
+     */
+    private static class Rules {
+
+        private final AhoCorasickMatcher words;
+
+        private final Set<String> classes = new HashSet<>();
+
+        private final List<String> classPrefixes = new ArrayList<>();
+
+        private final Set<String> methods = new HashSet<>();
+
+        private final String digest;
+
+        Rules(Collection<String> words, Collection<String> classes, Collection<String> methods) {
+            this.words = new AhoCorasickMatcher(words);
+            // 与顺序无关
+            this.digest = DigestUtil.sha256Hex(new TreeSet<>(words) + "\n" + new TreeSet<>(classes) + "\n"
+                    + new TreeSet<>(methods));
+            for (String className : classes) {
+                String internalName = className.replace('.', '/');
+                if (internalName.endsWith("*")) {
+                    classPrefixes.add(internalName.substring(0, internalName.length() - 1));
+                } else {
+                    this.classes.add(internalName);
+                }
+            }
+            for (String method : methods) {
+                // 类名与方法名之间的点保留
+                int index = method.lastIndexOf('.');
+                if (index <= 0) {
+                    continue;
+                }
+                this.methods.add(method.substring(0, index).replace('.', '/') + method.substring(index));
+            }
+        }
+
+        boolean isForbiddenClass(String className) {
+            if (classes.contains(className)) {
+                return true;
+            }
+            for (String prefix : classPrefixes) {
+                if (className.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
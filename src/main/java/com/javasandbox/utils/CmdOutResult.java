@@ -13,4 +13,7 @@ public class CmdOutResult {
 
     private Long time;
 
+    // 输出是否超出上限（进程已被强制结束）
+    private boolean outputExceeded;
+
 }
@@ -0,0 +1,76 @@
+package com.javasandbox.utils;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU亲和性工具，基于Linux的taskset把进程绑定到指定核心，其他平台不做绑定
+ */
+@Slf4j
+public class CpuAffinityUtil {
+
+    private static final String TASKSET = findTaskset();
+
+    private static String findTaskset() {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            return null;
+        }
+        for (String path : Arrays.asList("/usr/bin/taskset", "/bin/taskset")) {
+            if (FileUtil.exist(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isSupported() {
+        return TASKSET != null;
+    }
+
+    /**
+     * 为新启动的进程加上绑核前缀：taskset -c core command...
+     * @param core CPU核心编号，为null或不支持时原样返回
+     */
+    public static List<String> pinnedCommand(Integer core, List<String> command) {
+        if (core == null || !isSupported()) {
+            return command;
+        }
+        List<String> pinned = new ArrayList<>(Arrays.asList(TASKSET, "-c", String.valueOf(core)));
+        pinned.addAll(command);
+        return pinned;
+    }
+
+    /**
+     * 把已运行进程的全部线程绑定到指定核心：taskset -a -p -c core pid，之后新建的线程继承该绑定
+     * @return 是否绑定成功
+     */
+    public static boolean pin(long pid, int core) {
+        if (!isSupported()) {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder(TASKSET, "-a", "-p", "-c", String.valueOf(core), String.valueOf(pid))
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            log.warn("绑定CPU失败：pid={}, core={}", pid, core, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.javasandbox.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 进程CPU时间统计（Linux）
+ * 进程的user+sys时间取自/proc/<pid>/stat，cgroup的CPU时间取自cpu.stat的usage_usec
+ */
+@Slf4j
+public class ProcessCpuUtil {
+
+    // /proc/<pid>/stat中时间字段的单位：每秒时钟滴答数，Linux上几乎都是100
+    private static final long CLOCK_TICKS = 100L;
+
+    /**
+     * 读取进程（全部线程）累计的user+sys CPU时间，单位纳秒；进程已退出或非Linux系统返回0
+     */
+    public static long readCpuTime(long pid) {
+        try {
+            String stat = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "stat")),
+                    StandardCharsets.UTF_8);
+            // 进程名可能包含空格和括号，从最后一个右括号之后开始解析，之后第12、13个字段为utime、stime
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            return ticks * (1000_000_000L / CLOCK_TICKS);
+        } catch (NoSuchFileException e) {
+            // 进程已退出
+        } catch (IOException | RuntimeException e) {
+            log.debug("读取进程CPU时间失败：{}", pid, e);
+        }
+        return 0L;
+    }
+
+    /**
+     * 读取cgroup v2的cpu.stat中的usage_usec，单位纳秒
+     */
+    public static long readCgroupCpuTime(Path cgroupDir) {
+        try {
+            List<String> lines = Files.readAllLines(cgroupDir.resolve("cpu.stat"), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.startsWith("usage_usec ")) {
+                    return Long.parseLong(line.substring("usage_usec ".length()).trim()) * 1000L;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("读取cgroup CPU时间失败：{}", cgroupDir, e);
+        }
+        return 0L;
+    }
+
+}
@@ -2,53 +2,64 @@ package com.javasandbox.utils;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
+/**
+ * 进程内存统计（Linux）
+ * 峰值常驻内存取自/proc/<pid>/status的VmHWM，进程放在独立cgroup中时取cgroup的memory.peak；
+ * 持续采样与限制由ProcessSampler负责
+ */
 @Slf4j
 public class ProcessMemoryUtil {
 
+    /**
+     * 获取进程当前的峰值常驻内存（KB），进程已退出或非Linux系统返回0
+     */
     public static long getProcessMemoryUsage(Process process) {
-        // 获取进程 PID
-        String pid = getProcessId(process);
-        // 执行 tasklist 命令
-        Process p = null;
+        return readPeakRss(process.pid()) / 1024;
+    }
+
+    /**
+     * 读取/proc/<pid>/status中的VmHWM（峰值常驻内存），单位字节
+     */
+    public static long readPeakRss(long pid) {
         try {
-            p = Runtime.getRuntime().exec("tasklist | findstr "+ pid);
-            // 读取输出
-            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream(), "GBK"));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-                // 输出格式为 CSV，例如："java.exe","1234",...
-                String[] parts = line.split(",");
-                if (parts.length >= 5) {
-                    // 第5个字段是内存使用量（如 " 1,234 K"）
-                    String memoryStr = parts[4].replaceAll("\"", "").trim();
-                    memoryStr = memoryStr.replaceAll(",", "").split(" ")[0];
-                    return Long.parseLong(memoryStr); // 返回内存使用量（单位 KB）
+            List<String> lines = Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"),
+                    StandardCharsets.UTF_8);
+            for (String line : lines) {
+                // 格式：VmHWM:	   12345 kB
+                if (line.startsWith("VmHWM:")) {
+                    return parseKb(line.substring("VmHWM:".length()));
                 }
             }
+        } catch (NoSuchFileException e) {
+            // 进程已退出
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            log.debug("读取进程内存失败：{}", pid, e);
         }
-        return 0;
+        return 0L;
     }
 
-    // 通过反射获取进程 PID（适用于 Windows）
-    private static String getProcessId(Process process) {
-        ProcessHandle processHandle = process.toHandle();
-        return processHandle.pid() + "";
+    /**
+     * 读取cgroup v2的memory.peak，单位字节
+     */
+    public static long readCgroupPeak(Path cgroupDir) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(cgroupDir.resolve("memory.peak")),
+                    StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0L;
+        }
     }
 
-    public static void main(String[] args) throws IOException, InterruptedException {
-        Process process = Runtime.getRuntime().exec("java -version");
-        int i = process.waitFor();
-        if (i == 0){
-            long processMemoryUsage = getProcessMemoryUsage(process);
-            System.out.println(processMemoryUsage);
-        }
+    private static long parseKb(String value) {
+        return Long.parseLong(value.replace("kB", "").trim()) * 1024;
     }
 
 }
@@ -0,0 +1,164 @@
+package com.javasandbox.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程资源采样
+ * 所有被监控的进程共用一个采样线程，统计峰值常驻内存与CPU时间，超出内存或CPU时间限制的进程会被强制结束
+ */
+@Slf4j
+public class ProcessSampler {
+
+    // 采样间隔（毫秒），VmHWM由内核记录峰值，采样只需在进程退出前读到它
+    private static final long SAMPLE_INTERVAL = 10L;
+
+    private static final Set<ProcessWatch> WATCHES = ConcurrentHashMap.newKeySet();
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "process-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SAMPLER.scheduleWithFixedDelay(ProcessSampler::sampleAll, SAMPLE_INTERVAL, SAMPLE_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开始监控进程，进程结束后调用ProcessWatch.close()获取结果
+     * @param process 进程
+     * @param memoryLimit 峰值常驻内存上限（字节），小于等于0表示不限制
+     * @param cpuLimit CPU时间上限（毫秒），小于等于0表示不限制
+     */
+    public static ProcessWatch watch(Process process, long memoryLimit, long cpuLimit) {
+        return watch(process, memoryLimit, cpuLimit, null);
+    }
+
+    /**
+     * 开始监控进程
+     * @param cgroupDir 进程所在的独立cgroup目录，不为null时以memory.peak与cpu.stat为准
+     */
+    public static ProcessWatch watch(Process process, long memoryLimit, long cpuLimit, Path cgroupDir) {
+        ProcessWatch processWatch = new ProcessWatch(process, memoryLimit, cpuLimit, cgroupDir);
+        // 先采样一次，避免极短的进程没有数据
+        processWatch.sample();
+        WATCHES.add(processWatch);
+        return processWatch;
+    }
+
+    private static void sampleAll() {
+        for (ProcessWatch processWatch : WATCHES) {
+            try {
+                processWatch.sample();
+            } catch (RuntimeException e) {
+                log.warn("进程采样失败", e);
+            }
+        }
+    }
+
+    /**
+     * 单个进程的资源监控
+     */
+    public static class ProcessWatch implements AutoCloseable {
+
+        private final Process process;
+
+        private final long memoryLimit;
+
+        // CPU时间上限（纳秒）
+        private final long cpuLimit;
+
+        private final Path cgroupDir;
+
+        private volatile long peakMemory = 0L;
+
+        private volatile long cpuTime = 0L;
+
+        private volatile boolean memoryExceeded = false;
+
+        private volatile boolean cpuExceeded = false;
+
+        ProcessWatch(Process process, long memoryLimit, long cpuLimit, Path cgroupDir) {
+            this.process = process;
+            this.memoryLimit = memoryLimit;
+            this.cpuLimit = TimeUnit.MILLISECONDS.toNanos(cpuLimit);
+            this.cgroupDir = cgroupDir;
+        }
+
+        void sample() {
+            if (!process.isAlive()) {
+                return;
+            }
+            long memory;
+            long cpu;
+            if (cgroupDir != null) {
+                memory = ProcessMemoryUtil.readCgroupPeak(cgroupDir);
+                cpu = ProcessCpuUtil.readCgroupCpuTime(cgroupDir);
+            } else {
+                memory = ProcessMemoryUtil.readPeakRss(process.pid());
+                cpu = ProcessCpuUtil.readCpuTime(process.pid());
+            }
+            peakMemory = Math.max(peakMemory, memory);
+            cpuTime = Math.max(cpuTime, cpu);
+            if (memoryExceeded || cpuExceeded) {
+                return;
+            }
+            if (memoryLimit > 0 && peakMemory > memoryLimit) {
+                memoryExceeded = true;
+                ProcessUtil.destroyTree(process);
+            } else if (cpuLimit > 0 && cpuTime > cpuLimit) {
+                cpuExceeded = true;
+                ProcessUtil.destroyTree(process);
+            }
+        }
+
+        /**
+         * 峰值常驻内存（字节）
+         */
+        public long getPeakMemory() {
+            return peakMemory;
+        }
+
+        /**
+         * user+sys CPU时间（毫秒）
+         */
+        public long getCpuTime() {
+            return TimeUnit.NANOSECONDS.toMillis(cpuTime);
+        }
+
+        /**
+         * 是否因超出内存限制被强制结束
+         */
+        public boolean isMemoryExceeded() {
+            return memoryExceeded;
+        }
+
+        /**
+         * 是否因超出CPU时间限制被强制结束
+         */
+        public boolean isCpuExceeded() {
+            return cpuExceeded;
+        }
+
+        /**
+         * 停止监控，cgroup中的进程以最终的统计值为准
+         */
+        @Override
+        public void close() {
+            WATCHES.remove(this);
+            if (cgroupDir != null) {
+                peakMemory = Math.max(peakMemory, ProcessMemoryUtil.readCgroupPeak(cgroupDir));
+                cpuTime = Math.max(cpuTime, ProcessCpuUtil.readCgroupCpuTime(cgroupDir));
+            }
+        }
+    }
+
+}
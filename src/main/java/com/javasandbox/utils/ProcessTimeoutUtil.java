@@ -0,0 +1,83 @@
+package com.javasandbox.utils;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 进程超时控制
+ * 所有进程的截止时间由同一个调度线程管理，进程正常退出时通过onExit取消；
+ * 超时后先结束整个进程树（destroy），宽限期后仍存活的再强制结束（destroyForcibly）
+ */
+public class ProcessTimeoutUtil {
+
+    // destroy之后等待进程自行退出的宽限期（毫秒）
+    private static final long KILL_GRACE = 200L;
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "process-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // 取消的截止时间立即移出队列，避免大量已结束进程的任务堆积
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 为进程设置截止时间
+     * @param process 进程
+     * @param timeout 超时时间（毫秒）
+     */
+    public static Deadline watch(Process process, long timeout) {
+        Deadline deadline = new Deadline();
+        deadline.future = TIMER.schedule(() -> expire(process, deadline), timeout, TimeUnit.MILLISECONDS);
+        process.onExit().thenRun(() -> deadline.future.cancel(false));
+        return deadline;
+    }
+
+    private static void expire(Process process, Deadline deadline) {
+        if (!process.isAlive()) {
+            return;
+        }
+        deadline.timedOut = true;
+        // 父进程结束后子进程会被收养，需要在结束前取得整个进程树
+        List<ProcessHandle> tree = process.descendants().collect(Collectors.toList());
+        tree.forEach(ProcessHandle::destroy);
+        process.destroy();
+        TIMER.schedule(() -> {
+            tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }, KILL_GRACE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 单个进程的截止时间
+     */
+    public static class Deadline {
+
+        private volatile ScheduledFuture<?> future;
+
+        private volatile boolean timedOut = false;
+
+        /**
+         * 进程是否因超时被结束
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * 提前取消截止时间
+         */
+        public void cancel() {
+            future.cancel(false);
+        }
+    }
+
+}
@@ -1,56 +1,134 @@
 package com.javasandbox.utils;
 
-import java.io.BufferedReader;
+import com.javasandbox.runner.OutputChecker;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProcessUtil {
-    public static CmdOutResult getCmdOutput(Process  process) {
+
+    // 默认输出上限（字节），标准输出与错误输出分别计算
+    public static final int DEFAULT_OUTPUT_LIMIT = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // 读取子进程输出的线程，标准输出与错误输出同时读取，避免管道写满导致子进程阻塞
+    private static final AtomicInteger DRAINER_INDEX = new AtomicInteger();
+
+    private static final ExecutorService DRAINER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "process-drainer-" + DRAINER_INDEX.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static CmdOutResult getCmdOutput(Process process) {
+        return getCmdOutput(process, DEFAULT_OUTPUT_LIMIT, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 同时读取子进程的标准输出与错误输出并等待其结束
+     * 任一输出超出上限时强制结束进程，超出部分丢弃
+     * @param outputLimit 单个输出流的上限（字节）
+     * @param charset 子进程输出的编码
+     */
+    public static CmdOutResult getCmdOutput(Process process, int outputLimit, Charset charset) {
+        return getCmdOutput(process, outputLimit, charset, null);
+    }
+
+    /**
+     * 同时读取子进程的标准输出与错误输出并等待其结束
+     * 指定了比对器时标准输出边读取边比对、不保留内容，出现不一致时立即结束进程
+     * @param checker 期望输出比对器，为null时保留标准输出
+     */
+    public static CmdOutResult getCmdOutput(Process process, int outputLimit, Charset charset, OutputChecker checker) {
+        AtomicBoolean exceeded = new AtomicBoolean();
+        CompletableFuture<byte[]> stderrFuture = CompletableFuture.supplyAsync(() -> {
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream(Math.min(outputLimit, BUFFER_SIZE));
+            drain(process, process.getErrorStream(), outputLimit, exceeded, stderr);
+            return stderr.toByteArray();
+        }, DRAINER);
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream(Math.min(outputLimit, BUFFER_SIZE));
+        if (checker != null) {
+            checker.setOnMismatch(() -> destroyTree(process));
+        }
+        drain(process, process.getInputStream(), outputLimit, exceeded, checker != null ? checker : stdout);
         int waitFor;
-        StringBuilder stringBuilder = null;
-        StringBuilder errorStringBuilder = null;
+        byte[] stderr;
         try {
+            stderr = stderrFuture.get();
             waitFor = process.waitFor();
-            if (waitFor == 0) {
-                // 获取标准输出流信息
-                stringBuilder = getCommandLindOutput(process);
-            } else {
-                System.out.println("错误" + waitFor);
-                // 获取标准输出流信息
-                stringBuilder = getCommandLindOutput(process);
-                // 获取错误输出流信息
-                errorStringBuilder = getErrorCommandLindOutput(process);
-            }
-        } catch (Exception e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
         }
         CmdOutResult cmdOutResult = new CmdOutResult();
         cmdOutResult.setFinished(waitFor);
-        cmdOutResult.setStdio(stringBuilder.toString());
-        if (errorStringBuilder != null) cmdOutResult.setErrorStdio(errorStringBuilder.toString());
+        // 拼接输出结果为一行
+        cmdOutResult.setStdio(new String(stdout.toByteArray(), charset).replace("\r", "").replace("\n", ""));
+        cmdOutResult.setErrorStdio(new String(stderr, charset).replace("\r\n", "\n"));
+        cmdOutResult.setOutputExceeded(exceeded.get());
         return cmdOutResult;
     }
 
-    private static StringBuilder getErrorCommandLindOutput(Process process) throws IOException {
-        BufferedReader errorBufferedReader = new BufferedReader(new InputStreamReader(process.getErrorStream(),"GBK"));
-        StringBuilder errorStringBuilder = new StringBuilder();
-        String errorLine;
-        while ((errorLine = errorBufferedReader.readLine()) != null) {
-            // 拼接输出结果为一行
-            errorStringBuilder.append(errorLine+"\n");
+    /**
+     * 读取一个输出流直到结束并写入target，超出上限后强制结束进程并继续读完剩余数据
+     */
+    private static void drain(Process process, InputStream inputStream, int outputLimit, AtomicBoolean exceeded,
+                              OutputStream target) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int total = 0;
+        try (InputStream in = inputStream) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int remaining = outputLimit - total;
+                if (read > remaining) {
+                    target.write(buffer, 0, Math.max(remaining, 0));
+                    total = outputLimit;
+                    if (exceeded.compareAndSet(false, true)) {
+                        destroyTree(process);
+                    }
+                    continue;
+                }
+                target.write(buffer, 0, read);
+                total += read;
+            }
+        } catch (IOException e) {
+            // 进程被强制结束时管道可能被提前关闭
         }
-        return errorStringBuilder;
     }
 
-    private static StringBuilder getCommandLindOutput(Process process) throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        StringBuilder stringBuilder = new StringBuilder();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            // 拼接输出结果为一行
-            stringBuilder.append(line);
-        }
-        return stringBuilder;
+    /**
+     * 在后台线程中写入标准输入后关闭，程序不读取输入时不会阻塞调用方
+     */
+    public static void writeStdin(Process process, byte[] stdin) {
+        DRAINER.execute(() -> {
+            try (OutputStream outputStream = process.getOutputStream()) {
+                outputStream.write(stdin);
+            } catch (IOException e) {
+                // 程序未读完输入就已退出
+            }
+        });
+    }
+
+    /**
+     * 强制结束进程及其子进程
+     */
+    public static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
     }
 
 }
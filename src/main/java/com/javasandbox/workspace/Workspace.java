@@ -0,0 +1,37 @@
+package com.javasandbox.workspace;
+
+import java.io.File;
+
+/**
+ * 一次判题独占的工作目录，用完后close交给后台清理并放回目录池
+ */
+public class Workspace implements AutoCloseable {
+
+    private final WorkspaceManager manager;
+
+    private final File dir;
+
+    private boolean closed = false;
+
+    Workspace(WorkspaceManager manager, File dir) {
+        this.manager = manager;
+        this.dir = dir;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public String getPath() {
+        return dir.getAbsolutePath();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            manager.release(dir);
+        }
+    }
+
+}
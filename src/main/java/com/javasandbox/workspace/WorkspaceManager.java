@@ -0,0 +1,234 @@
+package com.javasandbox.workspace;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.config.SandboxProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 判题工作目录管理
+ * 目录默认放在内存文件系统（/dev/shm）上，用完后由后台线程清空并放回目录池复用，请求线程不等待删除
+ * 各实例使用共用根目录下以进程号命名的子目录，定期清理本实例的遗留目录与已退出实例的目录，并按占用空间做准入控制
+ */
+@Slf4j
+@Component
+public class WorkspaceManager {
+
+    // 判题工作目录名前缀，根目录下的其他目录（运行器、容器挂载目录）不归本类管理
+    private static final String PREFIX = "ws-";
+
+    private final SandboxProperties.Workspace config;
+
+    private final File root;
+
+    // 各实例共用的根目录
+    private final File sharedRoot;
+
+    // 已清空、可直接复用的目录
+    private final ConcurrentLinkedQueue<File> idleDirs = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    // 本实例创建且尚未删除的目录名（含空闲、借出中与清理中）
+    private final Set<String> ownedDirs = ConcurrentHashMap.newKeySet();
+
+    // 借出中与清理中的目录数
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 最近一次统计的占用空间（字节）
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    // 目录清理与遗留目录扫描
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "workspace-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WorkspaceManager(SandboxProperties sandboxProperties, MeterRegistry meterRegistry) {
+        this.config = sandboxProperties.getWorkspace();
+        this.root = new File(config.resolveRoot());
+        this.sharedRoot = new File(config.resolveSharedRoot());
+        Gauge.builder("sandbox.workspace.used", usedBytes, AtomicLong::get)
+                .description("判题工作目录占用空间（字节）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("sandbox.workspace.active", activeCount, AtomicInteger::get)
+                .description("使用中与等待清理的工作目录数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        FileUtil.mkdir(root);
+        // 启动时清理上次运行遗留的工作目录
+        reap();
+        cleaner.scheduleWithFixedDelay(this::reap, config.getReapInterval(), config.getReapInterval(),
+                TimeUnit.MILLISECONDS);
+        log.info("判题工作目录：{}", root.getAbsolutePath());
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * 目录池中可直接复用的目录数
+     */
+    public int getIdleCount() {
+        return idleDirs.size();
+    }
+
+    /**
+     * 借出一个空的工作目录，优先复用目录池中的目录
+     * 占用空间按最近一次统计判断，两次统计之间的突发提交可能短暂超出配额
+     * @throws IllegalStateException 占用空间超出配额
+     */
+    public Workspace acquire() {
+        if (usedBytes.get() >= config.getMaxBytes()) {
+            throw new IllegalStateException("判题工作目录空间不足");
+        }
+        activeCount.incrementAndGet();
+        File dir = idleDirs.poll();
+        if (dir != null) {
+            idleCount.decrementAndGet();
+            return new Workspace(this, dir);
+        }
+        dir = new File(root, PREFIX + sequence.incrementAndGet() + "-" + System.nanoTime());
+        // 先登记再创建，避免被遗留目录扫描误删
+        ownedDirs.add(dir.getName());
+        FileUtil.mkdir(dir);
+        return new Workspace(this, dir);
+    }
+
+    /**
+     * 归还工作目录，由后台线程清空
+     */
+    void release(File dir) {
+        try {
+            cleaner.execute(() -> clean(dir));
+        } catch (RejectedExecutionException e) {
+            // 已关闭
+            delete(dir);
+            activeCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 后台删除不属于工作目录的文件或目录，如容器挂载目录中本次运行的字节码
+     */
+    public void deleteAsync(File... files) {
+        try {
+            cleaner.execute(() -> {
+                for (File file : files) {
+                    FileUtil.del(file);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            for (File file : files) {
+                FileUtil.del(file);
+            }
+        }
+    }
+
+    private void clean(File dir) {
+        try {
+            FileUtil.clean(dir);
+            if (idleCount.incrementAndGet() <= config.getPoolSize()) {
+                idleDirs.offer(dir);
+            } else {
+                idleCount.decrementAndGet();
+                delete(dir);
+            }
+        } catch (RuntimeException e) {
+            log.warn("清理工作目录失败：{}", dir, e);
+            delete(dir);
+        } finally {
+            activeCount.decrementAndGet();
+        }
+    }
+
+    private void delete(File dir) {
+        FileUtil.del(dir);
+        ownedDirs.remove(dir.getName());
+    }
+
+    /**
+     * 删除本实例遗留的工作目录与已退出实例的目录，并统计占用空间
+     */
+    void reap() {
+        reapExitedInstances();
+        try {
+            File[] files = root.listFiles((dir, name) -> name.startsWith(PREFIX));
+            if (files == null) {
+                return;
+            }
+            long total = 0L;
+            for (File file : files) {
+                if (!ownedDirs.contains(file.getName())) {
+                    log.info("清理遗留工作目录：{}", file);
+                    FileUtil.del(file);
+                    continue;
+                }
+                try {
+                    total += FileUtil.size(file);
+                } catch (RuntimeException e) {
+                    // 统计期间文件被删除
+                }
+            }
+            usedBytes.set(total);
+        } catch (RuntimeException e) {
+            log.warn("扫描工作目录失败", e);
+        }
+    }
+
+    /**
+     * 删除进程已不存在的实例目录（以进程号命名），正在运行的其他实例的目录不受影响
+     */
+    private void reapExitedInstances() {
+        File[] files = sharedRoot.listFiles((dir, name) -> !name.isEmpty() && name.chars().allMatch(Character::isDigit));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long pid;
+            try {
+                pid = Long.parseLong(file.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (file.equals(root) || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+                continue;
+            }
+            log.info("清理已退出实例的工作目录：{}", file);
+            try {
+                FileUtil.del(file);
+            } catch (RuntimeException e) {
+                log.warn("清理已退出实例的工作目录失败：{}", file, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        cleaner.shutdownNow();
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.javasandbox.cgroup;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.docker.CgroupStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CgroupPoolTests {
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    private static CgroupPool newPool(Path root) {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getCgroup().setRoot(root.toString());
+        sandboxProperties.getCgroup().setPoolSize(2);
+        sandboxProperties.getCgroup().setCpuQuota(0.5);
+        CgroupPool cgroupPool = new CgroupPool(sandboxProperties);
+        cgroupPool.init();
+        return cgroupPool;
+    }
+
+    @Test
+    void testDisabledWithoutCgroupV2(@TempDir Path dir) {
+        CgroupPool cgroupPool = newPool(dir.resolve("java-sandbox"));
+        assertFalse(cgroupPool.isAvailable());
+        assertNull(cgroupPool.acquire());
+        // 不在非cgroup文件系统上建目录
+        assertFalse(Files.exists(dir.resolve("java-sandbox")));
+    }
+
+    @Test
+    void testGroupsCarryLimitsAndJoinBeforeExec(@TempDir Path dir) throws Exception {
+        // 以普通目录模拟cgroup v2文件系统
+        Path root = Files.createDirectories(dir.resolve("java-sandbox"));
+        Files.write(root.resolve("cgroup.controllers"), "cpu memory pids".getBytes(StandardCharsets.UTF_8));
+        CgroupPool cgroupPool = newPool(root);
+        assertTrue(cgroupPool.isAvailable());
+        assertEquals("+memory +pids +cpu", read(root.resolve("cgroup.subtree_control").toFile()));
+        assertEquals(2, cgroupPool.getIdleCount());
+        RunGroup first = cgroupPool.acquire();
+        RunGroup second = cgroupPool.acquire();
+        RunGroup third = cgroupPool.acquire();
+        assertNotNull(third);
+        assertNotEquals(first.getDir(), second.getDir());
+        assertEquals(String.valueOf(256L * 1024 * 1024), read(new File(first.getDir(), "memory.max")));
+        assertEquals("64", read(new File(first.getDir(), "pids.max")));
+        assertEquals("50000 100000", read(new File(first.getDir(), "cpu.max")));
+        // 进程先把自身pid写入cgroup.procs再exec原命令
+        Process process = new ProcessBuilder(first.wrap(Arrays.asList("sh", "-c", "echo ok")))
+                .redirectErrorStream(true).start();
+        assertEquals("ok", new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim());
+        assertEquals(0, process.waitFor());
+        assertEquals(String.valueOf(process.pid()), read(new File(first.getDir(), "cgroup.procs")));
+        // 统计从子组自身读取
+        Files.write(first.getDir().toPath().resolve("cpu.stat"), "usage_usec 120000\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(first.getDir().toPath().resolve("memory.events"), "oom 1\noom_kill 1\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(first.getDir().toPath().resolve("memory.peak"), "1048576\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(120, first.usage().getCpuTime());
+        assertEquals(1048576L, first.usage().getMemory());
+        assertTrue(first.usage().isOomKilled());
+        cgroupPool.close();
+    }
+
+    @Test
+    void testSampleCountsOnlyTheCase(@TempDir Path dir) throws Exception {
+        Path root = Files.createDirectories(dir.resolve("java-sandbox"));
+        Files.write(root.resolve("cgroup.controllers"), "cpu memory pids".getBytes(StandardCharsets.UTF_8));
+        CgroupPool cgroupPool = newPool(root);
+        RunGroup runGroup = cgroupPool.acquire();
+        Path groupDir = runGroup.getDir().toPath();
+        // 常驻运行器的子组中已有前面用例的CPU时间与一次OOM
+        Files.write(groupDir.resolve("cpu.stat"), "usage_usec 120000\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(groupDir.resolve("memory.events"), "oom 1\noom_kill 1\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(groupDir.resolve("memory.current"), "2097152\n".getBytes(StandardCharsets.UTF_8));
+        try (CgroupStats.Sample sample = runGroup.sample()) {
+            Files.write(groupDir.resolve("cpu.stat"), "usage_usec 150000\n".getBytes(StandardCharsets.UTF_8));
+            CgroupStats.Usage usage = sample.finish();
+            assertEquals(30, usage.getCpuTime());
+            assertFalse(usage.isOomKilled());
+        }
+        try (CgroupStats.Sample sample = runGroup.sample()) {
+            Files.write(groupDir.resolve("memory.events"), "oom 2\noom_kill 2\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(sample.finish().isOomKilled());
+        }
+        cgroupPool.close();
+    }
+
+}
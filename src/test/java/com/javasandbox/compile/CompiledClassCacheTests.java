@@ -0,0 +1,54 @@
+package com.javasandbox.compile;
+
+import com.javasandbox.config.SandboxProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CompiledClassCacheTests {
+
+    private static final String CODE =
+            "public class Main { public static void main(String[] args) { System.out.println(%d); } }";
+
+    @Test
+    void testConcurrentIdenticalSubmissionsCompileOnce() throws Exception {
+        CompiledClassCache compiledClassCache = new CompiledClassCache(new SandboxProperties());
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<CompileResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(() -> compiledClassCache.compile(String.format(CODE, 1))));
+        }
+        CompileResult first = futures.get(0).get();
+        for (Future<CompileResult> future : futures) {
+            assertSame(first, future.get());
+        }
+        executorService.shutdown();
+        assertEquals(1, compiledClassCache.getMissCount());
+        assertEquals(7, compiledClassCache.getHitCount());
+    }
+
+    @Test
+    void testLruEviction() {
+        SandboxProperties.CompileCache config = new SandboxProperties.CompileCache();
+        config.setMaxEntries(2);
+        CompiledClassCache compiledClassCache = new CompiledClassCache(new InMemoryJavaCompiler(), config);
+        compiledClassCache.compile(String.format(CODE, 1));
+        compiledClassCache.compile(String.format(CODE, 2));
+        // 访问1使2成为最久未使用
+        compiledClassCache.compile(String.format(CODE, 1));
+        compiledClassCache.compile(String.format(CODE, 3));
+        assertEquals(2, compiledClassCache.size());
+        compiledClassCache.compile(String.format(CODE, 1));
+        assertEquals(2, compiledClassCache.getHitCount());
+        compiledClassCache.compile(String.format(CODE, 2));
+        assertEquals(4, compiledClassCache.getMissCount());
+    }
+
+}
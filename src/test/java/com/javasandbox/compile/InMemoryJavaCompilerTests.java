@@ -0,0 +1,29 @@
+package com.javasandbox.compile;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryJavaCompilerTests {
+
+    private final InMemoryJavaCompiler javaCompiler = new InMemoryJavaCompiler();
+
+    @Test
+    void testCompileSuccess() {
+        CompileResult compileResult = javaCompiler.compile(
+                "public class Main { public static void main(String[] args) { System.out.println(1); } }");
+        assertTrue(compileResult.isSuccess());
+        assertTrue(compileResult.getClassBytes().containsKey("Main"));
+    }
+
+    @Test
+    void testCompileError() {
+        CompileResult compileResult = javaCompiler.compile(
+                "public class Main { public static void main(String[] args) { int a = \"1\"; } }");
+        assertFalse(compileResult.isSuccess());
+        assertTrue(compileResult.getMessage().startsWith("Main.java:1: error:"));
+        assertTrue(compileResult.getClassBytes().isEmpty());
+    }
+
+}
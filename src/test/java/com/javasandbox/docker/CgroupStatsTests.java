@@ -0,0 +1,64 @@
+package com.javasandbox.docker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CgroupStatsTests {
+
+    private static void write(Path dir, String file, String content) throws IOException {
+        Files.write(dir.resolve(file), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testUsageBetweenCaseBoundaries(@TempDir Path root) throws IOException {
+        Path dir = Files.createDirectories(root.resolve("system.slice/docker-abc.scope"));
+        write(dir, "cpu.stat", "usage_usec 1000000\nuser_usec 800000\nsystem_usec 200000\n");
+        write(dir, "memory.events", "low 0\nhigh 0\nmax 3\noom 1\noom_kill 1\n");
+        write(dir, "memory.peak", "4096\n");
+        assertNull(CgroupStats.locate(root.toString(), "other"));
+        CgroupStats cgroupStats = CgroupStats.locate(root.toString(), "abc");
+        try (CgroupStats.Sample sample = cgroupStats.start()) {
+            write(dir, "cpu.stat", "usage_usec 1250000\nuser_usec 1000000\nsystem_usec 250000\n");
+            write(dir, "memory.peak", "52428800\n");
+            CgroupStats.Usage usage = sample.finish();
+            assertEquals(250, usage.getCpuTime());
+            assertEquals(52428800L, usage.getMemory());
+            assertFalse(usage.isOomKilled());
+        }
+        try (CgroupStats.Sample sample = cgroupStats.start()) {
+            write(dir, "memory.events", "low 0\nhigh 0\nmax 9\noom 2\noom_kill 2\n");
+            write(dir, "memory.peak", "104857600\n");
+            assertTrue(sample.finish().isOomKilled());
+        }
+    }
+
+    @Test
+    void testSamplesCurrentWithoutPeakReset(@TempDir Path root) throws Exception {
+        // 没有可重置的memory.peak时，峰值取用例期间memory.current的最大值，不含之前的提交留下的峰值
+        Path dir = Files.createDirectories(root.resolve("docker/abc"));
+        write(dir, "cpu.stat", "usage_usec 0\n");
+        write(dir, "memory.events", "oom_kill 0\n");
+        write(dir, "memory.current", "4096\n");
+        CgroupStats cgroupStats = CgroupStats.locate(root.toString(), "abc");
+        try (CgroupStats.Sample sample = cgroupStats.start()) {
+            write(dir, "memory.current", "52428800\n");
+            Thread.sleep(200);
+            write(dir, "memory.current", "8192\n");
+            assertEquals(52428800L, sample.finish().getMemory());
+        }
+        try (CgroupStats.Sample sample = cgroupStats.start()) {
+            assertEquals(8192L, sample.finish().getMemory());
+        }
+    }
+
+}
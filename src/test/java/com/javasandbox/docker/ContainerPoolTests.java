@@ -0,0 +1,211 @@
+package com.javasandbox.docker;
+
+import cn.hutool.core.io.FileUtil;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.HostConfig;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.PhaseRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用模拟的DockerClient验证容器的复用、归还前清理与泄漏容器清理，不需要守护进程
+ */
+class ContainerPoolTests {
+
+    @TempDir
+    Path dir;
+
+    private final DockerClient dockerClient = mock(DockerClient.class, RETURNS_DEEP_STUBS);
+
+    private final CreateContainerCmd createCmd = mock(CreateContainerCmd.class, RETURNS_SELF);
+
+    private final ExecCreateCmd execCreateCmd = mock(ExecCreateCmd.class, RETURNS_SELF);
+
+    private final RemoveContainerCmd removeCmd = mock(RemoveContainerCmd.class, RETURNS_SELF);
+
+    private final ListContainersCmd listCmd = mock(ListContainersCmd.class, RETURNS_SELF);
+
+    // 最近一次创建容器时的容器名与标签
+    private final List<String> createdNames = new ArrayList<>();
+
+    private final Map<String, String> labels = new HashMap<>();
+
+    // 清空/tmp的退出码
+    private long resetExitCode = 0L;
+
+    private ContainerPool containerPool;
+
+    @BeforeEach
+    void setUp() {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getWorkspace().setRoot(dir.toString());
+        sandboxProperties.getDocker().setPoolSize(1);
+        sandboxProperties.getDocker().setCgroupRoot(dir.resolve("cgroup").toString());
+        sandboxProperties.getStartup().setCdsEnabled(false);
+
+        when(dockerClient.createContainerCmd(anyString())).thenReturn(createCmd);
+        when(createCmd.withName(anyString())).thenAnswer(invocation -> {
+            createdNames.add(invocation.getArgument(0));
+            return createCmd;
+        });
+        when(createCmd.withLabels(any())).thenAnswer(invocation -> {
+            labels.putAll(invocation.getArgument(0));
+            return createCmd;
+        });
+        when(createCmd.exec()).thenAnswer(invocation -> {
+            CreateContainerResponse response = new CreateContainerResponse();
+            response.setId("container-" + createdNames.size());
+            return response;
+        });
+        when(dockerClient.inspectContainerCmd(anyString()).exec().getState().getRunning()).thenReturn(true);
+
+        when(dockerClient.execCreateCmd(anyString())).thenReturn(execCreateCmd);
+        ExecCreateCmdResponse execResponse = mock(ExecCreateCmdResponse.class);
+        when(execResponse.getId()).thenReturn("exec");
+        // 命令对象按RETURNS_SELF模拟，泛型的exec先调用会返回自身，用doReturn设置返回值
+        doReturn(execResponse).when(execCreateCmd).exec();
+        ExecStartCmd execStartCmd = mock(ExecStartCmd.class, RETURNS_SELF);
+        when(dockerClient.execStartCmd("exec")).thenReturn(execStartCmd);
+        doAnswer(invocation -> {
+            ResultCallback<?> callback = invocation.getArgument(0);
+            callback.onComplete();
+            return callback;
+        }).when(execStartCmd).exec(any());
+        when(dockerClient.inspectExecCmd("exec").exec().getExitCodeLong()).thenAnswer(invocation -> resetExitCode);
+
+        when(dockerClient.removeContainerCmd(anyString())).thenReturn(removeCmd);
+        when(dockerClient.listContainersCmd()).thenReturn(listCmd);
+
+        containerPool = new ContainerPool(sandboxProperties, dockerClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        containerPool.close();
+    }
+
+    private static Container container(String id, String name, Map<String, String> labels) {
+        Container container = mock(Container.class);
+        when(container.getId()).thenReturn(id);
+        when(container.getNames()).thenReturn(new String[]{"/" + name});
+        when(container.getLabels()).thenReturn(labels);
+        when(container.getState()).thenReturn("running");
+        return container;
+    }
+
+    @Test
+    void testReleaseResetsBeforeReuse() {
+        PooledContainer container = containerPool.checkout(PhaseRecorder.DISABLED);
+        assertEquals(createdNames.get(0), container.getName());
+        // 上一次提交留下的字节码、期望输出与请求文件
+        File runDir = new File(container.hostRunDir("run"));
+        FileUtil.writeUtf8String("x", new File(container.hostClassDir("run"), "Main.class"));
+        FileUtil.writeUtf8String("secret", new File(runDir, "expected-0.txt"));
+        FileUtil.writeUtf8String("cases", container.hostRequestFile("run"));
+
+        containerPool.release(container, false);
+
+        assertFalse(runDir.exists());
+        assertFalse(new File(container.hostRequestFile("run")).exists());
+        assertTrue(new File(container.getWorkDir(), PooledContainer.RUNNER_DIR).isDirectory());
+        ArgumentCaptor<String> command = ArgumentCaptor.forClass(String.class);
+        verify(execCreateCmd).withCmd(command.capture());
+        assertTrue(command.getAllValues().get(2).startsWith("rm -rf /tmp/*"));
+        assertSame(container, containerPool.checkout(PhaseRecorder.DISABLED));
+        verify(dockerClient, never()).removeContainerCmd(anyString());
+    }
+
+    @Test
+    void testContainerCpuLimited() {
+        PooledContainer container = containerPool.checkout(PhaseRecorder.DISABLED);
+        ArgumentCaptor<HostConfig> hostConfig = ArgumentCaptor.forClass(HostConfig.class);
+        verify(createCmd).withHostConfig(hostConfig.capture());
+        // 按CFS配额限制为1核，CpuCount在Linux容器上不生效
+        assertEquals(1_000_000_000L, hostConfig.getValue().getNanoCPUs());
+        assertNull(hostConfig.getValue().getCpuCount());
+        containerPool.release(container, false);
+    }
+
+    @Test
+    void testResetFailureDestroysContainer() {
+        PooledContainer container = containerPool.checkout(PhaseRecorder.DISABLED);
+        resetExitCode = 1L;
+        containerPool.release(container, false);
+        verify(dockerClient).removeContainerCmd(container.getId());
+        assertFalse(new File(container.getWorkDir()).exists());
+        // 后台补充的新容器
+        assertNotSame(container, containerPool.checkout(PhaseRecorder.DISABLED));
+    }
+
+    @Test
+    void testTaintedContainerNotReset() {
+        PooledContainer container = containerPool.checkout(PhaseRecorder.DISABLED);
+        containerPool.release(container, true);
+        verify(dockerClient).removeContainerCmd(container.getId());
+        verify(dockerClient, never()).execCreateCmd(anyString());
+        assertNotSame(container, containerPool.checkout(PhaseRecorder.DISABLED));
+    }
+
+    @Test
+    void testReaperSkipsContainerBeingCreated() {
+        // 守护进程已创建容器、创建请求尚未返回时清理任务运行
+        when(createCmd.exec()).thenAnswer(invocation -> {
+            Map<String, String> containerLabels = new HashMap<>(labels);
+            doReturn(Arrays.asList(
+                    container("creating", createdNames.get(0), containerLabels),
+                    container("leaked", "java-sandbox-leaked", containerLabels))).when(listCmd).exec();
+            containerPool.reapLeaked(false);
+            CreateContainerResponse response = new CreateContainerResponse();
+            response.setId("creating");
+            return response;
+        });
+        PooledContainer container = containerPool.checkout(PhaseRecorder.DISABLED);
+        assertEquals("creating", container.getId());
+        verify(dockerClient, never()).removeContainerCmd("creating");
+        verify(dockerClient).removeContainerCmd("leaked");
+
+        // 池中的容器同样不会被清理
+        containerPool.release(container, false);
+        containerPool.reapLeaked(false);
+        verify(dockerClient, never()).removeContainerCmd("creating");
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.javasandbox.job;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchJudgeServiceTests {
+
+    @Test
+    void testIdenticalSourcesRunTogether() throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getBatch().setConcurrency(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> executed = new CopyOnWriteArrayList<>();
+        BatchJudgeService batchJudgeService = new BatchJudgeService(sandboxProperties, codeSandBoxDTO -> {
+            try {
+                blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            executed.add(codeSandBoxDTO.getCode());
+            return new CodeSandBoxResult();
+        }, new SimpleMeterRegistry());
+        Map<Integer, BatchResult> results = new ConcurrentHashMap<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicInteger completeCount = new AtomicInteger();
+        BatchJudgeService.Batch batch = batchJudgeService.open(batchResult -> results.put(batchResult.getIndex(), batchResult),
+                () -> {
+                    completeCount.incrementAndGet();
+                    completed.countDown();
+                });
+        // 第一个提交占住唯一的线程，其余提交按源码分组排队
+        for (String code : List.of("X", "A", "B", "A", "C", "A")) {
+            assertTrue(batch.add(dto(code)));
+        }
+        batch.close();
+        blocker.countDown();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("X", "A", "A", "A", "B", "C"), executed);
+        assertEquals(6, results.size());
+        assertEquals(1, completeCount.get());
+        batchJudgeService.close();
+    }
+
+    @Test
+    void testConcurrencyLimitAndFailures() throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getBatch().setConcurrency(2);
+        sandboxProperties.getBatch().setMaxSize(20);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        BatchJudgeService batchJudgeService = new BatchJudgeService(sandboxProperties, codeSandBoxDTO -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            if ("bad".equals(codeSandBoxDTO.getCode())) {
+                throw new IllegalStateException("沙箱繁忙");
+            }
+            return new CodeSandBoxResult();
+        }, new SimpleMeterRegistry());
+        Map<Integer, BatchResult> results = new ConcurrentHashMap<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        BatchJudgeService.Batch batch = batchJudgeService.open(batchResult -> results.put(batchResult.getIndex(), batchResult),
+                completed::countDown);
+        for (int i = 0; i < 19; i++) {
+            assertTrue(batch.add(dto(i == 7 ? "bad" : "code" + i)));
+        }
+        assertTrue(batch.fail("无法解析的提交"));
+        assertFalse(batch.add(dto("overflow")));
+        // 无法解析的提交同样计入批量上限
+        assertFalse(batch.fail("无法解析的提交"));
+        batch.close();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(20, results.size());
+        assertTrue(maxRunning.get() <= 2);
+        assertEquals("沙箱繁忙", results.get(7).getMessage());
+        assertNull(results.get(7).getResult());
+        assertEquals("无法解析的提交", results.get(19).getMessage());
+        batchJudgeService.close();
+    }
+
+    @Test
+    void testOverflowReportedAfterResults() throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getBatch().setMaxSize(2);
+        BatchJudgeService batchJudgeService = new BatchJudgeService(sandboxProperties,
+                codeSandBoxDTO -> new CodeSandBoxResult(), new SimpleMeterRegistry());
+        List<BatchResult> results = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        BatchJudgeService.Batch batch = batchJudgeService.open(results::add, completed::countDown);
+        assertTrue(batch.add(dto("a")));
+        assertTrue(batch.fail("无法解析的提交"));
+        assertFalse(batch.add(dto("b")));
+        batch.close("超出批量提交上限");
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        // 两个提交的结果之后是一行不对应提交的错误
+        assertEquals(3, results.size());
+        assertEquals(Set.of(0, 1), Set.of(results.get(0).getIndex(), results.get(1).getIndex()));
+        assertNull(results.get(2).getIndex());
+        assertEquals("超出批量提交上限", results.get(2).getMessage());
+        batchJudgeService.close();
+    }
+
+    private static CodeSandBoxDTO dto(String code) {
+        CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setCode(code);
+        return codeSandBoxDTO;
+    }
+
+}
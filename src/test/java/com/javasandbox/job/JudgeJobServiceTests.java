@@ -0,0 +1,59 @@
+package com.javasandbox.job;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.JobStateEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JudgeJobServiceTests {
+
+    @Test
+    void testPriorityAndQueueCapacity() throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getJob().setWorkers(1);
+        sandboxProperties.getJob().setQueueCapacity(3);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> executed = new CopyOnWriteArrayList<>();
+        JudgeJobService judgeJobService = new JudgeJobService(sandboxProperties, codeSandBoxDTO -> {
+            try {
+                started.countDown();
+                blocker.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            executed.add(codeSandBoxDTO.getCode());
+            return new CodeSandBoxResult();
+        }, new SimpleMeterRegistry());
+        // 第一个任务占住唯一的工作线程
+        judgeJobService.submit(dto("first"), 0);
+        started.await(5, TimeUnit.SECONDS);
+        judgeJobService.submit(dto("low"), 0);
+        judgeJobService.submit(dto("high"), 10);
+        JudgeJob last = judgeJobService.submit(dto("low2"), 0);
+        assertThrows(RejectedExecutionException.class, () -> judgeJobService.submit(dto("rejected"), 0));
+        blocker.countDown();
+        JudgeJob judgeJob = last.getDone().get(5, TimeUnit.SECONDS);
+        assertEquals(JobStateEnum.FINISHED, judgeJob.getState());
+        assertEquals(List.of("first", "high", "low", "low2"), executed);
+        judgeJobService.close();
+    }
+
+    private static CodeSandBoxDTO dto(String code) {
+        CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setCode(code);
+        return codeSandBoxDTO;
+    }
+
+}
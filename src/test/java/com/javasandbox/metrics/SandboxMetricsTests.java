@@ -0,0 +1,67 @@
+package com.javasandbox.metrics;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.SubmissionStateEnum;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SandboxMetricsTests {
+
+    @Test
+    void testRecordsPhasesByVerdict() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SandboxMetrics sandboxMetrics = new SandboxMetrics(new SandboxProperties(), meterRegistry);
+        PhaseRecorder recorder = sandboxMetrics.newRecorder(new CodeSandBoxDTO());
+        long start = recorder.start();
+        recorder.stop(SandboxPhaseEnum.COMPILE, start - 2_000_000L);
+        recorder.stop(SandboxPhaseEnum.EXEC, start - 1_000_000L);
+        recorder.stop(SandboxPhaseEnum.EXEC, start - 1_000_000L);
+        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+        codeSandBoxResult.setStatus(SubmissionStateEnum.WRONG_ANSWER.getValue());
+        sandboxMetrics.finish(SandboxMetrics.NATIVE, recorder, codeSandBoxResult);
+        Timer exec = meterRegistry.find("sandbox.phase")
+                .tags("sandbox", "native", "phase", "exec", "verdict", "wrong_answer").timer();
+        assertNotNull(exec);
+        assertEquals(1, exec.count());
+        assertTrue(exec.totalTime(TimeUnit.MILLISECONDS) >= 2);
+        assertNull(meterRegistry.find("sandbox.phase").tags("phase", "scan").timer());
+        assertEquals(1, meterRegistry.get("sandbox.run").tags("verdict", "wrong_answer").timer().count());
+        // 未要求明细时不返回
+        assertNull(codeSandBoxResult.getPhases());
+        // 抛出异常时没有结果
+        sandboxMetrics.finish(SandboxMetrics.DOCKER, sandboxMetrics.newRecorder(new CodeSandBoxDTO()), null);
+        assertEquals(1, meterRegistry.get("sandbox.run").tags("sandbox", "docker", "verdict", "error").timer().count());
+    }
+
+    @Test
+    void testDebugBreakdownWhenMetricsDisabled() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getMetrics().setEnabled(false);
+        SandboxMetrics sandboxMetrics = new SandboxMetrics(sandboxProperties, meterRegistry);
+        assertSame(PhaseRecorder.DISABLED, sandboxMetrics.newRecorder(new CodeSandBoxDTO()));
+        CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setDebug(true);
+        PhaseRecorder recorder = sandboxMetrics.newRecorder(codeSandBoxDTO);
+        long start = recorder.start();
+        recorder.stop(SandboxPhaseEnum.SCAN, start - 5_000L);
+        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+        codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+        sandboxMetrics.finish(SandboxMetrics.NATIVE, recorder, codeSandBoxResult);
+        assertEquals(1, codeSandBoxResult.getPhases().size());
+        assertTrue(codeSandBoxResult.getPhases().get("scan") >= 5);
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.javasandbox.namespace;
+
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.runner.CaseInput;
+import com.javasandbox.runner.RunnerMain;
+import com.javasandbox.runner.RunnerProcess;
+import com.javasandbox.runner.RunnerResult;
+import com.javasandbox.runner.RunnerStartup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NamespaceLauncherTests {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 编译用户代码、写入用例请求后在命名空间中启动批量运行器
+     */
+    private Process start(String code, String... inputs) throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getWorkspace().setRoot(dir.toString());
+        NamespaceLauncher launcher = new NamespaceLauncher(sandboxProperties,
+                new RunnerStartup(sandboxProperties, new SimpleMeterRegistry()));
+        launcher.init();
+        assumeTrue(launcher.isAvailable(), "当前系统不支持非特权用户命名空间");
+        File workDir = dir.resolve("ws").toFile();
+        File appDir = new File(workDir, "app");
+        new File(workDir, "root").mkdirs();
+        new InMemoryJavaCompiler().compile(code)
+                .writeClassFiles(new File(appDir, RunnerMain.CLASS_DIR).getAbsolutePath());
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(appDir, "cases.bin")))) {
+            for (String input : inputs) {
+                RunnerProcess.writeRequest(out, NamespaceLauncher.APP_DIR + "/" + RunnerMain.CLASS_DIR, CaseInput.ofArgs(input), null, 5000, 5000);
+            }
+        }
+        return launcher.start(workDir, NamespaceLauncher.APP_DIR + "/cases.bin", 10000,
+                new File(workDir, "stderr.txt"), null);
+    }
+
+    @Test
+    void testRunsCasesInNamespace() throws Exception {
+        // 沙箱内是独立的PID命名空间与主机名
+        Process process = start("public class Main { public static void main(String[] args) throws Exception {"
+                + " System.out.println(ProcessHandle.current().pid() + \" \" + args[0]); } }", "a", "b");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+            assertEquals(RunnerMain.READY, in.readInt());
+            RunnerResult first = RunnerProcess.readResult(in);
+            assertEquals(RunnerMain.STATUS_OK, first.getStatus());
+            // 运行器是命名空间内的1号进程
+            assertEquals("1 a", first.getStdio().trim());
+            assertEquals("1 b", RunnerProcess.readResult(in).getStdio().trim());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    void testCasesAfterParallelStreamStillRun() throws Exception {
+        // 第一个用例用过并行流（创建了公共线程池的线程），剩余用例照常执行
+        Process process = start("public class Main { public static void main(String[] args) {"
+                + " int n = Integer.parseInt(args[0]);"
+                + " System.out.println(n > 100 ? java.util.stream.IntStream.rangeClosed(1, n).parallel().sum() : n); } }",
+                "1000", "7");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+            assertEquals(RunnerMain.READY, in.readInt());
+            RunnerResult first = RunnerProcess.readResult(in);
+            assertEquals(RunnerMain.STATUS_OK, first.getStatus(), first.getErrorStdio());
+            assertEquals("500500", first.getStdio().trim());
+            RunnerResult second = RunnerProcess.readResult(in);
+            assertEquals(RunnerMain.STATUS_OK, second.getStatus(), second.getErrorStdio());
+            assertEquals("7", second.getStdio().trim());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.javasandbox.parallel;
+
+import com.javasandbox.config.SandboxProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaseSchedulerTests {
+
+    @Test
+    void testParallelResultsKeepCaseOrder() {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getParallel().setEnabled(true);
+        sandboxProperties.getParallel().setMaxPerSubmission(2);
+        sandboxProperties.getParallel().setCpus(Arrays.asList(0, 1, 2));
+        sandboxProperties.getParallel().setPinCpu(false);
+        CaseScheduler caseScheduler = new CaseScheduler(sandboxProperties);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> results = caseScheduler.runCases(6, (index, core) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            return index * 10;
+        }, result -> false);
+        assertEquals(Arrays.asList(0, 10, 20, 30, 40, 50), results);
+        // 同时执行的用例数不超过单次提交的上限
+        assertTrue(maxRunning.get() <= 2);
+        caseScheduler.close();
+    }
+
+    @Test
+    void testStopAfterFailure() {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        CaseScheduler caseScheduler = new CaseScheduler(sandboxProperties);
+        List<Integer> results = caseScheduler.runCases(4, (index, core) -> index, result -> result == 1);
+        assertEquals(Arrays.asList(0, 1), results.subList(0, 2));
+        assertNull(results.get(2));
+        assertNull(results.get(3));
+        caseScheduler.close();
+    }
+
+}
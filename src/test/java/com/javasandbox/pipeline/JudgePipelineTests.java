@@ -0,0 +1,154 @@
+package com.javasandbox.pipeline;
+
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.compile.CompiledClassCache;
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.PhaseRecorder;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.security.ForbiddenPatternScanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JudgePipelineTests {
+
+    private static final String CODE =
+            "public class Main { public static void main(String[] args) { System.out.println(%d); } }";
+
+    private static JudgePipeline newPipeline(SandboxProperties sandboxProperties) {
+        ForbiddenPatternScanner scanner = new ForbiddenPatternScanner(sandboxProperties);
+        scanner.init();
+        return new JudgePipeline(sandboxProperties, scanner, new CompiledClassCache(sandboxProperties),
+                new SimpleMeterRegistry());
+    }
+
+    private static CodeSandBoxDTO newDTO(String code) {
+        CodeSandBoxDTO codeSandBoxDTO = new CodeSandBoxDTO();
+        codeSandBoxDTO.setCode(code);
+        codeSandBoxDTO.setInput(Collections.singletonList("1"));
+        return codeSandBoxDTO;
+    }
+
+    /**
+     * 用例执行由调用方提供，准备阶段回调onPrepare
+     */
+    private static SandboxStages<String, String> stages(Runnable onPrepare, Runnable onExecute,
+                                                        AtomicBoolean cleaned) {
+        return new SandboxStages<String, String>() {
+            @Override
+            public String prepare(CodeSandBoxDTO codeSandBoxDTO, CompileResult compileResult, PhaseRecorder recorder) {
+                onPrepare.run();
+                return "workspace";
+            }
+
+            @Override
+            public String execute(CodeSandBoxDTO codeSandBoxDTO, String resource, PhaseRecorder recorder) {
+                onExecute.run();
+                return "output";
+            }
+
+            @Override
+            public CodeSandBoxResult judge(CodeSandBoxDTO codeSandBoxDTO, String results) {
+                CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+                codeSandBoxResult.setStatus(SubmissionStateEnum.ACCEPTED.getValue());
+                codeSandBoxResult.setOutput(Collections.singletonList(results));
+                return codeSandBoxResult;
+            }
+
+            @Override
+            public void cleanup(String resource, PhaseRecorder recorder) {
+                cleaned.set(true);
+            }
+        };
+    }
+
+    @Test
+    void testNextSubmissionCompilesWhileExecuting() throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getPipeline().getCompile().setThreads(1);
+        sandboxProperties.getPipeline().getExecute().setThreads(1);
+        JudgePipeline judgePipeline = newPipeline(sandboxProperties);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // 第一个提交在执行阶段等待第二个提交编译完成、进入准备阶段
+            CountDownLatch secondPrepared = new CountDownLatch(1);
+            AtomicBoolean overlapped = new AtomicBoolean();
+            Future<CodeSandBoxResult> first = callers.submit(() -> judgePipeline.run(newDTO(String.format(CODE, 1)),
+                    PhaseRecorder.DISABLED, stages(() -> { }, () -> {
+                        try {
+                            overlapped.set(secondPrepared.await(30, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, new AtomicBoolean())));
+            Future<CodeSandBoxResult> second = callers.submit(() -> judgePipeline.run(newDTO(String.format(CODE, 2)),
+                    PhaseRecorder.DISABLED, stages(secondPrepared::countDown, () -> { }, new AtomicBoolean())));
+            assertEquals(SubmissionStateEnum.ACCEPTED.getValue(), first.get(60, TimeUnit.SECONDS).getStatus());
+            assertEquals(SubmissionStateEnum.ACCEPTED.getValue(), second.get(60, TimeUnit.SECONDS).getStatus());
+            assertTrue(overlapped.get());
+        } finally {
+            callers.shutdownNow();
+            judgePipeline.close();
+        }
+    }
+
+    @Test
+    void testCompileErrorSkipsLaterStages() {
+        JudgePipeline judgePipeline = newPipeline(new SandboxProperties());
+        try {
+            AtomicBoolean prepared = new AtomicBoolean();
+            AtomicBoolean cleaned = new AtomicBoolean();
+            CodeSandBoxResult codeSandBoxResult = judgePipeline.run(newDTO("public class Main {"),
+                    PhaseRecorder.DISABLED, stages(() -> prepared.set(true), () -> { }, cleaned));
+            assertEquals(SubmissionStateEnum.COMPILE_ERROR.getValue(), codeSandBoxResult.getStatus());
+            assertFalse(prepared.get());
+            assertFalse(cleaned.get());
+        } finally {
+            judgePipeline.close();
+        }
+    }
+
+    @Test
+    void testCleanupRunsWhenExecuteFails() {
+        JudgePipeline judgePipeline = newPipeline(new SandboxProperties());
+        try {
+            AtomicBoolean cleaned = new AtomicBoolean();
+            IllegalStateException exception = assertThrows(IllegalStateException.class, () -> judgePipeline.run(
+                    newDTO(String.format(CODE, 1)), PhaseRecorder.DISABLED, stages(() -> { }, () -> {
+                        throw new IllegalStateException("沙箱繁忙");
+                    }, cleaned)));
+            assertEquals("沙箱繁忙", exception.getMessage());
+            assertTrue(cleaned.get());
+        } finally {
+            judgePipeline.close();
+        }
+    }
+
+    @Test
+    void testDisabledRunsInCallerThread() {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getPipeline().setEnabled(false);
+        JudgePipeline judgePipeline = newPipeline(sandboxProperties);
+        AtomicReference<Thread> executeThread = new AtomicReference<>();
+        judgePipeline.run(newDTO(String.format(CODE, 1)), PhaseRecorder.DISABLED,
+                stages(() -> { }, () -> executeThread.set(Thread.currentThread()), new AtomicBoolean()));
+        assertEquals(Thread.currentThread(), executeThread.get());
+        assertEquals(0, judgePipeline.getQueueDepth(PipelineStageEnum.EXECUTE));
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.model.InputModeEnum;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaseInputTests {
+
+    @Test
+    void testSmallInputInlined(@TempDir Path dir) {
+        CaseInput caseInput = CaseInput.of("1 2", null, 16, dir.toString(), "/app/run", 0);
+        assertArrayEquals("1 2".getBytes(StandardCharsets.UTF_8), caseInput.getStdin());
+        assertNull(caseInput.getStdinFile());
+        assertTrue(caseInput.getArgs().isEmpty());
+    }
+
+    @Test
+    void testLargeInputWrittenToFile(@TempDir Path dir) throws IOException {
+        String input = "1 2 3 4 5 6 7 8 9";
+        CaseInput caseInput = CaseInput.of(input, InputModeEnum.STDIN.getValue(), 8, dir.toString(), "/app/run", 3);
+        assertEquals(input, new String(Files.readAllBytes(caseInput.getStdinFile().toPath()), StandardCharsets.UTF_8));
+        // 运行器看到的是容器内的路径
+        assertEquals("/app/run/input-3.txt", caseInput.getStdinPath());
+        assertEquals(0, caseInput.getStdin().length);
+    }
+
+    @Test
+    void testArgsMode(@TempDir Path dir) {
+        CaseInput caseInput = CaseInput.of("1 2", InputModeEnum.ARGS.getValue(), 16, dir.toString(), "/app/run", 0);
+        assertEquals(Arrays.asList("1", "2"), caseInput.getArgs());
+        assertEquals(0, caseInput.getStdin().length);
+    }
+
+}
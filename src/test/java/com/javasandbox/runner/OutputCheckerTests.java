@@ -0,0 +1,65 @@
+package com.javasandbox.runner;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputCheckerTests {
+
+    private static boolean check(String expected, int mode, String... chunks) {
+        OutputChecker checker = new OutputChecker(expected.getBytes(StandardCharsets.UTF_8), mode, 1e-6);
+        for (String chunk : chunks) {
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            checker.write(bytes, 0, bytes.length);
+        }
+        return checker.finish();
+    }
+
+    @Test
+    void testExact() {
+        assertTrue(check("3\n", OutputChecker.MODE_EXACT, "3", "\n"));
+        assertFalse(check("3\n", OutputChecker.MODE_EXACT, "3"));
+        assertFalse(check("3\n", OutputChecker.MODE_EXACT, "3 \n"));
+    }
+
+    @Test
+    void testTrailingWhitespace() {
+        int mode = OutputChecker.MODE_TRAILING_WHITESPACE;
+        assertTrue(check("1 2\n3", mode, "1 2  \r\n", "3\n\n\n"));
+        assertTrue(check("a\n\n  b\n", mode, "a\n \n", "  b"));
+        // 行内与行首的空白仍需一致
+        assertFalse(check("1 2", mode, "1  2"));
+        assertFalse(check("a\nb", mode, "a\n b"));
+        assertFalse(check("a\nb", mode, "a\n"));
+        assertFalse(check("a", mode, "a\nb"));
+    }
+
+    @Test
+    void testTokenAndFloat() {
+        assertTrue(check("1 2\n3", OutputChecker.MODE_TOKEN, "1\n2 ", "  3"));
+        assertFalse(check("1 2 3", OutputChecker.MODE_TOKEN, "1 2"));
+        assertFalse(check("1 2", OutputChecker.MODE_TOKEN, "1 23"));
+        assertTrue(check("0.3333333 1e9", OutputChecker.MODE_FLOAT, "0.33333334 1000000000.5"));
+        assertFalse(check("0.5", OutputChecker.MODE_FLOAT, "0.51"));
+        assertFalse(check("abc", OutputChecker.MODE_FLOAT, "abd"));
+    }
+
+    @Test
+    void testStopsAtFirstMismatch() {
+        AtomicInteger calls = new AtomicInteger();
+        OutputChecker checker = new OutputChecker("12345".getBytes(StandardCharsets.UTF_8),
+                OutputChecker.MODE_EXACT, 0);
+        checker.setOnMismatch(calls::incrementAndGet);
+        byte[] bytes = "129999".getBytes(StandardCharsets.UTF_8);
+        checker.write(bytes, 0, bytes.length);
+        assertTrue(checker.isMismatch());
+        assertFalse(checker.finish());
+        assertEquals(1, calls.get());
+    }
+
+}
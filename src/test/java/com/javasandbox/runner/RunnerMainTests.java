@@ -0,0 +1,282 @@
+package com.javasandbox.runner;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.compile.CompileResult;
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.model.CompareModeEnum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在子进程中启动常驻运行器，按RunnerMain协议执行用例
+ */
+class RunnerMainTests {
+
+    private static final String ECHO = "import java.util.Scanner;\n"
+            + "public class Main { public static void main(String[] args) {\n"
+            + "    Scanner scanner = new Scanner(System.in);\n"
+            + "    System.out.println(scanner.nextInt() + scanner.nextInt());\n"
+            + "} }";
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger runIndex = new AtomicInteger();
+
+    private RunnerProcess runner;
+
+    @BeforeEach
+    void startRunner() throws Exception {
+        RunnerPool.extractRunnerClasses(dir.resolve("runner").toString());
+        runner = new RunnerProcess(startProcess(), null);
+        runner.awaitReady();
+    }
+
+    /**
+     * 启动运行器JVM，带请求文件路径时为批量模式
+     */
+    private Process startProcess(String... args) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Dfile.encoding=utf-8", "-Djava.security.manager=allow", "-cp", dir.resolve("runner").toString(),
+                RunnerMain.class.getName()));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    @AfterEach
+    void stopRunner() {
+        runner.destroy();
+    }
+
+    /**
+     * 编译并写入独立运行目录下的字节码目录后在运行器中执行
+     */
+    private RunnerResult run(String code, String stdin) throws Exception {
+        return run(code, stdin, newRunDir(), null);
+    }
+
+    private File newRunDir() {
+        return dir.resolve("run-" + runIndex.incrementAndGet()).toFile();
+    }
+
+    private RunnerResult run(String code, String stdin, File runDir, CaseAnswer caseAnswer) throws Exception {
+        String classDir = compile(code, runDir);
+        String hostDir = runDir.getAbsolutePath();
+        return runner.run(classDir, CaseInput.ofStdin(stdin, Integer.MAX_VALUE, hostDir, hostDir, 0),
+                caseAnswer, 5000L, 5000L);
+    }
+
+    /**
+     * 编译并写入运行目录下的字节码目录
+     */
+    private static String compile(String code, File runDir) {
+        CompileResult compileResult = new InMemoryJavaCompiler().compile(code);
+        assertTrue(compileResult.isSuccess(), compileResult.getMessage());
+        String classDir = new File(runDir, RunnerMain.CLASS_DIR).getAbsolutePath();
+        compileResult.writeClassFiles(classDir);
+        return classDir;
+    }
+
+    private static String main(String body) {
+        return "public class Main { public static void main(String[] args) throws Throwable {\n" + body + "\n} }";
+    }
+
+    @Test
+    void testRunnerIsReused() throws Exception {
+        RunnerResult first = run(ECHO, "1 2");
+        assertEquals(RunnerMain.STATUS_OK, first.getStatus(), first.getErrorStdio());
+        assertEquals("3", first.getStdio().trim());
+        assertFalse(first.isTainted());
+        long pid = runner.pid();
+        RunnerResult second = run(ECHO, "20 22");
+        assertEquals("42", second.getStdio().trim());
+        assertEquals(pid, runner.pid());
+        assertEquals(2, runner.getRuns());
+        assertFalse(runner.isTainted());
+    }
+
+    @Test
+    void testCommonLibrariesAllowed() throws Exception {
+        // 安全管理器不影响常用的JDK类（内部在特权代码块中使用受限权限）
+        RunnerResult runnerResult = run(main(
+                "java.util.List<Integer> list = new java.util.ArrayList<>(java.util.Arrays.asList(3, 1, 2));\n"
+                        + "list.sort((a, b) -> b - a);\n"
+                        + "System.out.println(list + \" \" + String.format(\"%.2f\", Math.PI)\n"
+                        + "    + \" \" + java.math.BigInteger.TWO.pow(70) + \" \" + java.time.LocalDate.of(2024, 2, 29)\n"
+                        + "    + \" \" + java.util.Arrays.stream(new int[]{1, 2, 3}).map(x -> x * x).sum());"), "");
+        assertEquals(RunnerMain.STATUS_OK, runnerResult.getStatus(), runnerResult.getErrorStdio());
+        assertEquals("[3, 2, 1] 3.14 1180591620717411303424 2024-02-29 14", runnerResult.getStdio().trim());
+        assertFalse(runnerResult.isTainted());
+    }
+
+    @Test
+    void testParentThreadGroupDenied() throws Exception {
+        RunnerResult runnerResult = run(main(
+                "new Thread(Thread.currentThread().getThreadGroup().getParent(), () -> { }).start();"), "");
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+        assertTrue(runnerResult.isTainted());
+    }
+
+    @Test
+    void testExecThroughMethodHandleDenied() throws Exception {
+        File marker = dir.resolve("marker").toFile();
+        RunnerResult runnerResult = run(main(
+                "java.lang.invoke.MethodHandle exec = java.lang.invoke.MethodHandles.publicLookup().findVirtual(\n"
+                        + "    Runtime.class, \"exec\", java.lang.invoke.MethodType.methodType(Process.class, String.class));\n"
+                        + "exec.invoke(Runtime.getRuntime(), \"touch " + marker.getAbsolutePath() + "\");"), "");
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+        Thread.sleep(200);
+        assertFalse(marker.exists());
+    }
+
+    @Test
+    void testFileDescriptorDenied() throws Exception {
+        RunnerResult runnerResult = run(main(
+                "new java.io.FileOutputStream(java.io.FileDescriptor.out).write(new byte[]{0, 0, 0, 0});"), "");
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+    }
+
+    @Test
+    void testSystemClassLoaderDenied() throws Exception {
+        RunnerResult runnerResult = run(main("ClassLoader.getSystemClassLoader();"), "");
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+    }
+
+    @Test
+    void testSuppressAccessChecksDenied() throws Exception {
+        RunnerResult runnerResult = run(main(
+                "java.lang.reflect.Field field = Thread.class.getDeclaredField(\"name\");\n"
+                        + "field.setAccessible(true);"), "");
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+    }
+
+    @Test
+    void testExpectedOutputNotOnClasspath() throws Exception {
+        // 期望输出文件写在运行目录中，用户代码既不能从classpath加载也不能直接读取
+        File runDir = newRunDir();
+        File expectedFile = new File(runDir, "expected-0.txt");
+        FileUtil.writeUtf8String("hidden", expectedFile);
+        CaseAnswer caseAnswer = new CaseAnswer();
+        caseAnswer.setCompareMode(CompareModeEnum.TRAILING_WHITESPACE.getValue());
+        caseAnswer.setExpectedFile(expectedFile);
+        caseAnswer.setExpectedPath(expectedFile.getAbsolutePath());
+        RunnerResult runnerResult = run(main(
+                "java.io.InputStream in = Main.class.getResourceAsStream(\"/expected-0.txt\");\n"
+                        + "System.out.print(in == null ? \"hidden\" : \"leaked \" + new String(in.readAllBytes()));"),
+                "", runDir, caseAnswer);
+        assertEquals(RunnerMain.STATUS_OK, runnerResult.getStatus(), runnerResult.getErrorStdio());
+
+        runnerResult = run(main("new java.io.FileInputStream(\"" + expectedFile.getAbsolutePath() + "\").read();"),
+                "", runDir, caseAnswer);
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+    }
+
+    @Test
+    void testSiblingOfClassDirDenied() throws Exception {
+        // 与字节码目录同前缀的文件（如Docker中的/app/runId.cases）不在允许读取的范围内
+        File runDir = newRunDir();
+        File requestFile = new File(runDir, RunnerMain.CLASS_DIR + ".cases");
+        FileUtil.writeUtf8String("request", requestFile);
+        RunnerResult runnerResult = run(main("new java.io.FileInputStream(\"" + requestFile.getAbsolutePath()
+                + "\").read();"), "", runDir, null);
+        assertEquals(RunnerMain.STATUS_SECURITY, runnerResult.getStatus());
+    }
+
+    @Test
+    void testUserThreadsRecycleRunner() throws Exception {
+        // 用例线程组内的线程可以正常使用，但运行器不再复用
+        RunnerResult runnerResult = run(main(
+                "java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(2);\n"
+                        + "System.out.println(pool.submit(() -> 21 * 2).get());\n"
+                        + "pool.shutdown();\n"
+                        + "System.out.println(java.util.stream.IntStream.rangeClosed(1, 1000).parallel().sum());"),
+                "");
+        assertEquals(RunnerMain.STATUS_OK, runnerResult.getStatus(), runnerResult.getErrorStdio());
+        assertEquals("42\n500500", runnerResult.getStdio().trim());
+        assertTrue(runnerResult.isTainted());
+    }
+
+    @Test
+    void testBatchContinuesAfterUserThreads() throws Exception {
+        // 批量模式下第一个用例用过并行流，后续用例照常执行
+        File runDir = newRunDir();
+        String classDir = compile("import java.util.Scanner;\n"
+                + "public class Main { public static void main(String[] args) {\n"
+                + "    int n = new Scanner(System.in).nextInt();\n"
+                + "    System.out.println(n > 100 ? java.util.stream.IntStream.rangeClosed(1, n).parallel().sum() : n);\n"
+                + "} }", runDir);
+        String hostDir = runDir.getAbsolutePath();
+        File requestFile = new File(runDir, "cases.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(requestFile))) {
+            String[] inputs = {"1000", "7"};
+            for (int index = 0; index < inputs.length; index++) {
+                RunnerProcess.writeRequest(out, classDir,
+                        CaseInput.ofStdin(inputs[index], Integer.MAX_VALUE, hostDir, hostDir, index), null, 5000L, 5000L);
+            }
+        }
+        Process process = startProcess(requestFile.getAbsolutePath());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+            assertEquals(RunnerMain.READY, in.readInt());
+            RunnerResult first = RunnerProcess.readResult(in);
+            assertEquals(RunnerMain.STATUS_OK, first.getStatus(), first.getErrorStdio());
+            assertEquals("500500", first.getStdio().trim());
+            assertTrue(first.isTainted());
+            RunnerResult second = RunnerProcess.readResult(in);
+            assertEquals(RunnerMain.STATUS_OK, second.getStatus(), second.getErrorStdio());
+            assertEquals("7", second.getStdio().trim());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    void testRefusesToStartWithoutSecurityManager() throws Exception {
+        // 常驻模式没有外层隔离，SecurityManager不可用时不发送READY，直接退出
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Djava.security.manager=disallow", "-cp", dir.resolve("runner").toString(),
+                RunnerMain.class.getName())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try (DataInputStream in = new DataInputStream(process.getInputStream())) {
+            assertThrows(EOFException.class, in::readInt);
+            assertEquals(1, process.waitFor());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    void testTaintedRunnerExits() throws Exception {
+        RunnerResult runnerResult = run(main("Thread thread = new Thread(() -> { });\n"
+                + "thread.setDaemon(true);\n"
+                + "thread.start();\n"
+                + "thread.join();"), "");
+        assertEquals(RunnerMain.STATUS_OK, runnerResult.getStatus());
+        assertTrue(runnerResult.isTainted());
+        assertTrue(runner.isTainted());
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.cgroup.CgroupPool;
+import com.javasandbox.config.SandboxProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RunnerPoolTests {
+
+    @Test
+    void testRetriesFailedStart(@TempDir Path dir) {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getWorkspace().setRoot(dir.toString());
+        sandboxProperties.getCgroup().setEnabled(false);
+        SandboxProperties.RunnerPool config = sandboxProperties.getRunnerPool();
+        config.setSize(1);
+        config.setBorrowTimeout(300L);
+        // 堆上限过小，JVM无法启动
+        config.setJvmOptions(new ArrayList<>(Collections.singletonList("-Xmx1k")));
+        RunnerPool runnerPool = new RunnerPool(sandboxProperties, new CgroupPool(sandboxProperties),
+                new RunnerStartup(sandboxProperties, new SimpleMeterRegistry()));
+        runnerPool.init();
+        try {
+            assertNull(runnerPool.borrow());
+            // 启动条件恢复后，退避重试补回运行器
+            config.setJvmOptions(new ArrayList<>(Collections.singletonList("-XX:+UseSerialGC")));
+            config.setBorrowTimeout(10000L);
+            RunnerProcess runner = runnerPool.borrow();
+            assertNotNull(runner);
+            runnerPool.release(runner);
+        } finally {
+            runnerPool.close();
+        }
+    }
+
+}
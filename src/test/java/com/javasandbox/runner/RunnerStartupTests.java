@@ -0,0 +1,54 @@
+package com.javasandbox.runner;
+
+import com.javasandbox.config.SandboxProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunnerStartupTests {
+
+    @Test
+    void testGeneratesArchiveAndMeasures(@TempDir Path dir) throws Exception {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getWorkspace().setRoot(dir.toString());
+        sandboxProperties.getStartup().setMeasureRuns(1);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RunnerStartup runnerStartup = new RunnerStartup(sandboxProperties, meterRegistry);
+        try {
+            runnerStartup.init();
+            long deadline = System.currentTimeMillis() + 60000;
+            while (runnerStartup.getTunedStartup() < 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            assertTrue(runnerStartup.isArchiveReady());
+            assertTrue(runnerStartup.getDefaultStartup() > 0);
+            assertTrue(meterRegistry.get("sandbox.runner.startup").tag("profile", "tuned").gauge().value() > 0);
+            // 强制使用归档，归档不可用时JVM直接报错退出
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"));
+            command.addAll(runnerStartup.getColdStartOptions());
+            command.addAll(Arrays.asList("-Xshare:on", "-Djava.security.manager=allow",
+                    "-cp", runnerStartup.getCdsDir() + File.separator + "runner", RunnerMain.class.getName(),
+                    runnerStartup.getCdsDir() + File.separator + "train.cases"));
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+        } finally {
+            runnerStartup.close();
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.javasandbox.sandbox;
+
+import com.javasandbox.config.SandboxProperties;
+import com.javasandbox.metrics.SandboxMetrics;
+import com.javasandbox.model.CodeSandBoxDTO;
+import com.javasandbox.model.CodeSandBoxResult;
+import com.javasandbox.model.JudgeInfo;
+import com.javasandbox.model.SubmissionStateEnum;
+import com.javasandbox.security.ForbiddenPatternScanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class ResultCacheTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ResultCache newCache() {
+        return newCache(new SandboxProperties());
+    }
+
+    private ResultCache newCache(SandboxProperties sandboxProperties) {
+        sandboxProperties.getResultCache().setEnabled(true);
+        sandboxProperties.getResultCache().setMaxEntries(2);
+        ForbiddenPatternScanner scanner = new ForbiddenPatternScanner(sandboxProperties);
+        scanner.init();
+        return new ResultCache(sandboxProperties, scanner, meterRegistry);
+    }
+
+    private static CodeSandBoxDTO newDTO(String code) {
+        return CodeSandBoxDTO.builder().code(code).input(Arrays.asList("1 2", "3 4")).language(1).build();
+    }
+
+    private static CodeSandBoxResult newResult(int status, long time) {
+        CodeSandBoxResult codeSandBoxResult = new CodeSandBoxResult();
+        codeSandBoxResult.setStatus(status);
+        codeSandBoxResult.setOutput(Collections.singletonList("3"));
+        codeSandBoxResult.setJudgeInfo(new JudgeInfo(1024L, time, time));
+        return codeSandBoxResult;
+    }
+
+    @Test
+    void testHitSkipsExecution() {
+        ResultCache resultCache = newCache();
+        AtomicInteger runs = new AtomicInteger();
+        CodeSandBoxResult first = resultCache.runCode(SandboxMetrics.NATIVE, newDTO("a"), dto -> {
+            runs.incrementAndGet();
+            return newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10);
+        });
+        CodeSandBoxResult second = resultCache.runCode(SandboxMetrics.NATIVE, newDTO("a"), dto -> {
+            runs.incrementAndGet();
+            return newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10);
+        });
+        assertEquals(1, runs.get());
+        assertEquals(first.getOutput(), second.getOutput());
+        assertNotSame(first, second);
+        assertEquals(1, meterRegistry.get("sandbox.result.cache").tags("result", "hit").counter().count());
+        // 沙箱类型、限制不同时分开缓存
+        assertNotEquals(resultCache.cacheKey(SandboxMetrics.NATIVE, newDTO("a")),
+                resultCache.cacheKey(SandboxMetrics.DOCKER, newDTO("a")));
+        CodeSandBoxDTO limited = newDTO("a");
+        limited.setTimeLimit(1000L);
+        assertNotEquals(resultCache.cacheKey(SandboxMetrics.NATIVE, newDTO("a")),
+                resultCache.cacheKey(SandboxMetrics.NATIVE, limited));
+    }
+
+    @Test
+    void testKeyCoversRuntimeConfig() {
+        String key = newCache().cacheKey(SandboxMetrics.NATIVE, newDTO("a"));
+        List<Consumer<SandboxProperties>> changes = Arrays.asList(
+                properties -> properties.getNamespace().setJvmOptions(Collections.singletonList("-Xmx32m")),
+                properties -> properties.getNamespace().setFileSizeLimit(1024L),
+                properties -> properties.getCgroup().setPidsLimit(8),
+                properties -> properties.getRunnerPool().setJvmOptions(Collections.singletonList("-Xmx32m")),
+                properties -> properties.getStartup().setJvmOptions(Collections.singletonList("-Xint")),
+                properties -> properties.getScan().getMethods().add("java.lang.Math.abs"));
+        for (Consumer<SandboxProperties> change : changes) {
+            SandboxProperties sandboxProperties = new SandboxProperties();
+            change.accept(sandboxProperties);
+            assertNotEquals(key, newCache(sandboxProperties).cacheKey(SandboxMetrics.NATIVE, newDTO("a")));
+        }
+        // 规则顺序不影响key
+        SandboxProperties reordered = new SandboxProperties();
+        Collections.reverse(reordered.getScan().getClasses());
+        assertEquals(key, newCache(reordered).cacheKey(SandboxMetrics.NATIVE, newDTO("a")));
+    }
+
+    @Test
+    void testSkipsNondeterministicVerdicts() {
+        ResultCache resultCache = newCache();
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            resultCache.runCode(SandboxMetrics.NATIVE, newDTO("tle"), dto -> {
+                runs.incrementAndGet();
+                return newResult(SubmissionStateEnum.TIME_LIMIT_EXCEEDED.getValue(), 3000);
+            });
+            // 默认CPU时间限制3000ms，2900ms接近限制
+            resultCache.runCode(SandboxMetrics.NATIVE, newDTO("slow"), dto -> {
+                runs.incrementAndGet();
+                return newResult(SubmissionStateEnum.ACCEPTED.getValue(), 2900);
+            });
+            // 执行器中途退出得到的运行错误
+            resultCache.runCode(SandboxMetrics.NATIVE, newDTO("halted"), dto -> {
+                runs.incrementAndGet();
+                CodeSandBoxResult codeSandBoxResult = newResult(SubmissionStateEnum.RUNTIME_ERROR.getValue(), 10);
+                codeSandBoxResult.setIncomplete(true);
+                return codeSandBoxResult;
+            });
+        }
+        assertEquals(6, runs.get());
+        assertEquals(0, resultCache.size());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        ResultCache resultCache = newCache();
+        for (String code : Arrays.asList("a", "b", "a", "c")) {
+            resultCache.runCode(SandboxMetrics.NATIVE, newDTO(code),
+                    dto -> newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10));
+        }
+        assertEquals(2, resultCache.size());
+        AtomicInteger runs = new AtomicInteger();
+        for (String code : Arrays.asList("a", "b")) {
+            resultCache.runCode(SandboxMetrics.NATIVE, newDTO(code), dto -> {
+                runs.incrementAndGet();
+                return newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10);
+            });
+        }
+        // a最近访问过被保留，b被淘汰
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testConcurrentIdenticalRequestsRunOnce() throws Exception {
+        ResultCache resultCache = newCache();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<CodeSandBoxResult> leader = executor.submit(() -> resultCache.runCode(SandboxMetrics.NATIVE,
+                    newDTO("a"), dto -> {
+                        runs.incrementAndGet();
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        CodeSandBoxResult codeSandBoxResult = newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10);
+                        codeSandBoxResult.setOutput(new ArrayList<>(codeSandBoxResult.getOutput()));
+                        return codeSandBoxResult;
+                    }));
+            started.await(5, TimeUnit.SECONDS);
+            List<Future<CodeSandBoxResult>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(executor.submit(() -> resultCache.runCode(SandboxMetrics.NATIVE, newDTO("a"), dto -> {
+                    runs.incrementAndGet();
+                    return newResult(SubmissionStateEnum.ACCEPTED.getValue(), 10);
+                })));
+            }
+            release.countDown();
+            CodeSandBoxResult leaderResult = leader.get(5, TimeUnit.SECONDS);
+            assertEquals(SubmissionStateEnum.ACCEPTED.getValue(), leaderResult.getStatus());
+            // 执行者的调用方修改自己的结果，不影响等待者拿到的结果
+            leaderResult.getOutput().set(0, "changed");
+            leaderResult.setStatus(SubmissionStateEnum.WRONG_ANSWER.getValue());
+            for (Future<CodeSandBoxResult> follower : followers) {
+                CodeSandBoxResult followerResult = follower.get(5, TimeUnit.SECONDS);
+                assertNotSame(leaderResult, followerResult);
+                assertEquals(Collections.singletonList("3"), followerResult.getOutput());
+                assertEquals(SubmissionStateEnum.ACCEPTED.getValue(), followerResult.getStatus());
+            }
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.javasandbox.security;
+
+import com.javasandbox.compile.InMemoryJavaCompiler;
+import com.javasandbox.config.SandboxProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ForbiddenPatternScannerTests {
+
+    private final InMemoryJavaCompiler javaCompiler = new InMemoryJavaCompiler();
+
+    private ForbiddenPatternScanner newScanner(SandboxProperties sandboxProperties) {
+        ForbiddenPatternScanner scanner = new ForbiddenPatternScanner(sandboxProperties);
+        scanner.init();
+        return scanner;
+    }
+
+    private Map<String, byte[]> compile(String body) {
+        return javaCompiler.compile("public class Main { public static void main(String[] args) throws Exception { "
+                + body + " } }").getClassBytes();
+    }
+
+    @Test
+    void testMatcherFindsFirstPattern() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("he", "she", "hers", "his"));
+        assertEquals("she", matcher.match("ushers"));
+        assertEquals("his", matcher.match("this"));
+        assertNull(matcher.match("hello".substring(1)));
+    }
+
+    @Test
+    void testBytecodeScanIgnoresSourceTricks() {
+        ForbiddenPatternScanner scanner = newScanner(new SandboxProperties());
+        // 源码中拼接类名绕过敏感词，常量池中仍然留下Class.forName
+        assertEquals("java.lang.Class.forName", scanner.scanBytecode(compile(
+                "System.out.println(Class.forName(\"java.io.Fi\" + \"le\"));")));
+        assertEquals("java.lang.Runtime.exec", scanner.scanBytecode(compile("Runtime.getRuntime().exec(\"ls\");")));
+        assertEquals("java.lang.ProcessBuilder", scanner.scanBytecode(compile("new ProcessBuilder(\"ls\");")));
+        assertEquals("java.io.FileInputStream", scanner.scanBytecode(compile(
+                "new java.io.FileInputStream(\"/etc/passwd\").close();")));
+        assertNull(scanner.scanBytecode(compile(
+                "java.util.Arrays.asList(1L, 2L).forEach(x -> System.out.println(x + 1.5));")));
+    }
+
+    @Test
+    void testBytecodeScanBlocksReflectionBypasses() {
+        ForbiddenPatternScanner scanner = newScanner(new SandboxProperties());
+        // 类加载器按拼接的类名加载Runtime
+        assertEquals("java.lang.ClassLoader", scanner.scanBytecode(compile(
+                "ClassLoader.getSystemClassLoader().loadClass(\"java.lang.Run\" + \"time\");")));
+        assertEquals("java.lang.Class.getClassLoader", scanner.scanBytecode(compile(
+                "System.out.println(Main.class.getClassLoader());")));
+        // 方法句柄按名查找Runtime.exec
+        assertEquals("java.lang.invoke.MethodHandles.publicLookup", scanner.scanBytecode(compile(
+                "System.out.println(java.lang.invoke.MethodHandles.publicLookup().findVirtual(Object.class,"
+                        + " \"hashCode\", java.lang.invoke.MethodType.methodType(int.class)));")));
+        assertEquals("java.lang.invoke.MethodHandle", scanner.scanBytecode(compile(
+                "java.lang.invoke.MethodHandle handle = null; System.out.println(handle.type());")));
+        // 线程与线程组构造，包括继承Thread
+        assertEquals("java.lang.Thread.<init>", scanner.scanBytecode(compile("new Thread(() -> { }).start();")));
+        assertEquals("java.lang.Thread.<init>", scanner.scanBytecode(javaCompiler.compile(
+                "public class Main extends Thread { public static void main(String[] args) { new Main().start(); } }")
+                .getClassBytes()));
+        assertEquals("java.lang.ThreadGroup.<init>", scanner.scanBytecode(compile("new ThreadGroup(\"g\");")));
+        // 标准输出的文件描述符
+        assertEquals("java.io.FileDescriptor", scanner.scanBytecode(compile(
+                "System.out.println(java.io.FileDescriptor.out.valid());")));
+    }
+
+    @Test
+    void testBytecodeScanAllowsLambdasAndConcat() {
+        // lambda、方法引用与字符串拼接编译后引用MethodHandles$Lookup，不能被方法句柄规则误伤
+        ForbiddenPatternScanner scanner = newScanner(new SandboxProperties());
+        assertNull(scanner.scanBytecode(compile(
+                "java.util.function.Function<Integer, String> f = String::valueOf;\n"
+                        + "Thread.sleep(1);\n"
+                        + "System.out.println(f.apply(1) + \"-\" + args.length + Thread.currentThread().getName()\n"
+                        + "    + java.util.stream.IntStream.range(0, 3).parallel().map(x -> x * 2).sum());")));
+    }
+
+    @Test
+    void testReloadFromRulesFile(@TempDir Path dir) throws IOException {
+        Path rulesFile = dir.resolve("rules.txt");
+        Files.write(rulesFile, Arrays.asList("word:Thread", "method:java.lang.Math.abs"), StandardCharsets.UTF_8);
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getScan().setRulesFile(rulesFile.toString());
+        ForbiddenPatternScanner scanner = newScanner(sandboxProperties);
+        assertNull(scanner.scanSource("new File(\"a\")"));
+        assertEquals("Thread", scanner.scanSource("new Thread()"));
+        assertEquals("java.lang.Math.abs", scanner.scanBytecode(compile("System.out.println(Math.abs(-1));")));
+        Files.write(rulesFile, Arrays.asList("word:File"), StandardCharsets.UTF_8);
+        scanner.reload();
+        assertEquals("File", scanner.scanSource("new File(\"a\")"));
+        assertNull(scanner.scanBytecode(compile("System.out.println(Math.abs(-1));")));
+        scanner.close();
+    }
+
+}
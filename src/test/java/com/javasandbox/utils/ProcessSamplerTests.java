@@ -0,0 +1,46 @@
+package com.javasandbox.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledOnOs(OS.LINUX)
+class ProcessSamplerTests {
+
+    @Test
+    void testWatchReportsPeakAndEnforcesMemoryLimit() throws Exception {
+        Process process = new ProcessBuilder("sleep", "1").start();
+        ProcessSampler.ProcessWatch processWatch = ProcessSampler.watch(process, 0L, 0L);
+        process.waitFor();
+        processWatch.close();
+        assertTrue(processWatch.getPeakMemory() > 0);
+        assertFalse(processWatch.isMemoryExceeded());
+        // 上限小于进程本身的常驻内存，采样后立即被结束
+        process = new ProcessBuilder("sleep", "10").start();
+        processWatch = ProcessSampler.watch(process, 1L, 0L);
+        assertTrue(process.waitFor() != 0);
+        processWatch.close();
+        assertTrue(processWatch.isMemoryExceeded());
+    }
+
+    @Test
+    void testCpuLimitIsSeparateFromWallTime() throws Exception {
+        // 空闲等待不消耗CPU时间
+        Process process = new ProcessBuilder("sleep", "1").start();
+        ProcessSampler.ProcessWatch processWatch = ProcessSampler.watch(process, 0L, 200L);
+        assertTrue(process.waitFor() == 0);
+        processWatch.close();
+        assertFalse(processWatch.isCpuExceeded());
+        // 忙循环超出CPU时间限制后被结束
+        process = new ProcessBuilder("sh", "-c", "while :; do :; done").start();
+        processWatch = ProcessSampler.watch(process, 0L, 200L);
+        assertTrue(process.waitFor() != 0);
+        processWatch.close();
+        assertTrue(processWatch.isCpuExceeded());
+        assertTrue(processWatch.getCpuTime() >= 200L);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.javasandbox.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledOnOs(OS.LINUX)
+class ProcessTimeoutUtilTests {
+
+    @Test
+    void testExitedProcessIsNotTimedOut() throws Exception {
+        Process process = new ProcessBuilder("true").start();
+        ProcessTimeoutUtil.Deadline deadline = ProcessTimeoutUtil.watch(process, 500L);
+        process.waitFor();
+        Thread.sleep(700L);
+        assertFalse(deadline.isTimedOut());
+    }
+
+    @Test
+    void testTimeoutKillsProcessTreeIgnoringTerm() throws Exception {
+        // 父子进程都忽略SIGTERM，宽限期后被强制结束
+        Process process = new ProcessBuilder("sh", "-c", "trap '' TERM; sh -c \"trap '' TERM; sleep 30\" & wait")
+                .start();
+        Thread.sleep(200L);
+        ProcessHandle child = process.descendants().findFirst().orElseThrow(IllegalStateException::new);
+        ProcessTimeoutUtil.Deadline deadline = ProcessTimeoutUtil.watch(process, 100L);
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(deadline.isTimedOut());
+        assertTrue(child.onExit().get(5, TimeUnit.SECONDS) != null);
+        assertFalse(child.isAlive());
+    }
+
+}
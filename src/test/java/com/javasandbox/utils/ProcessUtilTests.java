@@ -0,0 +1,37 @@
+package com.javasandbox.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledOnOs(OS.LINUX)
+class ProcessUtilTests {
+
+    @Test
+    void testDrainBothStreamsBeyondPipeBuffer() throws Exception {
+        // 两个输出流都远超管道缓冲区，顺序读取会互相阻塞
+        Process process = new ProcessBuilder("sh", "-c",
+                "head -c 300000 /dev/zero | tr '\\0' e >&2; head -c 300000 /dev/zero | tr '\\0' o").start();
+        CmdOutResult cmdOutResult = ProcessUtil.getCmdOutput(process, 1024 * 1024, StandardCharsets.UTF_8);
+        assertEquals(0, cmdOutResult.getFinished());
+        assertEquals(300000, cmdOutResult.getStdio().length());
+        assertEquals(300000, cmdOutResult.getErrorStdio().length());
+        assertFalse(cmdOutResult.isOutputExceeded());
+    }
+
+    @Test
+    void testOutputLimitKillsProcess() throws Exception {
+        Process process = new ProcessBuilder("sh", "-c", "while true; do echo 0123456789; done").start();
+        CmdOutResult cmdOutResult = ProcessUtil.getCmdOutput(process, 64 * 1024, StandardCharsets.UTF_8);
+        assertTrue(cmdOutResult.isOutputExceeded());
+        assertTrue(cmdOutResult.getStdio().length() <= 64 * 1024);
+        assertFalse(process.isAlive());
+    }
+
+}
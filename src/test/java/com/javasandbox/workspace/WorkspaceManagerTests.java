@@ -0,0 +1,87 @@
+package com.javasandbox.workspace;
+
+import cn.hutool.core.io.FileUtil;
+import com.javasandbox.config.SandboxProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkspaceManagerTests {
+
+    private static WorkspaceManager newManager(Path root, long maxBytes) {
+        SandboxProperties sandboxProperties = new SandboxProperties();
+        sandboxProperties.getWorkspace().setRoot(root.toString());
+        sandboxProperties.getWorkspace().setMaxBytes(maxBytes);
+        WorkspaceManager workspaceManager = new WorkspaceManager(sandboxProperties, new SimpleMeterRegistry());
+        workspaceManager.init();
+        return workspaceManager;
+    }
+
+    private static void waitIdle(WorkspaceManager workspaceManager) throws InterruptedException {
+        for (int i = 0; i < 100 && workspaceManager.getIdleCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testReusesCleanedDirectory(@TempDir Path root) throws InterruptedException {
+        // 上次运行遗留的工作目录在启动时清理，其他目录不受影响
+        Path instanceRoot = root.resolve(String.valueOf(ProcessHandle.current().pid()));
+        File leaked = FileUtil.mkdir(instanceRoot.resolve("ws-leaked").toFile());
+        File runner = FileUtil.mkdir(instanceRoot.resolve("runner").toFile());
+        WorkspaceManager workspaceManager = newManager(root, Long.MAX_VALUE);
+        assertEquals(instanceRoot.toFile(), workspaceManager.getRoot());
+        assertFalse(leaked.exists());
+        assertTrue(runner.exists());
+        Workspace workspace = workspaceManager.acquire();
+        File dir = workspace.getDir();
+        FileUtil.writeString("class", new File(dir, "Main.class"), StandardCharsets.UTF_8);
+        workspace.close();
+        waitIdle(workspaceManager);
+        assertTrue(dir.isDirectory());
+        assertEquals(0, dir.list().length);
+        assertEquals(dir, workspaceManager.acquire().getDir());
+        workspaceManager.close();
+    }
+
+    @Test
+    void testReapsOnlyExitedInstances(@TempDir Path root) throws Exception {
+        // 同一根目录下其他仍在运行的实例的工作目录保留，进程已退出的实例目录删除
+        Process other = new ProcessBuilder("sleep", "30").start();
+        try {
+            File live = FileUtil.mkdir(root.resolve(String.valueOf(other.pid())).resolve("ws-1-1").toFile());
+            File exited = FileUtil.mkdir(root.resolve("999999999").resolve("ws-1-1").toFile());
+            WorkspaceManager workspaceManager = newManager(root, Long.MAX_VALUE);
+            assertTrue(live.exists());
+            assertFalse(exited.getParentFile().exists());
+            other.destroyForcibly().waitFor();
+            workspaceManager.reap();
+            assertFalse(live.getParentFile().exists());
+            assertTrue(workspaceManager.getRoot().isDirectory());
+            workspaceManager.close();
+        } finally {
+            other.destroyForcibly();
+        }
+    }
+
+    @Test
+    void testRejectsWhenOverQuota(@TempDir Path root) {
+        WorkspaceManager workspaceManager = newManager(root, 16);
+        Workspace workspace = workspaceManager.acquire();
+        FileUtil.writeString("0123456789abcdefg", new File(workspace.getDir(), "input-0.txt"),
+                StandardCharsets.UTF_8);
+        workspaceManager.reap();
+        assertThrows(IllegalStateException.class, workspaceManager::acquire);
+        workspaceManager.close();
+    }
+
+}